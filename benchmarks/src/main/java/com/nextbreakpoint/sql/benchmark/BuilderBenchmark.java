@@ -0,0 +1,97 @@
+/*
+ * This file is part of SQLTemplate
+ *
+ * Copyright (c) 2016, Andrea Medeghini
+ * All rights reserved.
+ */
+package com.nextbreakpoint.sql.benchmark;
+
+import com.nextbreakpoint.sql.SQLOperation;
+import com.nextbreakpoint.sql.SQLTemplate;
+import com.nextbreakpoint.sql.SQLTemplateDriver;
+import com.nextbreakpoint.sql.SQLTemplateException;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures the cost of building templates and of executing long sequences of operations,
+ * both as template and as chain of operations concatenated with {@link SQLOperation#andThen(SQLOperation)}.
+ *
+ * @author Andrea Medeghini
+ *
+ */
+@State(Scope.Thread)
+@BenchmarkMode({ Mode.Throughput, Mode.SampleTime })
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class BuilderBenchmark {
+	@Param({ "10", "1000" })
+	public int depth;
+
+	private Connection connection;
+	private SQLTemplate deepTemplate;
+	private SQLOperation deepChain;
+
+	@Setup(Level.Trial)
+	public void setup() throws SQLException {
+		connection = Database.open(0);
+		SQLTemplate.SQLTemplateBuilder builder = SQLTemplate.builder();
+		SQLOperation chain = SQLTemplateDriver::autoCommit;
+		for (int i = 1; i < depth; i++) {
+			builder = builder.autoCommit();
+			chain = chain.andThen(SQLTemplateDriver::autoCommit);
+		}
+		deepTemplate = builder.autoCommit().build();
+		deepChain = chain;
+	}
+
+	@TearDown(Level.Trial)
+	public void tearDown() throws SQLException {
+		connection.close();
+	}
+
+	@Benchmark
+	public SQLTemplate buildTemplate() {
+		return SQLTemplate.builder()
+			.noAutoCommit()
+			.statement("DELETE INSERTS")
+			.update()
+			.statement("INSERT INTO INSERTS (ID, NAME) VALUES (?, ?)")
+			.update(1, "A")
+			.update(2, "B")
+			.commit()
+			.statement("SELECT * FROM INSERTS")
+			.query()
+			.build();
+	}
+
+	@Benchmark
+	public List<Object[]> deepTemplate() throws SQLTemplateException {
+		return deepTemplate.apply(connection).orThrow();
+	}
+
+	@Benchmark
+	public SQLTemplateDriver deepChain() throws SQLTemplateException {
+		try (SQLTemplateDriver driver = SQLTemplateDriver.create(connection)) {
+			return deepChain.apply(driver).orThrow();
+		}
+	}
+}
@@ -0,0 +1,73 @@
+/*
+ * This file is part of SQLTemplate
+ *
+ * Copyright (c) 2016, Andrea Medeghini
+ * All rights reserved.
+ */
+package com.nextbreakpoint.sql.benchmark;
+
+import com.nextbreakpoint.sql.SQLTemplate;
+
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.SQLException;
+import java.util.List;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+
+/**
+ * Creates the in-memory databases used by the benchmarks. Each connection has a private database
+ * with a narrow table of 2 columns and a wide table of 20 columns.
+ *
+ * @author Andrea Medeghini
+ *
+ */
+public class Database {
+	private Database() {
+	}
+
+	/**
+	 * Opens a connection to a new in-memory database which contains given number of rows in each table.
+	 * @param rows the number of rows
+	 * @return the connection
+	 * @throws SQLException if the database can't be created
+	 */
+	public static Connection open(int rows) throws SQLException {
+		Connection connection = DriverManager.getConnection("jdbc:h2:mem:", "sa", "");
+		try {
+			SQLTemplate.builder()
+				.noAutoCommit()
+				.statement("CREATE TABLE NARROW(ID INT PRIMARY KEY, NAME VARCHAR(64))")
+				.update()
+				.statement("CREATE TABLE WIDE(ID INT PRIMARY KEY, " + wideColumns().stream().map(column -> column + " VARCHAR(64)").collect(Collectors.joining(", ")) + ")")
+				.update()
+				.statement("CREATE TABLE INSERTS(ID INT, NAME VARCHAR(64))")
+				.update()
+				.statement("INSERT INTO NARROW (ID, NAME) VALUES (?, ?)")
+				.batch(IntStream.range(0, rows).mapToObj(i -> new Object[] { i, "NAME" + i }).collect(Collectors.toList()))
+				.statement("INSERT INTO WIDE VALUES (" + IntStream.range(0, 20).mapToObj(i -> "?").collect(Collectors.joining(", ")) + ")")
+				.batch(IntStream.range(0, rows).mapToObj(Database::wideRow).collect(Collectors.toList()))
+				.commit()
+				.build()
+				.apply(connection)
+				.orThrow();
+			return connection;
+		} catch (Exception e) {
+			connection.close();
+			throw new SQLException("Can't create database", e);
+		}
+	}
+
+	private static List<String> wideColumns() {
+		return IntStream.range(1, 20).mapToObj(i -> "C" + i).collect(Collectors.toList());
+	}
+
+	private static Object[] wideRow(int id) {
+		Object[] row = new Object[20];
+		row[0] = id;
+		for (int i = 1; i < row.length; i++) {
+			row[i] = "VALUE" + id + "_" + i;
+		}
+		return row;
+	}
+}
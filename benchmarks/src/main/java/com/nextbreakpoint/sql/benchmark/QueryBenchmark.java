@@ -0,0 +1,106 @@
+/*
+ * This file is part of SQLTemplate
+ *
+ * Copyright (c) 2016, Andrea Medeghini
+ * All rights reserved.
+ */
+package com.nextbreakpoint.sql.benchmark;
+
+import com.nextbreakpoint.sql.SQLTemplate;
+import com.nextbreakpoint.sql.SQLTemplateDriver;
+import com.nextbreakpoint.sql.SQLTemplateException;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Stream;
+
+/**
+ * Measures scans of a narrow table and of a wide table, reading rows as lists, streams and row views.
+ *
+ * @author Andrea Medeghini
+ *
+ */
+@State(Scope.Thread)
+@BenchmarkMode({ Mode.Throughput, Mode.SampleTime })
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class QueryBenchmark {
+	@Param({ "1000", "100000" })
+	public int rows;
+
+	private Connection connection;
+	private SQLTemplate narrowTemplate;
+	private SQLTemplate wideTemplate;
+
+	@Setup(Level.Trial)
+	public void setup() throws SQLException {
+		connection = Database.open(rows);
+		narrowTemplate = SQLTemplate.builder().statement("SELECT * FROM NARROW").query().build();
+		wideTemplate = SQLTemplate.builder().statement("SELECT * FROM WIDE").query().build();
+	}
+
+	@TearDown(Level.Trial)
+	public void tearDown() throws SQLException {
+		connection.close();
+	}
+
+	@Benchmark
+	public List<Object[]> narrowScan() throws SQLTemplateException {
+		return narrowTemplate.apply(connection).orThrow();
+	}
+
+	@Benchmark
+	public List<Object[]> wideScan() throws SQLTemplateException {
+		return wideTemplate.apply(connection).orThrow();
+	}
+
+	@Benchmark
+	public void narrowStream(Blackhole blackhole) throws SQLTemplateException {
+		try (Stream<Object[]> stream = narrowTemplate.stream(connection).orThrow()) {
+			stream.forEach(blackhole::consume);
+		}
+	}
+
+	@Benchmark
+	public void wideStream(Blackhole blackhole) throws SQLTemplateException {
+		try (Stream<Object[]> stream = wideTemplate.stream(connection).orThrow()) {
+			stream.forEach(blackhole::consume);
+		}
+	}
+
+	@Benchmark
+	public long narrowForEachRow(Blackhole blackhole) throws SQLTemplateException {
+		return narrowTemplate.forEachRow(connection, row -> {
+			blackhole.consume(row.getInt(1));
+			blackhole.consume(row.getString(2));
+		}).orThrow();
+	}
+
+	@Benchmark
+	public List<Object[]> driverExecuteQuery() throws SQLTemplateException {
+		try (SQLTemplateDriver driver = SQLTemplateDriver.create(connection)) {
+			return driver.prepareStatement("SELECT * FROM NARROW")
+				.flatMap(SQLTemplateDriver::executeQuery)
+				.map(SQLTemplateDriver::values)
+				.orThrow();
+		}
+	}
+}
@@ -0,0 +1,107 @@
+/*
+ * This file is part of SQLTemplate
+ *
+ * Copyright (c) 2016, Andrea Medeghini
+ * All rights reserved.
+ */
+package com.nextbreakpoint.sql.benchmark;
+
+import com.nextbreakpoint.sql.SQLParam;
+import com.nextbreakpoint.sql.SQLTemplate;
+import com.nextbreakpoint.sql.SQLTemplateDriver;
+import com.nextbreakpoint.sql.SQLTemplateException;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+
+/**
+ * Measures single row updates and multi row inserts.
+ *
+ * @author Andrea Medeghini
+ *
+ */
+@State(Scope.Thread)
+@BenchmarkMode({ Mode.Throughput, Mode.SampleTime })
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class UpdateBenchmark {
+	private static final String UPDATE = "UPDATE NARROW SET NAME = ? WHERE ID = ?";
+
+	@Param({ "1000" })
+	public int rows;
+
+	@Param({ "10", "1000" })
+	public int insertRows;
+
+	private Connection connection;
+	private SQLTemplate updateTemplate;
+	private SQLTemplate insertTemplate;
+	private int id;
+
+	@Setup(Level.Trial)
+	public void setup() throws SQLException {
+		connection = Database.open(rows);
+		updateTemplate = SQLTemplate.builder()
+			.statement(UPDATE)
+			.update(SQLParam.of(0), SQLParam.of(1))
+			.build();
+		List<Object[]> insertParams = IntStream.range(0, insertRows)
+			.mapToObj(i -> new Object[] { i, "NAME" + i })
+			.collect(Collectors.toList());
+		insertTemplate = SQLTemplate.builder()
+			.noAutoCommit()
+			.statement("INSERT INTO INSERTS (ID, NAME) VALUES (?, ?)")
+			.batch(insertParams)
+			.rollback()
+			.build();
+	}
+
+	@TearDown(Level.Trial)
+	public void tearDown() throws SQLException {
+		connection.close();
+	}
+
+	@Benchmark
+	public List<Object[]> singleRowUpdate() throws SQLTemplateException {
+		return updateTemplate.apply(connection, "UPDATED", nextId()).orThrow();
+	}
+
+	@Benchmark
+	public List<Object[]> driverExecuteUpdate() throws SQLTemplateException {
+		try (SQLTemplateDriver driver = SQLTemplateDriver.create(connection)) {
+			return driver.prepareStatement(UPDATE)
+				.flatMap(d -> d.executeUpdate(new Object[] { "UPDATED", nextId() }))
+				.map(SQLTemplateDriver::values)
+				.orThrow();
+		}
+	}
+
+	@Benchmark
+	public List<Object[]> multiRowInsert() throws SQLTemplateException {
+		return insertTemplate.apply(connection).orThrow();
+	}
+
+	private int nextId() {
+		id = (id + 1) % rows;
+		return id;
+	}
+}
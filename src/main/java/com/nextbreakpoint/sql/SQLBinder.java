@@ -0,0 +1,107 @@
+/*
+ * This file is part of SQLTemplate
+ *
+ * Copyright (c) 2016, Andrea Medeghini
+ * All rights reserved.
+ */
+package com.nextbreakpoint.sql;
+
+import java.math.BigDecimal;
+import java.sql.Date;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.sql.Time;
+import java.sql.Timestamp;
+import java.sql.Types;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Provides a binder which sets the value of a parameter using the setter of the type of the value.
+ * Values of types without a specific setter are set as object. Null values are set with the SQL type of the setter,
+ * or as null object when the type has no specific setter, because some drivers reject the types NULL and JAVA_OBJECT.
+ *
+ * @author Andrea Medeghini
+ *
+ */
+final class SQLBinder {
+	private static final Map<Class<?>, SQLBinder> binders = new HashMap<>();
+
+	static {
+		register(Integer.class, Types.INTEGER, (st, index, value) -> st.setInt(index, (Integer) value));
+		register(Long.class, Types.BIGINT, (st, index, value) -> st.setLong(index, (Long) value));
+		register(Double.class, Types.DOUBLE, (st, index, value) -> st.setDouble(index, (Double) value));
+		register(Float.class, Types.REAL, (st, index, value) -> st.setFloat(index, (Float) value));
+		register(Short.class, Types.SMALLINT, (st, index, value) -> st.setShort(index, (Short) value));
+		register(Byte.class, Types.TINYINT, (st, index, value) -> st.setByte(index, (Byte) value));
+		register(Boolean.class, Types.BOOLEAN, (st, index, value) -> st.setBoolean(index, (Boolean) value));
+		register(String.class, Types.VARCHAR, (st, index, value) -> st.setString(index, (String) value));
+		register(BigDecimal.class, Types.DECIMAL, (st, index, value) -> st.setBigDecimal(index, (BigDecimal) value));
+		register(byte[].class, Types.VARBINARY, (st, index, value) -> st.setBytes(index, (byte[]) value));
+		register(Timestamp.class, Types.TIMESTAMP, (st, index, value) -> st.setTimestamp(index, (Timestamp) value));
+		register(Date.class, Types.DATE, (st, index, value) -> st.setDate(index, (Date) value));
+		register(Time.class, Types.TIME, (st, index, value) -> st.setTime(index, (Time) value));
+	}
+
+	private final Class<?> type;
+	private final int sqlType;
+	private final Setter setter;
+
+	private SQLBinder(Class<?> type, int sqlType, Setter setter) {
+		this.type = type;
+		this.sqlType = sqlType;
+		this.setter = setter;
+	}
+
+	/**
+	 * Returns the binder of given type of value.
+	 * @param type the type
+	 * @return the binder
+	 */
+	public static SQLBinder of(Class<?> type) {
+		SQLBinder binder = binders.get(type);
+		return binder != null ? binder : new SQLBinder(type, Types.NULL, PreparedStatement::setObject);
+	}
+
+	/**
+	 * Returns the type of value.
+	 * @return the type
+	 */
+	public Class<?> type() {
+		return type;
+	}
+
+	/**
+	 * Sets given parameter to null, using the SQL type of the setter when the type has a specific setter.
+	 * @param st the statement
+	 * @param index the index of the parameter
+	 * @throws SQLException if the value can't be set
+	 */
+	public void bindNull(PreparedStatement st, int index) throws SQLException {
+		if (sqlType != Types.NULL) {
+			st.setNull(index, sqlType);
+		} else {
+			st.setObject(index, null);
+		}
+	}
+
+	/**
+	 * Sets the value of given parameter.
+	 * @param st the statement
+	 * @param index the index of the parameter
+	 * @param value the value, which must not be null
+	 * @throws SQLException if the value can't be set
+	 */
+	public void bind(PreparedStatement st, int index, Object value) throws SQLException {
+		setter.set(st, index, value);
+	}
+
+	private static void register(Class<?> type, int sqlType, Setter setter) {
+		binders.put(type, new SQLBinder(type, sqlType, setter));
+	}
+
+	@FunctionalInterface
+	private interface Setter {
+		void set(PreparedStatement st, int index, Object value) throws SQLException;
+	}
+}
@@ -0,0 +1,119 @@
+/*
+ * This file is part of SQLTemplate
+ *
+ * Copyright (c) 2016, Andrea Medeghini
+ * All rights reserved.
+ */
+package com.nextbreakpoint.sql;
+
+import java.beans.IntrospectionException;
+import java.beans.Introspector;
+import java.beans.PropertyDescriptor;
+import java.lang.reflect.Method;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Objects;
+
+/**
+ * Provides the arguments which are bound to the parameters of a template when the template is applied.
+ * Positional arguments are bound to the placeholders created with {@link SQLParam#of(int)}, and named arguments
+ * are bound to the parameters :name of the statements. Named arguments can be taken from a map or from the
+ * properties of a bean, and the getters of each class of bean are looked up only once.
+ *
+ * @author Andrea Medeghini
+ *
+ */
+public final class SQLBindings {
+	private static final Object[] NO_ARGUMENTS = new Object[0];
+	private static final SQLBindings EMPTY = new SQLBindings(NO_ARGUMENTS, Collections.emptyMap(), null);
+
+	private static final ClassValue<Map<String, Method>> getters = new ClassValue<Map<String, Method>>() {
+		@Override
+		protected Map<String, Method> computeValue(Class<?> type) {
+			return findGetters(type);
+		}
+	};
+
+	private final Object[] arguments;
+	private final Map<String, ?> values;
+	private final Object bean;
+
+	private SQLBindings(Object[] arguments, Map<String, ?> values, Object bean) {
+		this.arguments = arguments;
+		this.values = values;
+		this.bean = bean;
+	}
+
+	/**
+	 * Returns bindings without arguments.
+	 * @return the bindings
+	 */
+	public static SQLBindings empty() {
+		return EMPTY;
+	}
+
+	/**
+	 * Creates bindings with given positional arguments.
+	 * @param arguments the arguments
+	 * @return new instance
+	 */
+	public static SQLBindings of(Object... arguments) {
+		return new SQLBindings(Objects.requireNonNull(arguments), Collections.emptyMap(), null);
+	}
+
+	/**
+	 * Creates bindings with given named arguments.
+	 * @param values the arguments by name
+	 * @return new instance
+	 */
+	public static SQLBindings of(Map<String, ?> values) {
+		return new SQLBindings(NO_ARGUMENTS, Objects.requireNonNull(values), null);
+	}
+
+	/**
+	 * Creates bindings with the properties of given bean as named arguments.
+	 * @param bean the bean
+	 * @return new instance
+	 */
+	public static SQLBindings ofBean(Object bean) {
+		return new SQLBindings(NO_ARGUMENTS, Collections.emptyMap(), Objects.requireNonNull(bean));
+	}
+
+	Object[] arguments() {
+		return arguments;
+	}
+
+	Object value(String name) throws SQLTemplateException {
+		if (bean != null) {
+			Method getter = getters.get(bean.getClass()).get(name);
+			if (getter == null) {
+				throw new SQLTemplateException("Missing argument " + name);
+			}
+			try {
+				return getter.invoke(bean);
+			} catch (Exception e) {
+				throw new SQLTemplateException("Can't read argument " + name, e);
+			}
+		}
+		Object value = values.get(name);
+		if (value == null && !values.containsKey(name)) {
+			throw new SQLTemplateException("Missing argument " + name);
+		}
+		return value;
+	}
+
+	private static Map<String, Method> findGetters(Class<?> type) {
+		try {
+			Map<String, Method> methods = new HashMap<>();
+			for (PropertyDescriptor descriptor : Introspector.getBeanInfo(type, Object.class).getPropertyDescriptors()) {
+				if (descriptor.getReadMethod() != null) {
+					methods.put(descriptor.getName(), descriptor.getReadMethod());
+				}
+			}
+			return methods;
+		} catch (IntrospectionException e) {
+			return Collections.emptyMap();
+		}
+	}
+}
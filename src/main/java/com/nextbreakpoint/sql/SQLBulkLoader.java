@@ -0,0 +1,506 @@
+/*
+ * This file is part of SQLTemplate
+ *
+ * Copyright (c) 2016, Andrea Medeghini
+ * All rights reserved.
+ */
+package com.nextbreakpoint.sql;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.charset.Charset;
+import java.nio.charset.CharsetDecoder;
+import java.nio.charset.CoderResult;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Objects;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.Executor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * Provides a loader of delimited text, like CSV, into batches of the current statement. The text is read from a channel
+ * into a direct buffer and parsed on a thread of the executor, while batches are executed on the thread which applies
+ * the template, and a bounded queue of batches between the two threads limits the memory used when the database is
+ * slower than the parser. The transaction is committed every commitInterval rows when auto commit is disabled.
+ * Fields are separated by the delimiter and can be enclosed in quotes, where a quote is escaped by another quote.
+ * Unquoted empty fields and unquoted fields equal to the null marker are loaded as null, and quoted empty fields are
+ * loaded as empty strings. Blank lines are skipped.
+ *
+ * @author Andrea Medeghini
+ *
+ */
+public class SQLBulkLoader {
+	/**
+	 * Default number of rows for each batch.
+	 */
+	public static final int DEFAULT_BATCH_SIZE = 1000;
+	/**
+	 * Default number of rows for each transaction.
+	 */
+	public static final int DEFAULT_COMMIT_INTERVAL = 10000;
+	/**
+	 * Default max number of batches waiting to be executed.
+	 */
+	public static final int DEFAULT_QUEUE_SIZE = 16;
+	/**
+	 * Default marker of null values.
+	 */
+	public static final String DEFAULT_NULL_MARKER = "\\N";
+
+	private static final int BUFFER_SIZE = 65536;
+	private static final List<Object[]> END = new ArrayList<>(0);
+
+	private final char delimiter;
+	private final char quote;
+	private final Charset charset;
+	private final String nullMarker;
+	private final int skipRows;
+	private final int batchSize;
+	private final int commitInterval;
+	private final int queueSize;
+	private final RowConverter converter;
+	private final Progress progress;
+	private final Executor executor;
+
+	private SQLBulkLoader(SQLBulkLoaderBuilder builder) {
+		this.delimiter = builder.delimiter;
+		this.quote = builder.quote;
+		this.charset = builder.charset;
+		this.nullMarker = builder.nullMarker;
+		this.skipRows = builder.skipRows;
+		this.batchSize = builder.batchSize;
+		this.commitInterval = builder.commitInterval;
+		this.queueSize = builder.queueSize;
+		this.converter = builder.converter;
+		this.progress = builder.progress;
+		this.executor = builder.executor;
+	}
+
+	/**
+	 * Creates a new builder.
+	 * @return new builder
+	 */
+	public static SQLBulkLoaderBuilder builder() {
+		return new SQLBulkLoaderBuilder();
+	}
+
+	/**
+	 * Creates a source which reads given file.
+	 * @param path the path of the file
+	 * @return new source
+	 */
+	public static Source file(Path path) {
+		Objects.requireNonNull(path);
+		return () -> FileChannel.open(path, StandardOpenOption.READ);
+	}
+
+	/**
+	 * Creates a source which reads given stream. The stream can be read only once, therefore a template
+	 * with this source can be applied only once.
+	 * @param input the stream
+	 * @return new source
+	 */
+	public static Source stream(InputStream input) {
+		Objects.requireNonNull(input);
+		return () -> Channels.newChannel(input);
+	}
+
+	long load(Source source, Sink sink) throws Exception {
+		BlockingQueue<List<Object[]>> queue = new ArrayBlockingQueue<>(queueSize);
+		AtomicBoolean cancelled = new AtomicBoolean();
+		AtomicReference<Throwable> failure = new AtomicReference<>();
+		long time = System.nanoTime();
+		(executor != null ? executor : SQLTemplate.defaultExecutor()).execute(() -> produce(source, queue, cancelled, failure));
+		long rows = 0;
+		long uncommitted = 0;
+		try {
+			for (List<Object[]> batch = queue.take(); batch != END; batch = queue.take()) {
+				sink.accept(batch);
+				rows += batch.size();
+				uncommitted += batch.size();
+				if (uncommitted >= commitInterval) {
+					sink.commit();
+					uncommitted = 0;
+					if (progress != null) {
+						progress.onProgress(rows, System.nanoTime() - time);
+					}
+				}
+			}
+		} finally {
+			cancelled.set(true);
+			queue.clear();
+		}
+		if (failure.get() != null) {
+			throw new SQLTemplateException("Can't read rows", failure.get());
+		}
+		if (progress != null && uncommitted > 0) {
+			progress.onProgress(rows, System.nanoTime() - time);
+		}
+		return rows;
+	}
+
+	private void produce(Source source, BlockingQueue<List<Object[]>> queue, AtomicBoolean cancelled, AtomicReference<Throwable> failure) {
+		try (ReadableByteChannel channel = source.open()) {
+			List<List<Object[]>> batch = new ArrayList<>(1);
+			batch.add(new ArrayList<>(batchSize));
+			long[] count = new long[1];
+			new DelimitedParser(delimiter, quote, charset, nullMarker).parse(channel, fields -> {
+				if (count[0]++ < skipRows) {
+					return;
+				}
+				batch.get(0).add(converter.convert(fields));
+				if (batch.get(0).size() == batchSize) {
+					put(queue, batch.get(0), cancelled);
+					batch.set(0, new ArrayList<>(batchSize));
+				}
+			});
+			if (!batch.get(0).isEmpty()) {
+				put(queue, batch.get(0), cancelled);
+			}
+		} catch (Throwable e) {
+			if (!cancelled.get()) {
+				failure.set(e);
+			}
+		} finally {
+			end(queue, cancelled);
+		}
+	}
+
+	private static void end(BlockingQueue<List<Object[]>> queue, AtomicBoolean cancelled) {
+		boolean interrupted = false;
+		for (;;) {
+			try {
+				put(queue, END, cancelled);
+				break;
+			} catch (InterruptedException e) {
+				interrupted = true;
+			} catch (Exception e) {
+				break;
+			}
+		}
+		if (interrupted) {
+			Thread.currentThread().interrupt();
+		}
+	}
+
+	private static void put(BlockingQueue<List<Object[]>> queue, List<Object[]> batch, AtomicBoolean cancelled) throws Exception {
+		do {
+			if (cancelled.get()) {
+				throw new SQLTemplateException("Load has been cancelled");
+			}
+		} while (!queue.offer(batch, 100, TimeUnit.MILLISECONDS));
+	}
+
+	/**
+	 * Source of text.
+	 */
+	@FunctionalInterface
+	public interface Source {
+		/**
+		 * Opens the channel which is read by the loader. The channel is closed by the loader.
+		 * @return the channel
+		 * @throws IOException if the channel can't be opened
+		 */
+		ReadableByteChannel open() throws IOException;
+	}
+
+	/**
+	 * Converter of fields into arguments of the statement.
+	 */
+	@FunctionalInterface
+	public interface RowConverter {
+		/**
+		 * Converts the fields of a row.
+		 * @param fields the fields
+		 * @return the arguments
+		 * @throws Exception if the fields can't be converted
+		 */
+		Object[] convert(String[] fields) throws Exception;
+	}
+
+	/**
+	 * Receiver of the progress of a load.
+	 */
+	@FunctionalInterface
+	public interface Progress {
+		/**
+		 * Invoked after each commit and when the load completes.
+		 * @param rows the number of rows which have been loaded
+		 * @param nanos the elapsed time in nanoseconds
+		 */
+		void onProgress(long rows, long nanos);
+	}
+
+	interface Sink {
+		void accept(List<Object[]> rows) throws Exception;
+
+		void commit() throws Exception;
+	}
+
+	@FunctionalInterface
+	private interface RowHandler {
+		void accept(String[] fields) throws Exception;
+	}
+
+	private static class DelimitedParser {
+		private final List<String> fields = new ArrayList<>();
+		private final StringBuilder field = new StringBuilder();
+		private final char delimiter;
+		private final char quote;
+		private final Charset charset;
+		private final String nullMarker;
+		private boolean quoted;
+		private boolean inQuotes;
+		private boolean afterQuote;
+		private boolean empty = true;
+
+		public DelimitedParser(char delimiter, char quote, Charset charset, String nullMarker) {
+			this.delimiter = delimiter;
+			this.quote = quote;
+			this.charset = charset;
+			this.nullMarker = nullMarker;
+		}
+
+		public void parse(ReadableByteChannel channel, RowHandler handler) throws Exception {
+			ByteBuffer bytes = ByteBuffer.allocateDirect(BUFFER_SIZE);
+			CharBuffer chars = CharBuffer.allocate(BUFFER_SIZE);
+			CharsetDecoder decoder = charset.newDecoder();
+			boolean eof = false;
+			CoderResult result;
+			do {
+				if (!eof) {
+					eof = channel.read(bytes) < 0;
+				}
+				bytes.flip();
+				result = decoder.decode(bytes, chars, eof);
+				if (result.isError()) {
+					result.throwException();
+				}
+				bytes.compact();
+				chars.flip();
+				scan(chars, handler);
+				chars.clear();
+			} while (!eof || result.isOverflow());
+			decoder.flush(chars);
+			chars.flip();
+			scan(chars, handler);
+			if (!empty) {
+				endRow(handler);
+			}
+		}
+
+		private void scan(CharBuffer chars, RowHandler handler) throws Exception {
+			char[] array = chars.array();
+			int limit = chars.arrayOffset() + chars.limit();
+			for (int i = chars.arrayOffset() + chars.position(); i < limit; i++) {
+				char c = array[i];
+				if (inQuotes) {
+					if (c == quote) {
+						inQuotes = false;
+						afterQuote = true;
+					} else {
+						field.append(c);
+					}
+					continue;
+				}
+				if (afterQuote && c == quote) {
+					field.append(c);
+					inQuotes = true;
+					afterQuote = false;
+					continue;
+				}
+				afterQuote = false;
+				if (c == '\n') {
+					if (!empty) {
+						endRow(handler);
+					}
+				} else if (c == '\r') {
+					continue;
+				} else if (c == delimiter) {
+					endField();
+					empty = false;
+				} else if (c == quote && field.length() == 0 && !quoted) {
+					quoted = true;
+					inQuotes = true;
+					empty = false;
+				} else {
+					field.append(c);
+					empty = false;
+				}
+			}
+		}
+
+		private void endField() {
+			String value = field.length() > 0 || quoted ? field.toString() : null;
+			fields.add(quoted || !nullMarker.equals(value) ? value : null);
+			field.setLength(0);
+			quoted = false;
+		}
+
+		private void endRow(RowHandler handler) throws Exception {
+			endField();
+			handler.accept(fields.toArray(new String[0]));
+			fields.clear();
+			empty = true;
+		}
+	}
+
+	public static class SQLBulkLoaderBuilder {
+		private char delimiter = ',';
+		private char quote = '"';
+		private Charset charset = StandardCharsets.UTF_8;
+		private String nullMarker = DEFAULT_NULL_MARKER;
+		private int skipRows;
+		private int batchSize = DEFAULT_BATCH_SIZE;
+		private int commitInterval = DEFAULT_COMMIT_INTERVAL;
+		private int queueSize = DEFAULT_QUEUE_SIZE;
+		private RowConverter converter = fields -> fields;
+		private Progress progress;
+		private Executor executor;
+
+		private SQLBulkLoaderBuilder() {
+		}
+
+		/**
+		 * Sets the delimiter of fields. The default delimiter is comma.
+		 * @param delimiter the delimiter
+		 * @return the builder
+		 */
+		public SQLBulkLoaderBuilder delimiter(char delimiter) {
+			this.delimiter = delimiter;
+			return this;
+		}
+
+		/**
+		 * Sets the quote of fields. The default quote is double quote.
+		 * @param quote the quote
+		 * @return the builder
+		 */
+		public SQLBulkLoaderBuilder quote(char quote) {
+			this.quote = quote;
+			return this;
+		}
+
+		/**
+		 * Sets the charset of the text. The default charset is UTF-8.
+		 * @param charset the charset
+		 * @return the builder
+		 */
+		public SQLBulkLoaderBuilder charset(Charset charset) {
+			this.charset = Objects.requireNonNull(charset);
+			return this;
+		}
+
+		/**
+		 * Sets the marker of null values in unquoted fields. The default marker is \N.
+		 * @param nullMarker the marker
+		 * @return the builder
+		 */
+		public SQLBulkLoaderBuilder nullMarker(String nullMarker) {
+			if (nullMarker.isEmpty()) {
+				throw new IllegalArgumentException("Null marker must not be empty");
+			}
+			this.nullMarker = nullMarker;
+			return this;
+		}
+
+		/**
+		 * Skips the first row of the text.
+		 * @return the builder
+		 */
+		public SQLBulkLoaderBuilder skipHeader() {
+			this.skipRows = 1;
+			return this;
+		}
+
+		/**
+		 * Sets the number of rows for each batch.
+		 * @param batchSize the batch size
+		 * @return the builder
+		 */
+		public SQLBulkLoaderBuilder batchSize(int batchSize) {
+			if (batchSize <= 0) {
+				throw new IllegalArgumentException("Batch size must be greater than zero");
+			}
+			this.batchSize = batchSize;
+			return this;
+		}
+
+		/**
+		 * Sets the number of rows for each transaction. The transaction is committed after the batch which
+		 * exceeds the interval, and only when auto commit is disabled.
+		 * @param commitInterval the number of rows
+		 * @return the builder
+		 */
+		public SQLBulkLoaderBuilder commitInterval(int commitInterval) {
+			if (commitInterval <= 0) {
+				throw new IllegalArgumentException("Commit interval must be greater than zero");
+			}
+			this.commitInterval = commitInterval;
+			return this;
+		}
+
+		/**
+		 * Sets the max number of batches waiting to be executed.
+		 * @param queueSize the queue size
+		 * @return the builder
+		 */
+		public SQLBulkLoaderBuilder queueSize(int queueSize) {
+			if (queueSize <= 0) {
+				throw new IllegalArgumentException("Queue size must be greater than zero");
+			}
+			this.queueSize = queueSize;
+			return this;
+		}
+
+		/**
+		 * Sets the converter of fields into arguments. By default fields are bound as strings.
+		 * @param converter the converter
+		 * @return the builder
+		 */
+		public SQLBulkLoaderBuilder converter(RowConverter converter) {
+			this.converter = Objects.requireNonNull(converter);
+			return this;
+		}
+
+		/**
+		 * Sets the receiver of the progress.
+		 * @param progress the receiver
+		 * @return the builder
+		 */
+		public SQLBulkLoaderBuilder progress(Progress progress) {
+			this.progress = Objects.requireNonNull(progress);
+			return this;
+		}
+
+		/**
+		 * Sets the executor of the parser. The default executor is {@link SQLTemplate#defaultExecutor()}.
+		 * @param executor the executor
+		 * @return the builder
+		 */
+		public SQLBulkLoaderBuilder executor(Executor executor) {
+			this.executor = Objects.requireNonNull(executor);
+			return this;
+		}
+
+		/**
+		 * Builds the loader.
+		 * @return new loader
+		 */
+		public SQLBulkLoader build() {
+			return new SQLBulkLoader(this);
+		}
+	}
+}
@@ -0,0 +1,421 @@
+/*
+ * This file is part of SQLTemplate
+ *
+ * Copyright (c) 2016, Andrea Medeghini
+ * All rights reserved.
+ */
+package com.nextbreakpoint.sql;
+
+import java.sql.ResultSetMetaData;
+import java.sql.SQLException;
+import java.sql.Types;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+
+/**
+ * Provides a result stored by column. Integer and floating point columns are stored in arrays of primitive values,
+ * character columns are stored as arrays of codes into a dictionary of distinct values, and all other columns
+ * are stored as arrays of objects. Columns are numbered from 1 and rows are numbered from 0.
+ *
+ * @author Andrea Medeghini
+ *
+ */
+public class SQLColumnarResult {
+	private final String[] names;
+	private final Column[] columns;
+	private final int rowCount;
+
+	private SQLColumnarResult(String[] names, Column[] columns, int rowCount) {
+		this.names = Objects.requireNonNull(names);
+		this.columns = Objects.requireNonNull(columns);
+		this.rowCount = rowCount;
+	}
+
+	/**
+	 * Returns the number of rows.
+	 * @return the number of rows
+	 */
+	public int rowCount() {
+		return rowCount;
+	}
+
+	/**
+	 * Returns the number of columns.
+	 * @return the number of columns
+	 */
+	public int columnCount() {
+		return columns.length;
+	}
+
+	/**
+	 * Returns the name of given column.
+	 * @param column the column index
+	 * @return the name
+	 */
+	public String columnName(int column) {
+		return names[column - 1];
+	}
+
+	/**
+	 * Returns the type of given column.
+	 * @param column the column index
+	 * @return the type
+	 */
+	public ColumnType columnType(int column) {
+		return column(column).type();
+	}
+
+	/**
+	 * Returns the values of given column of type INT. The array is not copied and must not be modified.
+	 * @param column the column index
+	 * @return the values
+	 */
+	public int[] getInts(int column) {
+		return column(column, IntColumn.class).values;
+	}
+
+	/**
+	 * Returns the values of given column of type LONG. The array is not copied and must not be modified.
+	 * @param column the column index
+	 * @return the values
+	 */
+	public long[] getLongs(int column) {
+		return column(column, LongColumn.class).values;
+	}
+
+	/**
+	 * Returns the values of given column of type DOUBLE. The array is not copied and must not be modified.
+	 * @param column the column index
+	 * @return the values
+	 */
+	public double[] getDoubles(int column) {
+		return column(column, DoubleColumn.class).values;
+	}
+
+	/**
+	 * Returns the dictionary codes of given column of type STRING. The code of null values is -1.
+	 * The array is not copied and must not be modified.
+	 * @param column the column index
+	 * @return the codes
+	 */
+	public int[] getStringCodes(int column) {
+		return column(column, StringColumn.class).codes;
+	}
+
+	/**
+	 * Returns the dictionary of distinct values of given column of type STRING, indexed by code.
+	 * The array is not copied and must not be modified.
+	 * @param column the column index
+	 * @return the dictionary
+	 */
+	public String[] getDictionary(int column) {
+		return column(column, StringColumn.class).dictionary;
+	}
+
+	/**
+	 * Returns true if the value of given column and row is null.
+	 * @param column the column index
+	 * @param row the row index
+	 * @return true if the value is null
+	 */
+	public boolean isNull(int column, int row) {
+		return column(column).isNull(checkRow(row));
+	}
+
+	/**
+	 * Returns the value of given column and row as object. Primitive values are boxed.
+	 * @param column the column index
+	 * @param row the row index
+	 * @return the value
+	 */
+	public Object getObject(int column, int row) {
+		return column(column).getObject(checkRow(row));
+	}
+
+	static Builder builder(ResultSetMetaData metadata) throws SQLException {
+		int count = metadata.getColumnCount();
+		String[] names = new String[count];
+		ColumnType[] types = new ColumnType[count];
+		for (int i = 0; i < count; i++) {
+			names[i] = metadata.getColumnLabel(i + 1);
+			types[i] = ColumnType.of(metadata.getColumnType(i + 1));
+		}
+		return new Builder(names, types);
+	}
+
+	static Builder builder(int count) {
+		String[] names = new String[count];
+		ColumnType[] types = new ColumnType[count];
+		Arrays.fill(types, ColumnType.OBJECT);
+		return new Builder(names, types);
+	}
+
+	static SQLColumnarResult empty() {
+		return new SQLColumnarResult(new String[0], new Column[0], 0);
+	}
+
+	private int checkRow(int row) {
+		if (row < 0 || row >= rowCount) {
+			throw new IndexOutOfBoundsException("Invalid row " + row);
+		}
+		return row;
+	}
+
+	private Column column(int column) {
+		return columns[column - 1];
+	}
+
+	private <T extends Column> T column(int column, Class<T> type) {
+		Column value = column(column);
+		if (!type.isInstance(value)) {
+			throw new IllegalArgumentException("Column " + column + " has type " + value.type());
+		}
+		return type.cast(value);
+	}
+
+	/**
+	 * Type of column storage.
+	 */
+	public enum ColumnType {
+		INT, LONG, DOUBLE, STRING, OBJECT;
+
+		private static ColumnType of(int sqlType) {
+			switch (sqlType) {
+				case Types.TINYINT:
+				case Types.SMALLINT:
+				case Types.INTEGER:
+					return INT;
+				case Types.BIGINT:
+					return LONG;
+				case Types.REAL:
+				case Types.FLOAT:
+				case Types.DOUBLE:
+					return DOUBLE;
+				case Types.CHAR:
+				case Types.VARCHAR:
+				case Types.LONGVARCHAR:
+				case Types.NCHAR:
+				case Types.NVARCHAR:
+				case Types.LONGNVARCHAR:
+					return STRING;
+				default:
+					return OBJECT;
+			}
+		}
+	}
+
+	static class Builder {
+		private static final int INITIAL_CAPACITY = 64;
+
+		private final String[] names;
+		private final Column[] columns;
+		private int rowCount;
+
+		private Builder(String[] names, ColumnType[] types) {
+			this.names = names;
+			this.columns = new Column[types.length];
+			for (int i = 0; i < types.length; i++) {
+				columns[i] = Column.create(types[i]);
+			}
+		}
+
+		public void append(SQLRow row) throws SQLException {
+			for (int i = 0; i < columns.length; i++) {
+				columns[i].append(row, i + 1, rowCount);
+			}
+			rowCount += 1;
+		}
+
+		public SQLColumnarResult build() {
+			for (Column column : columns) {
+				column.trim(rowCount);
+			}
+			return new SQLColumnarResult(names, columns, rowCount);
+		}
+
+		private static int grow(int length) {
+			return Math.max(INITIAL_CAPACITY, length * 2);
+		}
+	}
+
+	private static abstract class Column {
+		protected final BitSet nulls = new BitSet();
+
+		public abstract ColumnType type();
+
+		public abstract void append(SQLRow row, int column, int index) throws SQLException;
+
+		public abstract void trim(int size);
+
+		public abstract Object getValue(int index);
+
+		public boolean isNull(int index) {
+			return nulls.get(index);
+		}
+
+		public Object getObject(int index) {
+			return isNull(index) ? null : getValue(index);
+		}
+
+		public static Column create(ColumnType type) {
+			switch (type) {
+				case INT:
+					return new IntColumn();
+				case LONG:
+					return new LongColumn();
+				case DOUBLE:
+					return new DoubleColumn();
+				case STRING:
+					return new StringColumn();
+				default:
+					return new ObjectColumn();
+			}
+		}
+	}
+
+	private static class IntColumn extends Column {
+		private int[] values = new int[0];
+
+		@Override
+		public ColumnType type() {
+			return ColumnType.INT;
+		}
+
+		@Override
+		public void append(SQLRow row, int column, int index) throws SQLException {
+			if (index == values.length) values = Arrays.copyOf(values, Builder.grow(values.length));
+			values[index] = row.getInt(column);
+			if (row.wasNull()) nulls.set(index);
+		}
+
+		@Override
+		public void trim(int size) {
+			values = Arrays.copyOf(values, size);
+		}
+
+		@Override
+		public Object getValue(int index) {
+			return values[index];
+		}
+	}
+
+	private static class LongColumn extends Column {
+		private long[] values = new long[0];
+
+		@Override
+		public ColumnType type() {
+			return ColumnType.LONG;
+		}
+
+		@Override
+		public void append(SQLRow row, int column, int index) throws SQLException {
+			if (index == values.length) values = Arrays.copyOf(values, Builder.grow(values.length));
+			values[index] = row.getLong(column);
+			if (row.wasNull()) nulls.set(index);
+		}
+
+		@Override
+		public void trim(int size) {
+			values = Arrays.copyOf(values, size);
+		}
+
+		@Override
+		public Object getValue(int index) {
+			return values[index];
+		}
+	}
+
+	private static class DoubleColumn extends Column {
+		private double[] values = new double[0];
+
+		@Override
+		public ColumnType type() {
+			return ColumnType.DOUBLE;
+		}
+
+		@Override
+		public void append(SQLRow row, int column, int index) throws SQLException {
+			if (index == values.length) values = Arrays.copyOf(values, Builder.grow(values.length));
+			values[index] = row.getDouble(column);
+			if (row.wasNull()) nulls.set(index);
+		}
+
+		@Override
+		public void trim(int size) {
+			values = Arrays.copyOf(values, size);
+		}
+
+		@Override
+		public Object getValue(int index) {
+			return values[index];
+		}
+	}
+
+	private static class StringColumn extends Column {
+		private final Map<String, Integer> lookup = new HashMap<>();
+		private final List<String> values = new ArrayList<>();
+		private String[] dictionary;
+		private int[] codes = new int[0];
+
+		@Override
+		public ColumnType type() {
+			return ColumnType.STRING;
+		}
+
+		@Override
+		public void append(SQLRow row, int column, int index) throws SQLException {
+			if (index == codes.length) codes = Arrays.copyOf(codes, Builder.grow(codes.length));
+			String value = row.getString(column);
+			if (value == null) {
+				codes[index] = -1;
+				nulls.set(index);
+			} else {
+				codes[index] = lookup.computeIfAbsent(value, key -> { values.add(key); return values.size() - 1; });
+			}
+		}
+
+		@Override
+		public void trim(int size) {
+			codes = Arrays.copyOf(codes, size);
+			dictionary = values.toArray(new String[0]);
+			lookup.clear();
+			values.clear();
+		}
+
+		@Override
+		public Object getValue(int index) {
+			return dictionary[codes[index]];
+		}
+	}
+
+	private static class ObjectColumn extends Column {
+		private Object[] values = new Object[0];
+
+		@Override
+		public ColumnType type() {
+			return ColumnType.OBJECT;
+		}
+
+		@Override
+		public void append(SQLRow row, int column, int index) throws SQLException {
+			if (index == values.length) values = Arrays.copyOf(values, Builder.grow(values.length));
+			values[index] = row.getObject(column);
+			if (values[index] == null) nulls.set(index);
+		}
+
+		@Override
+		public void trim(int size) {
+			values = Arrays.copyOf(values, size);
+		}
+
+		@Override
+		public Object getValue(int index) {
+			return values[index];
+		}
+	}
+}
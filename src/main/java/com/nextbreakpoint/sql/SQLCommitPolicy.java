@@ -0,0 +1,133 @@
+/*
+ * This file is part of SQLTemplate
+ *
+ * Copyright (c) 2016, Andrea Medeghini
+ * All rights reserved.
+ */
+package com.nextbreakpoint.sql;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Provides the policy of the automatic commit of long write templates. The transaction is committed after an update
+ * or batch execution when the number of rows written since the last commit reaches the max number of updates, or when
+ * the time since the last commit reaches the interval. Rows are counted from the update counts, and each execution
+ * counts at least one row. The policy is checked after each execution, therefore no commit happens while the template
+ * is not writing. Optionally a savepoint is set every given number of executions since the last commit, and when an
+ * execution fails the transaction is rolled back to the last savepoint and left open, therefore the caller decides
+ * whether the rows written before the savepoint are committed or rolled back. When commit on failure is enabled, the
+ * rows written before the savepoint are committed instead. Without a savepoint the transaction is rolled back to the
+ * last commit. The rows written after the last automatic commit must be committed with a commit operation at the end
+ * of the template.
+ *
+ * @author Andrea Medeghini
+ *
+ */
+public class SQLCommitPolicy {
+	private final long maxUpdates;
+	private final long intervalNanos;
+	private final int savepointInterval;
+	private final boolean commitOnFailure;
+
+	private SQLCommitPolicy(SQLCommitPolicyBuilder builder) {
+		this.maxUpdates = builder.maxUpdates;
+		this.intervalNanos = builder.intervalNanos;
+		this.savepointInterval = builder.savepointInterval;
+		this.commitOnFailure = builder.commitOnFailure;
+	}
+
+	/**
+	 * Creates a new builder.
+	 * @return new builder
+	 */
+	public static SQLCommitPolicyBuilder builder() {
+		return new SQLCommitPolicyBuilder();
+	}
+
+	boolean isSavepointDue(long executions) {
+		return savepointInterval > 0 && executions > 0 && executions % savepointInterval == 0;
+	}
+
+	boolean commitOnFailure() {
+		return commitOnFailure;
+	}
+
+	boolean isDue(long updates, long nanos) {
+		return (maxUpdates > 0 && updates >= maxUpdates) || (intervalNanos > 0 && nanos >= intervalNanos);
+	}
+
+	public static class SQLCommitPolicyBuilder {
+		private long maxUpdates;
+		private long intervalNanos;
+		private int savepointInterval;
+		private boolean commitOnFailure;
+
+		private SQLCommitPolicyBuilder() {
+		}
+
+		/**
+		 * Sets the max number of rows written before the transaction is committed.
+		 * @param maxUpdates the max number of rows
+		 * @return the builder
+		 */
+		public SQLCommitPolicyBuilder everyUpdates(long maxUpdates) {
+			if (maxUpdates <= 0) {
+				throw new IllegalArgumentException("Max updates must be greater than zero");
+			}
+			this.maxUpdates = maxUpdates;
+			return this;
+		}
+
+		/**
+		 * Sets the max time before the transaction is committed.
+		 * @param interval the interval
+		 * @param unit the unit of the interval
+		 * @return the builder
+		 */
+		public SQLCommitPolicyBuilder every(long interval, TimeUnit unit) {
+			if (interval <= 0) {
+				throw new IllegalArgumentException("Interval must be greater than zero");
+			}
+			this.intervalNanos = unit.toNanos(interval);
+			return this;
+		}
+
+		/**
+		 * Enables savepoints, which are set before an execution every given number of executions since the last
+		 * commit. Each savepoint releases the previous one, therefore a larger interval requires fewer round trips
+		 * but a failure rolls back more executions.
+		 * @param executions the number of executions between savepoints
+		 * @return the builder
+		 */
+		public SQLCommitPolicyBuilder savepoints(int executions) {
+			if (executions <= 0) {
+				throw new IllegalArgumentException("Executions must be greater than zero");
+			}
+			this.savepointInterval = executions;
+			return this;
+		}
+
+		/**
+		 * Enables commit of the rows written before the last savepoint when an execution fails.
+		 * @return the builder
+		 */
+		public SQLCommitPolicyBuilder commitOnFailure() {
+			this.commitOnFailure = true;
+			return this;
+		}
+
+		/**
+		 * Builds the policy.
+		 * @return new policy
+		 */
+		public SQLCommitPolicy build() {
+			if (maxUpdates == 0 && intervalNanos == 0) {
+				throw new IllegalStateException("Max updates or interval must be defined");
+			}
+			if (commitOnFailure && savepointInterval == 0) {
+				throw new IllegalStateException("Commit on failure requires savepoints");
+			}
+			return new SQLCommitPolicy(this);
+		}
+	}
+}
@@ -0,0 +1,348 @@
+/*
+ * This file is part of SQLTemplate
+ *
+ * Copyright (c) 2016, Andrea Medeghini
+ * All rights reserved.
+ */
+package com.nextbreakpoint.sql;
+
+import java.io.IOException;
+import java.nio.Buffer;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.channels.WritableByteChannel;
+import java.nio.charset.Charset;
+import java.nio.charset.CharsetEncoder;
+import java.nio.charset.CoderResult;
+import java.nio.charset.StandardCharsets;
+import java.util.Base64;
+import java.util.Objects;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * Provides an exporter of the rows of a result into a channel. Rows are read from the result one at a time and encoded
+ * into a direct buffer, which is written to the channel when it is full, therefore the memory used doesn't depend on
+ * the number of rows. The buffer is reused by the next export. Rows can be exported as CSV, where null values are
+ * empty fields and empty strings are quoted, except that a row which would be a blank line, because its only column
+ * is null, is written as the null marker, which {@link SQLBulkLoader} loads as null. Values equal to the null marker
+ * are quoted. Rows can also be exported in the binary format of {@link SQLResultBuffer}, where each row is
+ * encoded as the number of columns followed by the values, and each value is encoded as a type followed by the content,
+ * where strings, decimals and arrays are prefixed by their length. UUID and java.time values are encoded as tagged
+ * strings, and values of other types fail the export.
+ *
+ * @author Andrea Medeghini
+ *
+ */
+public class SQLExporter {
+	/**
+	 * Default size of the buffer.
+	 */
+	public static final int DEFAULT_BUFFER_SIZE = 65536;
+	/**
+	 * Default marker of null values.
+	 */
+	public static final String DEFAULT_NULL_MARKER = "\\N";
+
+	private final AtomicReference<ByteBuffer> buffers = new AtomicReference<>();
+	private final Format format;
+	private final char delimiter;
+	private final char quote;
+	private final Charset charset;
+	private final String[] header;
+	private final String nullMarker;
+	private final int bufferSize;
+
+	private SQLExporter(SQLExporterBuilder builder) {
+		this.format = builder.format;
+		this.delimiter = builder.delimiter;
+		this.quote = builder.quote;
+		this.charset = builder.charset;
+		this.header = builder.header;
+		this.nullMarker = builder.nullMarker;
+		this.bufferSize = builder.bufferSize;
+	}
+
+	/**
+	 * Creates a new builder.
+	 * @return new builder
+	 */
+	public static SQLExporterBuilder builder() {
+		return new SQLExporterBuilder();
+	}
+
+	RowWriter writer(WritableByteChannel channel) {
+		Objects.requireNonNull(channel);
+		ByteBuffer buffer = buffers.getAndSet(null);
+		if (buffer == null) {
+			buffer = ByteBuffer.allocateDirect(bufferSize);
+		}
+		((Buffer) buffer).clear();
+		return format == Format.CSV ? new CsvWriter(channel, buffer) : new BinaryWriter(channel, buffer);
+	}
+
+	/**
+	 * Format of the export.
+	 */
+	public enum Format {
+		CSV, BINARY
+	}
+
+	abstract class RowWriter implements SQLRowCallback {
+		private final WritableByteChannel channel;
+		private ByteBuffer buffer;
+
+		public RowWriter(WritableByteChannel channel, ByteBuffer buffer) {
+			this.channel = channel;
+			this.buffer = buffer;
+		}
+
+		public void finish() throws IOException {
+			flush();
+		}
+
+		public void release() {
+			if (buffer != null) {
+				buffers.set(buffer);
+				buffer = null;
+			}
+		}
+
+		protected ByteBuffer buffer() {
+			return buffer;
+		}
+
+		protected void flush() throws IOException {
+			((Buffer) buffer).flip();
+			while (buffer.hasRemaining()) {
+				channel.write(buffer);
+			}
+			((Buffer) buffer).clear();
+		}
+
+		protected void write(ByteBuffer bytes) throws IOException {
+			if (bytes.remaining() > buffer.remaining()) {
+				flush();
+				if (bytes.remaining() > buffer.remaining()) {
+					while (bytes.hasRemaining()) {
+						channel.write(bytes);
+					}
+					return;
+				}
+			}
+			buffer.put(bytes);
+		}
+	}
+
+	private class BinaryWriter extends RowWriter {
+		private final SQLRowCodec codec = new SQLRowCodec();
+
+		public BinaryWriter(WritableByteChannel channel, ByteBuffer buffer) {
+			super(channel, buffer);
+		}
+
+		@Override
+		public void accept(SQLRow row) throws Exception {
+			write(codec.encode(row));
+		}
+	}
+
+	private class CsvWriter extends RowWriter {
+		private final StringBuilder line = new StringBuilder();
+		private final CharsetEncoder encoder = charset.newEncoder();
+		private boolean started;
+
+		public CsvWriter(WritableByteChannel channel, ByteBuffer buffer) {
+			super(channel, buffer);
+		}
+
+		@Override
+		public void accept(SQLRow row) throws Exception {
+			writeHeader();
+			line.setLength(0);
+			int count = row.columnCount();
+			for (int i = 1; i <= count; i++) {
+				if (i > 1) {
+					line.append(delimiter);
+				}
+				appendValue(row.getObject(i));
+			}
+			if (line.length() == 0) {
+				line.append(nullMarker);
+			}
+			writeLine();
+		}
+
+		@Override
+		public void finish() throws IOException {
+			writeHeader();
+			super.finish();
+		}
+
+		private void writeHeader() throws IOException {
+			if (started) {
+				return;
+			}
+			started = true;
+			if (header != null) {
+				line.setLength(0);
+				for (int i = 0; i < header.length; i++) {
+					if (i > 0) {
+						line.append(delimiter);
+					}
+					appendValue(header[i]);
+				}
+				writeLine();
+			}
+		}
+
+		private void appendValue(Object value) {
+			if (value == null) {
+				return;
+			}
+			String text = value instanceof byte[] ? Base64.getEncoder().encodeToString((byte[]) value) : value.toString();
+			if (!text.isEmpty() && !text.equals(nullMarker) && !requiresQuotes(text)) {
+				line.append(text);
+				return;
+			}
+			line.append(quote);
+			for (int i = 0; i < text.length(); i++) {
+				char c = text.charAt(i);
+				if (c == quote) {
+					line.append(quote);
+				}
+				line.append(c);
+			}
+			line.append(quote);
+		}
+
+		private boolean requiresQuotes(String text) {
+			for (int i = 0; i < text.length(); i++) {
+				char c = text.charAt(i);
+				if (c == delimiter || c == quote || c == '\n' || c == '\r') {
+					return true;
+				}
+			}
+			return false;
+		}
+
+		private void writeLine() throws IOException {
+			line.append('\n');
+			CharBuffer chars = CharBuffer.wrap(line);
+			encoder.reset();
+			encode(chars);
+			while (encoder.flush(buffer()).isOverflow()) {
+				flush();
+			}
+		}
+
+		private void encode(CharBuffer chars) throws IOException {
+			for (;;) {
+				CoderResult result = encoder.encode(chars, buffer(), true);
+				if (result.isOverflow()) {
+					flush();
+				} else if (result.isError()) {
+					result.throwException();
+				} else {
+					return;
+				}
+			}
+		}
+	}
+
+	public static class SQLExporterBuilder {
+		private Format format = Format.CSV;
+		private char delimiter = ',';
+		private char quote = '"';
+		private Charset charset = StandardCharsets.UTF_8;
+		private String[] header;
+		private String nullMarker = DEFAULT_NULL_MARKER;
+		private int bufferSize = DEFAULT_BUFFER_SIZE;
+
+		private SQLExporterBuilder() {
+		}
+
+		/**
+		 * Sets the format. The default format is CSV.
+		 * @param format the format
+		 * @return the builder
+		 */
+		public SQLExporterBuilder format(Format format) {
+			this.format = Objects.requireNonNull(format);
+			return this;
+		}
+
+		/**
+		 * Sets the delimiter of CSV fields. The default delimiter is comma.
+		 * @param delimiter the delimiter
+		 * @return the builder
+		 */
+		public SQLExporterBuilder delimiter(char delimiter) {
+			this.delimiter = delimiter;
+			return this;
+		}
+
+		/**
+		 * Sets the quote of CSV fields. The default quote is double quote.
+		 * @param quote the quote
+		 * @return the builder
+		 */
+		public SQLExporterBuilder quote(char quote) {
+			this.quote = quote;
+			return this;
+		}
+
+		/**
+		 * Sets the charset of CSV text. The default charset is UTF-8.
+		 * @param charset the charset
+		 * @return the builder
+		 */
+		public SQLExporterBuilder charset(Charset charset) {
+			this.charset = Objects.requireNonNull(charset);
+			return this;
+		}
+
+		/**
+		 * Sets the names of the columns which are written in the first line of CSV text.
+		 * @param header the names of the columns
+		 * @return the builder
+		 */
+		public SQLExporterBuilder header(String... header) {
+			this.header = Objects.requireNonNull(header).clone();
+			return this;
+		}
+
+		/**
+		 * Sets the marker which is written for rows with only one null column. The default marker is \N.
+		 * @param nullMarker the marker
+		 * @return the builder
+		 */
+		public SQLExporterBuilder nullMarker(String nullMarker) {
+			if (nullMarker.isEmpty()) {
+				throw new IllegalArgumentException("Null marker must not be empty");
+			}
+			this.nullMarker = nullMarker;
+			return this;
+		}
+
+		/**
+		 * Sets the size of the buffer.
+		 * @param bufferSize the size of the buffer
+		 * @return the builder
+		 */
+		public SQLExporterBuilder bufferSize(int bufferSize) {
+			if (bufferSize < 16) {
+				throw new IllegalArgumentException("Buffer size must be at least 16");
+			}
+			this.bufferSize = bufferSize;
+			return this;
+		}
+
+		/**
+		 * Builds the exporter.
+		 * @return new exporter
+		 */
+		public SQLExporter build() {
+			return new SQLExporter(this);
+		}
+	}
+}
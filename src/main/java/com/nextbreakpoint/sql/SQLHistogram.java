@@ -0,0 +1,153 @@
+/*
+ * This file is part of SQLTemplate
+ *
+ * Copyright (c) 2016, Andrea Medeghini
+ * All rights reserved.
+ */
+package com.nextbreakpoint.sql;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAccumulator;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Provides a lock-free histogram of latencies. Values are counted in buckets with logarithmic width, where each
+ * power of two is divided into 16 buckets, therefore percentiles are reported with a relative error less than 7%.
+ * The histogram can be updated and read concurrently, and values read while the histogram is updated
+ * are not guaranteed to be consistent with each other.
+ *
+ * @author Andrea Medeghini
+ *
+ */
+public class SQLHistogram {
+	private static final int SUB_BUCKETS = 16;
+	private static final int SUB_BUCKET_BITS = 4;
+	private static final int BUCKETS = SUB_BUCKETS + (63 - SUB_BUCKET_BITS) * SUB_BUCKETS;
+
+	private final AtomicLongArray buckets = new AtomicLongArray(BUCKETS);
+	private final LongAccumulator max = new LongAccumulator(Math::max, 0);
+	private final LongAdder count = new LongAdder();
+	private final LongAdder total = new LongAdder();
+	private final LongAdder rows = new LongAdder();
+	private final LongAdder failures = new LongAdder();
+
+	/**
+	 * Records given latency.
+	 * @param nanos the latency in nanoseconds
+	 * @param rows the number of rows or -1 if not available
+	 * @param failed true if the operation failed
+	 */
+	public void record(long nanos, long rows, boolean failed) {
+		long value = Math.max(0, nanos);
+		buckets.incrementAndGet(bucket(value));
+		max.accumulate(value);
+		count.increment();
+		total.add(value);
+		if (rows > 0) {
+			this.rows.add(rows);
+		}
+		if (failed) {
+			failures.increment();
+		}
+	}
+
+	/**
+	 * Returns the number of recorded latencies.
+	 * @return the count
+	 */
+	public long count() {
+		return count.sum();
+	}
+
+	/**
+	 * Returns the number of failed operations.
+	 * @return the number of failures
+	 */
+	public long failures() {
+		return failures.sum();
+	}
+
+	/**
+	 * Returns the sum of recorded rows.
+	 * @return the number of rows
+	 */
+	public long rows() {
+		return rows.sum();
+	}
+
+	/**
+	 * Returns the sum of recorded latencies in nanoseconds.
+	 * @return the total time
+	 */
+	public long totalNanos() {
+		return total.sum();
+	}
+
+	/**
+	 * Returns the max recorded latency in nanoseconds.
+	 * @return the max time
+	 */
+	public long maxNanos() {
+		return max.get();
+	}
+
+	/**
+	 * Returns the latency in nanoseconds below which given fraction of latencies falls.
+	 * @param quantile the fraction, between 0 and 1
+	 * @return the latency
+	 */
+	public long percentile(double quantile) {
+		if (quantile < 0 || quantile > 1) {
+			throw new IllegalArgumentException("Quantile must be between 0 and 1");
+		}
+		long[] counts = new long[BUCKETS];
+		long sum = 0;
+		for (int i = 0; i < BUCKETS; i++) {
+			counts[i] = buckets.get(i);
+			sum += counts[i];
+		}
+		long rank = (long) Math.ceil(quantile * sum);
+		long seen = 0;
+		for (int i = 0; i < BUCKETS; i++) {
+			seen += counts[i];
+			if (seen >= rank && counts[i] > 0) {
+				return Math.min(upperBound(i), maxNanos());
+			}
+		}
+		return 0;
+	}
+
+	/**
+	 * Clears the histogram.
+	 */
+	public void reset() {
+		for (int i = 0; i < BUCKETS; i++) {
+			buckets.set(i, 0);
+		}
+		max.reset();
+		count.reset();
+		total.reset();
+		rows.reset();
+		failures.reset();
+	}
+
+	static int bucket(long value) {
+		if (value < SUB_BUCKETS) {
+			return (int) value;
+		}
+		int exponent = 63 - Long.numberOfLeadingZeros(value);
+		int shift = exponent - SUB_BUCKET_BITS;
+		int sub = (int) (value >>> shift) & (SUB_BUCKETS - 1);
+		return SUB_BUCKETS + shift * SUB_BUCKETS + sub;
+	}
+
+	static long upperBound(int bucket) {
+		if (bucket < SUB_BUCKETS) {
+			return bucket;
+		}
+		int shift = (bucket - SUB_BUCKETS) / SUB_BUCKETS;
+		int sub = (bucket - SUB_BUCKETS) % SUB_BUCKETS;
+		long lower = (long) (SUB_BUCKETS + sub) << shift;
+		return lower + (1L << shift) - 1;
+	}
+}
@@ -0,0 +1,183 @@
+/*
+ * This file is part of SQLTemplate
+ *
+ * Copyright (c) 2016, Andrea Medeghini
+ * All rights reserved.
+ */
+package com.nextbreakpoint.sql;
+
+import java.util.Objects;
+
+/**
+ * Provides the rewrite of an INSERT statement with a single VALUES tuple into a statement with many tuples.
+ * The statement INSERT INTO T (A, B) VALUES (?, ?) becomes INSERT INTO T (A, B) VALUES (?, ?), (?, ?), ...
+ * therefore many rows are inserted with a single execution. Statements which have parameters outside the tuple,
+ * or which are not in the form INSERT ... VALUES (...), can't be rewritten.
+ *
+ * @author Andrea Medeghini
+ *
+ */
+final class SQLInsertRewrite {
+	private final String prefix;
+	private final String tuple;
+	private final String suffix;
+	private final int parameters;
+
+	private SQLInsertRewrite(String prefix, String tuple, String suffix, int parameters) {
+		this.prefix = prefix;
+		this.tuple = tuple;
+		this.suffix = suffix;
+		this.parameters = parameters;
+	}
+
+	/**
+	 * Returns the rewrite of given statement, or null if the statement can't be rewritten.
+	 * @param sql the SQL statement
+	 * @return the rewrite or null
+	 */
+	public static SQLInsertRewrite of(String sql) {
+		Objects.requireNonNull(sql);
+		String statement = sql.trim();
+		if (statement.endsWith(";")) {
+			statement = statement.substring(0, statement.length() - 1).trim();
+		}
+		if (!statement.regionMatches(true, 0, "INSERT", 0, 6)) {
+			return null;
+		}
+		int values = findValues(statement);
+		if (values < 0) {
+			return null;
+		}
+		int start = values + 6;
+		while (start < statement.length() && Character.isWhitespace(statement.charAt(start))) {
+			start += 1;
+		}
+		if (start == statement.length() || statement.charAt(start) != '(') {
+			return null;
+		}
+		int end = findClose(statement, start);
+		if (end < 0) {
+			return null;
+		}
+		String prefix = statement.substring(0, start);
+		String tuple = statement.substring(start, end + 1);
+		String suffix = statement.substring(end + 1);
+		int parameters = countParameters(tuple);
+		if (parameters == 0 || countParameters(prefix) > 0 || countParameters(suffix) > 0) {
+			return null;
+		}
+		return new SQLInsertRewrite(prefix, tuple, suffix, parameters);
+	}
+
+	/**
+	 * Returns the number of parameters of each row.
+	 * @return the number of parameters
+	 */
+	public int parameters() {
+		return parameters;
+	}
+
+	/**
+	 * Returns the number of rows of each chunk, which doesn't exceed given number of rows and given number of
+	 * parameters, unless a single row has more parameters than the limit.
+	 * @param maxRows the max number of rows
+	 * @param maxParameters the max number of parameters
+	 * @return the number of rows
+	 */
+	public int chunkSize(int maxRows, int maxParameters) {
+		return Math.max(1, Math.min(maxRows, maxParameters / parameters));
+	}
+
+	/**
+	 * Returns the statement which inserts given number of rows.
+	 * @param rows the number of rows
+	 * @return the SQL statement
+	 */
+	public String sql(int rows) {
+		StringBuilder builder = new StringBuilder(prefix.length() + suffix.length() + rows * (tuple.length() + 2));
+		builder.append(prefix);
+		for (int i = 0; i < rows; i++) {
+			if (i > 0) {
+				builder.append(", ");
+			}
+			builder.append(tuple);
+		}
+		return builder.append(suffix).toString();
+	}
+
+	private static int findValues(String sql) {
+		int length = sql.length();
+		int i = 0;
+		while (i < length) {
+			char c = sql.charAt(i);
+			if (c == '\'' || c == '"' || c == '-' || c == '/') {
+				i = skip(sql, i);
+			} else if (Character.isJavaIdentifierStart(c)) {
+				int end = i + 1;
+				while (end < length && Character.isJavaIdentifierPart(sql.charAt(end))) {
+					end += 1;
+				}
+				if (end - i == 6 && sql.regionMatches(true, i, "VALUES", 0, 6)) {
+					return i;
+				}
+				i = end;
+			} else {
+				i += 1;
+			}
+		}
+		return -1;
+	}
+
+	private static int findClose(String sql, int start) {
+		int depth = 0;
+		int i = start;
+		while (i < sql.length()) {
+			char c = sql.charAt(i);
+			if (c == '(') {
+				depth += 1;
+			} else if (c == ')' && --depth == 0) {
+				return i;
+			} else if (c == '\'' || c == '"' || c == '-' || c == '/') {
+				i = skip(sql, i);
+				continue;
+			}
+			i += 1;
+		}
+		return -1;
+	}
+
+	private static int countParameters(String sql) {
+		int count = 0;
+		int i = 0;
+		while (i < sql.length()) {
+			char c = sql.charAt(i);
+			if (c == '?') {
+				count += 1;
+			} else if (c == '\'' || c == '"' || c == '-' || c == '/') {
+				i = skip(sql, i);
+				continue;
+			}
+			i += 1;
+		}
+		return count;
+	}
+
+	private static int skip(String sql, int i) {
+		char c = sql.charAt(i);
+		char next = i + 1 < sql.length() ? sql.charAt(i + 1) : 0;
+		int end;
+		if (c == '\'' || c == '"') {
+			end = sql.indexOf(c, i + 1);
+			return end < 0 ? sql.length() : end + 1;
+		}
+		if (c == '-' && next == '-') {
+			end = sql.indexOf('\n', i);
+			return end < 0 ? sql.length() : end + 1;
+		}
+		if (c == '/' && next == '*') {
+			end = sql.indexOf("*/", i + 2);
+			return end < 0 ? sql.length() : end + 2;
+		}
+		return i + 1;
+	}
+}
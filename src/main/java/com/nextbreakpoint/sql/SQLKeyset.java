@@ -0,0 +1,165 @@
+/*
+ * This file is part of SQLTemplate
+ *
+ * Copyright (c) 2016, Andrea Medeghini
+ * All rights reserved.
+ */
+package com.nextbreakpoint.sql;
+
+import java.util.Objects;
+import java.util.concurrent.Executor;
+
+/**
+ * Provides the definition of a keyset pagination. The query is executed once for each page, and the values of the key
+ * columns of the last row of a page are bound as last parameters of the query which reads the next page, therefore
+ * the query should have a condition like KEY &gt; ? and it must be ordered by the key. The max number of rows of the
+ * statement is set to the size of the page while the pages are read, therefore the query doesn't require a LIMIT clause.
+ * The first page is read with the start values. Only one page is kept in memory, and optionally the next page is read
+ * by another thread while the rows of the current page are consumed. The next page is read on the same connection,
+ * therefore when prefetch is enabled the connection must not be used by the consumer of the rows, for instance to
+ * execute other statements, until the stream has been consumed or closed. Errors which occur while a page is read
+ * are thrown by the stream as {@link SQLTemplateUncheckedException}.
+ *
+ * @author Andrea Medeghini
+ *
+ */
+public class SQLKeyset {
+	/**
+	 * Default size of the page.
+	 */
+	public static final int DEFAULT_PAGE_SIZE = 1000;
+
+	private final int pageSize;
+	private final int[] keys;
+	private final Object[] start;
+	private final boolean prefetch;
+	private final Executor executor;
+
+	private SQLKeyset(SQLKeysetBuilder builder) {
+		this.pageSize = builder.pageSize;
+		this.keys = builder.keys;
+		this.start = builder.start;
+		this.prefetch = builder.prefetch;
+		this.executor = builder.executor;
+	}
+
+	/**
+	 * Creates a new builder.
+	 * @return new builder
+	 */
+	public static SQLKeysetBuilder builder() {
+		return new SQLKeysetBuilder();
+	}
+
+	int pageSize() {
+		return pageSize;
+	}
+
+	Object[] start() {
+		return start.clone();
+	}
+
+	Executor executor() {
+		return prefetch ? (executor != null ? executor : SQLTemplate.defaultExecutor()) : null;
+	}
+
+	Object[] key(Object[] row) {
+		Object[] values = new Object[keys.length];
+		for (int i = 0; i < keys.length; i++) {
+			if (keys[i] > row.length) {
+				throw new IllegalStateException("Key column " + keys[i] + " not found in row of " + row.length + " columns");
+			}
+			values[i] = row[keys[i] - 1];
+		}
+		return values;
+	}
+
+	public static class SQLKeysetBuilder {
+		private int pageSize = DEFAULT_PAGE_SIZE;
+		private int[] keys = new int[] { 1 };
+		private Object[] start;
+		private boolean prefetch;
+		private Executor executor;
+
+		private SQLKeysetBuilder() {
+		}
+
+		/**
+		 * Sets the max number of rows of each page.
+		 * @param pageSize the size of the page
+		 * @return the builder
+		 */
+		public SQLKeysetBuilder pageSize(int pageSize) {
+			if (pageSize <= 0) {
+				throw new IllegalArgumentException("Page size must be greater than zero");
+			}
+			this.pageSize = pageSize;
+			return this;
+		}
+
+		/**
+		 * Sets the indexes of the key columns in the result, starting from 1. The default key is the first column.
+		 * @param columns the indexes of the columns
+		 * @return the builder
+		 */
+		public SQLKeysetBuilder key(int... columns) {
+			if (columns.length == 0) {
+				throw new IllegalArgumentException("Key must have at least one column");
+			}
+			for (int column : columns) {
+				if (column <= 0) {
+					throw new IllegalArgumentException("Column index must be greater than zero");
+				}
+			}
+			this.keys = columns.clone();
+			return this;
+		}
+
+		/**
+		 * Sets the values of the key which are bound when the first page is read.
+		 * @param values the values of the key columns
+		 * @return the builder
+		 */
+		public SQLKeysetBuilder start(Object... values) {
+			this.start = Objects.requireNonNull(values).clone();
+			return this;
+		}
+
+		/**
+		 * Enables prefetch of the next page with {@link SQLTemplate#defaultExecutor()}.
+		 * The connection must not be used by the consumer of the rows while the pages are read.
+		 * @return the builder
+		 */
+		public SQLKeysetBuilder prefetch() {
+			this.prefetch = true;
+			this.executor = null;
+			return this;
+		}
+
+		/**
+		 * Enables prefetch of the next page with given executor.
+		 * The connection must not be used by the consumer of the rows while the pages are read.
+		 * @param executor the executor which reads the next page
+		 * @return the builder
+		 */
+		public SQLKeysetBuilder prefetch(Executor executor) {
+			this.prefetch = true;
+			this.executor = Objects.requireNonNull(executor);
+			return this;
+		}
+
+		/**
+		 * Builds the keyset.
+		 * @return new keyset
+		 */
+		public SQLKeyset build() {
+			if (start == null) {
+				throw new IllegalStateException("Start values are not defined");
+			}
+			if (start.length != keys.length) {
+				throw new IllegalStateException("Expected " + keys.length + " start values but found " + start.length);
+			}
+			return new SQLKeyset(this);
+		}
+	}
+}
@@ -0,0 +1,36 @@
+/*
+ * This file is part of SQLTemplate
+ *
+ * Copyright (c) 2016, Andrea Medeghini
+ * All rights reserved.
+ */
+package com.nextbreakpoint.sql;
+
+/**
+ * Provides an interface for observing the operations executed by the driver. The listener is invoked after each
+ * operation with the elapsed time in nanoseconds, and it is invoked in the thread which executes the operation,
+ * therefore it must be fast and it must not throw exceptions. Drivers without listener don't measure operations.
+ *
+ * @author Andrea Medeghini
+ *
+ */
+@FunctionalInterface
+public interface SQLListener {
+	/**
+	 * Invoked after an operation has been executed.
+	 * @param phase the phase of the operation
+	 * @param sql the SQL statement, or null for commit and rollback
+	 * @param nanos the elapsed time in nanoseconds
+	 * @param count the number of rows read by fetch, the number of rows updated by execute,
+	 * the number of rows bound by bind, or -1 if not available
+	 * @param error the error or null if the operation succeeded
+	 */
+	public void onOperation(Phase phase, String sql, long nanos, long count, Exception error);
+
+	/**
+	 * Phase of the execution of a statement.
+	 */
+	public enum Phase {
+		PREPARE, BIND, EXECUTE, FETCH, COMMIT, ROLLBACK
+	}
+}
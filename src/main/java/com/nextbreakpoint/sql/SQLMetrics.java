@@ -0,0 +1,109 @@
+/*
+ * This file is part of SQLTemplate
+ *
+ * Copyright (c) 2016, Andrea Medeghini
+ * All rights reserved.
+ */
+package com.nextbreakpoint.sql;
+
+import java.util.Collections;
+import java.util.EnumMap;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Provides a listener which aggregates the operations of each statement into latency histograms.
+ * Histograms are created once for each statement and phase, and they are updated without locks,
+ * therefore the metrics can be shared by many drivers and read concurrently by a monitoring exporter.
+ * Commit and rollback are recorded under the name of the phase. The number of statements is bounded,
+ * and operations of statements which exceed the limit are recorded under the name OTHER.
+ *
+ * @author Andrea Medeghini
+ *
+ */
+public class SQLMetrics implements SQLListener {
+	/**
+	 * Default max number of statements.
+	 */
+	public static final int DEFAULT_MAX_STATEMENTS = 1000;
+
+	private static final String OTHER = "OTHER";
+
+	private final Map<String, Map<Phase, SQLHistogram>> statements = new ConcurrentHashMap<>();
+	private final int maxStatements;
+
+	private SQLMetrics(int maxStatements) {
+		if (maxStatements <= 0) {
+			throw new IllegalArgumentException("Max statements must be greater than zero");
+		}
+		this.maxStatements = maxStatements;
+	}
+
+	/**
+	 * Creates a new instance with default max number of statements.
+	 * @return new instance
+	 */
+	public static SQLMetrics create() {
+		return new SQLMetrics(DEFAULT_MAX_STATEMENTS);
+	}
+
+	/**
+	 * Creates a new instance with given max number of statements.
+	 * @param maxStatements the max number of statements
+	 * @return new instance
+	 */
+	public static SQLMetrics create(int maxStatements) {
+		return new SQLMetrics(maxStatements);
+	}
+
+	@Override
+	public void onOperation(Phase phase, String sql, long nanos, long count, Exception error) {
+		histograms(sql != null ? sql : phase.name()).get(phase).record(nanos, count, error != null);
+	}
+
+	/**
+	 * Returns the statements which have been recorded.
+	 * @return the statements
+	 */
+	public Set<String> statements() {
+		return Collections.unmodifiableSet(statements.keySet());
+	}
+
+	/**
+	 * Returns the histogram of given statement and phase, or null if the statement has not been recorded.
+	 * @param sql the SQL statement, or the name of the phase for commit and rollback
+	 * @param phase the phase
+	 * @return the histogram
+	 */
+	public SQLHistogram histogram(String sql, Phase phase) {
+		Objects.requireNonNull(phase);
+		Map<Phase, SQLHistogram> histograms = statements.get(Objects.requireNonNull(sql));
+		return histograms != null ? histograms.get(phase) : null;
+	}
+
+	/**
+	 * Removes all statements.
+	 */
+	public void reset() {
+		statements.clear();
+	}
+
+	private Map<Phase, SQLHistogram> histograms(String sql) {
+		Map<Phase, SQLHistogram> histograms = statements.get(sql);
+		if (histograms == null) {
+			String key = statements.size() < maxStatements ? sql : OTHER;
+			histograms = statements.computeIfAbsent(key, k -> createHistograms());
+		}
+		return histograms;
+	}
+
+	private static Map<Phase, SQLHistogram> createHistograms() {
+		Map<Phase, SQLHistogram> histograms = new EnumMap<>(Phase.class);
+		for (Phase phase : Phase.values()) {
+			histograms.put(phase, new SQLHistogram());
+		}
+		return Collections.unmodifiableMap(histograms);
+	}
+}
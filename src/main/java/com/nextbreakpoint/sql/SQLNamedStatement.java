@@ -0,0 +1,129 @@
+/*
+ * This file is part of SQLTemplate
+ *
+ * Copyright (c) 2016, Andrea Medeghini
+ * All rights reserved.
+ */
+package com.nextbreakpoint.sql;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Objects;
+
+/**
+ * Provides the plan of a statement with named parameters. The plan contains the statement where each parameter :name
+ * is replaced by a JDBC placeholder, and the name of the parameter for each JDBC index. Statements are parsed once when
+ * the template is built. Parameters are not recognized inside literals, dollar quoted strings, quoted identifiers
+ * delimited by double quotes, backticks or brackets, comments and casts like ::type.
+ *
+ * @author Andrea Medeghini
+ *
+ */
+final class SQLNamedStatement {
+	private final String sql;
+	private final String[] names;
+
+	private SQLNamedStatement(String sql, String[] names) {
+		this.sql = sql;
+		this.names = names;
+	}
+
+	/**
+	 * Returns the statement with JDBC placeholders.
+	 * @return the SQL statement
+	 */
+	public String sql() {
+		return sql;
+	}
+
+	/**
+	 * Returns the names of the parameters ordered by JDBC index. The array is empty if the statement has no named parameters.
+	 * @return the names
+	 */
+	public String[] names() {
+		return names;
+	}
+
+	/**
+	 * Returns true if the statement has named parameters.
+	 * @return true if the statement has named parameters
+	 */
+	public boolean hasNames() {
+		return names.length > 0;
+	}
+
+	/**
+	 * Parses given statement.
+	 * @param sql the SQL statement
+	 * @return the plan
+	 * @throws IllegalArgumentException if named and positional parameters are mixed
+	 */
+	public static SQLNamedStatement parse(String sql) {
+		Objects.requireNonNull(sql);
+		StringBuilder builder = new StringBuilder(sql.length());
+		List<String> names = new ArrayList<>();
+		boolean positional = false;
+		int length = sql.length();
+		int i = 0;
+		while (i < length) {
+			char c = sql.charAt(i);
+			char next = i + 1 < length ? sql.charAt(i + 1) : 0;
+			int end;
+			if (c == '\'' || c == '"' || c == '`') {
+				end = sql.indexOf(c, i + 1);
+				end = end < 0 ? length : end + 1;
+			} else if (c == '[') {
+				end = sql.indexOf(']', i + 1);
+				end = end < 0 ? length : end + 1;
+			} else if (c == '$' && (end = dollarQuote(sql, i)) > i) {
+				String tag = sql.substring(i, end);
+				end = sql.indexOf(tag, end);
+				end = end < 0 ? length : end + tag.length();
+			} else if (c == '-' && next == '-') {
+				end = sql.indexOf('\n', i);
+				end = end < 0 ? length : end + 1;
+			} else if (c == '/' && next == '*') {
+				end = sql.indexOf("*/", i + 2);
+				end = end < 0 ? length : end + 2;
+			} else if (c == ':' && next == ':') {
+				end = i + 2;
+			} else if (c == ':' && Character.isJavaIdentifierStart(next)) {
+				end = i + 2;
+				while (end < length && Character.isJavaIdentifierPart(sql.charAt(end))) {
+					end += 1;
+				}
+				names.add(sql.substring(i + 1, end));
+				builder.append('?');
+				i = end;
+				continue;
+			} else {
+				positional |= c == '?';
+				end = i + 1;
+			}
+			builder.append(sql, i, end);
+			i = end;
+		}
+		if (names.isEmpty()) {
+			return new SQLNamedStatement(sql, new String[0]);
+		}
+		if (positional) {
+			throw new IllegalArgumentException("Named and positional parameters can't be mixed");
+		}
+		return new SQLNamedStatement(builder.toString(), names.toArray(new String[0]));
+	}
+
+	private static int dollarQuote(String sql, int start) {
+		int i = start + 1;
+		if (i > 1 && Character.isJavaIdentifierPart(sql.charAt(start - 1))) {
+			return start;
+		}
+		while (i < sql.length() && sql.charAt(i) != '$') {
+			char c = sql.charAt(i);
+			if (!(Character.isLetter(c) || c == '_' || (i > start + 1 && Character.isDigit(c)))) {
+				return start;
+			}
+			i += 1;
+		}
+		return i < sql.length() ? i + 1 : start;
+	}
+}
@@ -0,0 +1,88 @@
+/*
+ * This file is part of SQLTemplate
+ *
+ * Copyright (c) 2016, Andrea Medeghini
+ * All rights reserved.
+ */
+package com.nextbreakpoint.sql;
+
+/**
+ * Provides a placeholder for a parameter which is bound when the template is applied. The placeholder refers to
+ * an argument by index, and the argument is taken from the arguments provided to {@link SQLTemplate#apply(java.sql.Connection, Object...)}
+ * or from the parameters of the partition when the template is applied with {@link SQLTemplate#applyParallel}.
+ * Templates with placeholders are immutable and can be applied concurrently with different arguments.
+ *
+ * @author Andrea Medeghini
+ *
+ */
+public final class SQLParam {
+	private final int index;
+
+	private SQLParam(int index) {
+		if (index < 0) {
+			throw new IllegalArgumentException("Index must not be negative");
+		}
+		this.index = index;
+	}
+
+	/**
+	 * Creates a placeholder for the argument with given index.
+	 * @param index the index of the argument, starting from 0
+	 * @return new instance
+	 */
+	public static SQLParam of(int index) {
+		return new SQLParam(index);
+	}
+
+	/**
+	 * Returns the index of the argument.
+	 * @return the index
+	 */
+	public int getIndex() {
+		return index;
+	}
+
+	@Override
+	public boolean equals(Object o) {
+		if (this == o) return true;
+		if (o == null || getClass() != o.getClass()) return false;
+		return index == ((SQLParam) o).index;
+	}
+
+	@Override
+	public int hashCode() {
+		return index;
+	}
+
+	@Override
+	public String toString() {
+		return "SQLParam[" + index + "]";
+	}
+
+	static boolean hasParams(Object[] params) {
+		if (params != null) {
+			for (Object param : params) {
+				if (param instanceof SQLParam) {
+					return true;
+				}
+			}
+		}
+		return false;
+	}
+
+	static Object[] bind(Object[] params, Object[] arguments) throws SQLTemplateException {
+		Object[] values = new Object[params.length];
+		for (int i = 0; i < params.length; i++) {
+			if (params[i] instanceof SQLParam) {
+				int index = ((SQLParam) params[i]).index;
+				if (index >= arguments.length) {
+					throw new SQLTemplateException("Missing argument " + index);
+				}
+				values[i] = arguments[index];
+			} else {
+				values[i] = params[i];
+			}
+		}
+		return values;
+	}
+}
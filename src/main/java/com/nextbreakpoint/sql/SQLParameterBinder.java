@@ -0,0 +1,25 @@
+/*
+ * This file is part of SQLTemplate
+ *
+ * Copyright (c) 2016, Andrea Medeghini
+ * All rights reserved.
+ */
+package com.nextbreakpoint.sql;
+
+/**
+ * Provides an interface for binding an object to the parameters of a statement.
+ *
+ * @author Andrea Medeghini
+ *
+ * @param <T> the type of object
+ */
+@FunctionalInterface
+public interface SQLParameterBinder<T> {
+	/**
+	 * Sets the parameters from given object.
+	 * @param item the object
+	 * @param parameters the parameters of the current statement
+	 * @throws Exception if the parameters can't be set
+	 */
+	public void bind(T item, SQLParameters parameters) throws Exception;
+}
@@ -0,0 +1,66 @@
+/*
+ * This file is part of SQLTemplate
+ *
+ * Copyright (c) 2016, Andrea Medeghini
+ * All rights reserved.
+ */
+package com.nextbreakpoint.sql;
+
+import java.sql.SQLException;
+
+/**
+ * Provides an interface for setting the parameters of the current statement. Parameters are numbered from 1,
+ * and primitive values are set without boxing.
+ *
+ * @author Andrea Medeghini
+ *
+ */
+public interface SQLParameters {
+	/**
+	 * Sets given parameter to null.
+	 * @param index the parameter index
+	 * @param sqlType the SQL type defined in java.sql.Types
+	 * @throws SQLException if the parameter can't be set
+	 */
+	public void setNull(int index, int sqlType) throws SQLException;
+
+	/**
+	 * Sets given parameter to int value.
+	 * @param index the parameter index
+	 * @param value the value
+	 * @throws SQLException if the parameter can't be set
+	 */
+	public void setInt(int index, int value) throws SQLException;
+
+	/**
+	 * Sets given parameter to long value.
+	 * @param index the parameter index
+	 * @param value the value
+	 * @throws SQLException if the parameter can't be set
+	 */
+	public void setLong(int index, long value) throws SQLException;
+
+	/**
+	 * Sets given parameter to double value.
+	 * @param index the parameter index
+	 * @param value the value
+	 * @throws SQLException if the parameter can't be set
+	 */
+	public void setDouble(int index, double value) throws SQLException;
+
+	/**
+	 * Sets given parameter to string value.
+	 * @param index the parameter index
+	 * @param value the value
+	 * @throws SQLException if the parameter can't be set
+	 */
+	public void setString(int index, String value) throws SQLException;
+
+	/**
+	 * Sets given parameter to object value. The value is set with the setter of its type.
+	 * @param index the parameter index
+	 * @param value the value
+	 * @throws SQLException if the parameter can't be set
+	 */
+	public void setObject(int index, Object value) throws SQLException;
+}
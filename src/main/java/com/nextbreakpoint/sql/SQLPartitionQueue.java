@@ -0,0 +1,168 @@
+/*
+ * This file is part of SQLTemplate
+ *
+ * Copyright (c) 2016, Andrea Medeghini
+ * All rights reserved.
+ */
+package com.nextbreakpoint.sql;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Spliterator;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
+
+/**
+ * Provides the bounded queues which pass the rows of the partitions to the consumer of the stream. Rows in the order
+ * of partitions are passed through one queue for each partition, and rows in the order of completion are passed
+ * through one queue shared by all partitions. Partitions wait when the queue is full, therefore the memory used
+ * doesn't depend on the number of rows. The first failure of a partition is thrown by the stream, and closing the
+ * stream cancels the partitions which are still running.
+ *
+ * @author Andrea Medeghini
+ *
+ */
+final class SQLPartitionQueue {
+	private static final Logger logger = Logger.getLogger(SQLPartitionQueue.class.getName());
+	private static final Object END = new Object();
+
+	private final List<BlockingQueue<Object>> queues;
+	private final int[] pending;
+	private final boolean ordered;
+	private volatile boolean cancelled;
+
+	/**
+	 * Creates a new instance.
+	 * @param partitions the number of partitions
+	 * @param ordered true if rows must be returned in the order of partitions
+	 * @param capacity the capacity of each queue
+	 */
+	public SQLPartitionQueue(int partitions, boolean ordered, int capacity) {
+		int count = ordered ? partitions : Math.min(partitions, 1);
+		this.queues = new ArrayList<>(count);
+		this.pending = new int[count];
+		this.ordered = ordered;
+		for (int i = 0; i < count; i++) {
+			queues.add(new ArrayBlockingQueue<>(capacity));
+			pending[i] = ordered ? 1 : partitions;
+		}
+	}
+
+	/**
+	 * Passes a row of given partition to the consumer, waiting while the queue is full.
+	 * @param partition the index of the partition
+	 * @param row the row
+	 * @throws SQLTemplateException if the stream has been cancelled
+	 * @throws InterruptedException if the thread has been interrupted
+	 */
+	public void put(int partition, Object[] row) throws SQLTemplateException, InterruptedException {
+		offer(partition, row);
+	}
+
+	/**
+	 * Signals that given partition has completed, successfully when the error is null. The error is logged when it
+	 * can't be passed to the consumer because the stream has been cancelled.
+	 * @param partition the index of the partition
+	 * @param error the error or null
+	 */
+	public void end(int partition, SQLTemplateException error) {
+		try {
+			if (error != null) {
+				offer(partition, new Failure(error));
+			}
+			offer(partition, END);
+		} catch (SQLTemplateException e) {
+			if (error != null) {
+				logger.log(Level.WARNING, "Partition " + partition + " failed after the stream has been cancelled", error);
+			} else {
+				logger.log(Level.FINE, "Partition " + partition + " completed after the stream has been cancelled", e);
+			}
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		}
+	}
+
+	/**
+	 * Cancels the partitions which are still running.
+	 */
+	public void cancel() {
+		cancelled = true;
+		queues.forEach(BlockingQueue::clear);
+	}
+
+	/**
+	 * Returns the rows of all partitions as stream. Closing the stream cancels the partitions.
+	 * @return the stream
+	 */
+	public Stream<Object[]> stream() {
+		return StreamSupport.stream(new RowSpliterator(), false).onClose(this::cancel);
+	}
+
+	private void offer(int partition, Object item) throws SQLTemplateException, InterruptedException {
+		BlockingQueue<Object> queue = queues.get(ordered ? partition : 0);
+		do {
+			if (cancelled) {
+				throw new SQLTemplateException("Partition has been cancelled");
+			}
+		} while (!queue.offer(item, 100, TimeUnit.MILLISECONDS));
+	}
+
+	private static class Failure {
+		private final SQLTemplateException error;
+
+		public Failure(SQLTemplateException error) {
+			this.error = error;
+		}
+	}
+
+	private class RowSpliterator implements Spliterator<Object[]> {
+		private int index;
+
+		@Override
+		public boolean tryAdvance(Consumer<? super Object[]> consumer) {
+			while (index < queues.size()) {
+				Object item;
+				try {
+					item = queues.get(index).take();
+				} catch (InterruptedException e) {
+					cancel();
+					Thread.currentThread().interrupt();
+					throw new SQLTemplateUncheckedException(new SQLTemplateException("Stream has been interrupted", e));
+				}
+				if (item == END) {
+					if (--pending[index] == 0) {
+						index += 1;
+					}
+				} else if (item instanceof Failure) {
+					cancel();
+					throw new SQLTemplateUncheckedException(((Failure) item).error);
+				} else {
+					consumer.accept((Object[]) item);
+					return true;
+				}
+			}
+			return false;
+		}
+
+		@Override
+		public Spliterator<Object[]> trySplit() {
+			return null;
+		}
+
+		@Override
+		public long estimateSize() {
+			return Long.MAX_VALUE;
+		}
+
+		@Override
+		public int characteristics() {
+			return Spliterator.NONNULL;
+		}
+	}
+}
@@ -0,0 +1,74 @@
+/*
+ * This file is part of SQLTemplate
+ *
+ * Copyright (c) 2016, Andrea Medeghini
+ * All rights reserved.
+ */
+package com.nextbreakpoint.sql;
+
+import java.math.BigInteger;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Objects;
+
+/**
+ * Provides an interface for splitting a query into partitions. Each partition is defined by the parameters
+ * which are bound to the query when the partition is executed.
+ *
+ * @author Andrea Medeghini
+ *
+ */
+@FunctionalInterface
+public interface SQLPartitioner {
+	/**
+	 * Returns the parameters of each partition.
+	 * @return the list of parameters
+	 */
+	public List<Object[]> partitions();
+
+	/**
+	 * Creates a partitioner which splits the range of keys from min (inclusive) to max (exclusive) into given number of ranges.
+	 * The parameters of each partition are the lower bound (inclusive) and the upper bound (exclusive) of the range,
+	 * therefore the query should have a condition like KEY &gt;= ? AND KEY &lt; ?. The bounds are computed without
+	 * overflow for any range of keys.
+	 * @param min the min key
+	 * @param max the max key
+	 * @param count the number of partitions
+	 * @return new partitioner
+	 */
+	public static SQLPartitioner ranges(long min, long max, int count) {
+		if (count <= 0) {
+			throw new IllegalArgumentException("Count must be greater than zero");
+		}
+		if (max < min) {
+			throw new IllegalArgumentException("Max must not be less than min");
+		}
+		return () -> {
+			List<Object[]> partitions = new ArrayList<>(count);
+			BigInteger start = BigInteger.valueOf(min);
+			BigInteger size = BigInteger.valueOf(max).subtract(start);
+			BigInteger divisor = BigInteger.valueOf(count);
+			long lower = min;
+			for (int i = 0; i < count; i++) {
+				long upper = start.add(size.multiply(BigInteger.valueOf(i + 1)).divide(divisor)).longValue();
+				if (upper > lower) {
+					partitions.add(new Object[] { lower, upper });
+				}
+				lower = upper;
+			}
+			return partitions;
+		};
+	}
+
+	/**
+	 * Creates a partitioner with given parameters.
+	 * @param partitions the list of parameters
+	 * @return new partitioner
+	 */
+	public static SQLPartitioner of(List<Object[]> partitions) {
+		Objects.requireNonNull(partitions);
+		List<Object[]> values = Collections.unmodifiableList(new ArrayList<>(partitions));
+		return () -> values;
+	}
+}
@@ -0,0 +1,56 @@
+/*
+ * This file is part of SQLTemplate
+ *
+ * Copyright (c) 2016, Andrea Medeghini
+ * All rights reserved.
+ */
+package com.nextbreakpoint.sql;
+
+import com.nextbreakpoint.Try;
+
+import java.util.Objects;
+
+/**
+ * Provides an operation which executes a flat sequence of steps in a loop. The plan replaces a chain of nested
+ * operations, therefore the stack depth doesn't depend on the number of steps, and only one Try instance is
+ * created for the whole sequence.
+ *
+ * @author Andrea Medeghini
+ *
+ */
+class SQLPlan implements SQLOperation {
+	private final Step[] steps;
+
+	SQLPlan(Step[] steps) {
+		this.steps = Objects.requireNonNull(steps);
+	}
+
+	@Override
+	public Try<SQLTemplateDriver, SQLTemplateException> apply(SQLTemplateDriver driver) {
+		return SQLTemplateDriver.tryCallable(() -> execute(driver));
+	}
+
+	/**
+	 * Returns the number of steps.
+	 * @return the number of steps
+	 */
+	public int size() {
+		return steps.length;
+	}
+
+	private SQLTemplateDriver execute(SQLTemplateDriver driver) throws Exception {
+		SQLTemplateDriver current = driver;
+		for (Step step : steps) {
+			current = step.execute(current);
+		}
+		return current;
+	}
+
+	/**
+	 * Step of a plan. The step returns the driver which is passed to the next step, and throws an exception when it fails.
+	 */
+	@FunctionalInterface
+	interface Step {
+		SQLTemplateDriver execute(SQLTemplateDriver driver) throws Exception;
+	}
+}
@@ -0,0 +1,233 @@
+/*
+ * This file is part of SQLTemplate
+ *
+ * Copyright (c) 2016, Andrea Medeghini
+ * All rights reserved.
+ */
+package com.nextbreakpoint.sql;
+
+import java.util.Objects;
+import java.util.concurrent.Executor;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Provides a publisher of the rows of a result. Rows are read from the result only when the subscriber requests them,
+ * and the fetch size of the result follows the demand of the subscriber, therefore a slow subscriber slows down
+ * the reading of the result instead of buffering rows in memory. The publisher accepts only one subscriber, and
+ * the result is closed when all rows have been published, when an error occurs, or when the subscription is cancelled.
+ * Subscriber and Subscription have the same methods of the interfaces defined in java.util.concurrent.Flow, but they
+ * are different types, therefore on Java 9 or later the publisher can be adapted to Flow by wrapping both of them:
+ * <pre>
+ * Flow.Publisher&lt;Object[]&gt; flow = subscriber -&gt; publisher.subscribe(new SQLPublisher.Subscriber&lt;Object[]&gt;() {
+ *     public void onSubscribe(SQLPublisher.Subscription s) {
+ *         subscriber.onSubscribe(new Flow.Subscription() {
+ *             public void request(long n) { s.request(n); }
+ *             public void cancel() { s.cancel(); }
+ *         });
+ *     }
+ *     public void onNext(Object[] item) { subscriber.onNext(item); }
+ *     public void onError(Throwable throwable) { subscriber.onError(throwable); }
+ *     public void onComplete() { subscriber.onComplete(); }
+ * });
+ * </pre>
+ *
+ * @author Andrea Medeghini
+ *
+ */
+public class SQLPublisher {
+	/**
+	 * Max number of rows fetched from the database in each round trip.
+	 */
+	public static final int MAX_FETCH_SIZE = 1000;
+
+	private final AtomicBoolean subscribed = new AtomicBoolean();
+	private final Cursor cursor;
+	private final Runnable onClose;
+	private final Executor executor;
+
+	SQLPublisher(Cursor cursor, Runnable onClose, Executor executor) {
+		this.cursor = Objects.requireNonNull(cursor);
+		this.onClose = Objects.requireNonNull(onClose);
+		this.executor = Objects.requireNonNull(executor);
+	}
+
+	/**
+	 * Subscribes given subscriber. The subscriber receives an error if the publisher has been already subscribed.
+	 * @param subscriber the subscriber
+	 */
+	public void subscribe(Subscriber<? super Object[]> subscriber) {
+		Objects.requireNonNull(subscriber);
+		if (!subscribed.compareAndSet(false, true)) {
+			subscriber.onSubscribe(new EmptySubscription());
+			subscriber.onError(new IllegalStateException("Publisher has been already subscribed"));
+			return;
+		}
+		CursorSubscription subscription = new CursorSubscription(subscriber);
+		subscriber.onSubscribe(subscription);
+	}
+
+	/**
+	 * Receiver of rows. Methods are invoked sequentially, and no method is invoked after onError or onComplete.
+	 * @param <T> the type of items
+	 */
+	public interface Subscriber<T> {
+		/**
+		 * Invoked before any other method with the subscription.
+		 * @param subscription the subscription
+		 */
+		void onSubscribe(Subscription subscription);
+
+		/**
+		 * Invoked with the next item.
+		 * @param item the item
+		 */
+		void onNext(T item);
+
+		/**
+		 * Invoked when an error occurs. The subscription is cancelled.
+		 * @param throwable the error
+		 */
+		void onError(Throwable throwable);
+
+		/**
+		 * Invoked when all items have been published.
+		 */
+		void onComplete();
+	}
+
+	/**
+	 * Link between publisher and subscriber.
+	 */
+	public interface Subscription {
+		/**
+		 * Adds given number of items to the demand of the subscriber.
+		 * @param n the number of items, which must be greater than zero
+		 */
+		void request(long n);
+
+		/**
+		 * Stops the publication of items and releases the result.
+		 */
+		void cancel();
+	}
+
+	interface Cursor {
+		Object[] next() throws Exception;
+
+		void fetchSize(int size) throws Exception;
+	}
+
+	private static class EmptySubscription implements Subscription {
+		@Override
+		public void request(long n) {
+		}
+
+		@Override
+		public void cancel() {
+		}
+	}
+
+	private class CursorSubscription implements Subscription, Runnable {
+		private final AtomicLong requested = new AtomicLong();
+		private final AtomicInteger pending = new AtomicInteger();
+		private final Subscriber<? super Object[]> subscriber;
+		private volatile boolean cancelled;
+		private volatile Throwable error;
+		private boolean done;
+		private int fetchSize;
+
+		public CursorSubscription(Subscriber<? super Object[]> subscriber) {
+			this.subscriber = subscriber;
+		}
+
+		@Override
+		public void request(long n) {
+			if (n <= 0) {
+				error = new IllegalArgumentException("Request must be greater than zero");
+				cancelled = true;
+			} else {
+				requested.getAndUpdate(r -> r + n < 0 ? Long.MAX_VALUE : r + n);
+			}
+			schedule();
+		}
+
+		@Override
+		public void cancel() {
+			cancelled = true;
+			schedule();
+		}
+
+		@Override
+		public void run() {
+			int missed = 1;
+			do {
+				drain();
+				missed = pending.addAndGet(-missed);
+			} while (missed != 0);
+		}
+
+		private void schedule() {
+			if (pending.getAndIncrement() == 0) {
+				try {
+					executor.execute(this);
+				} catch (RuntimeException e) {
+					error = e;
+					cancelled = true;
+					run();
+				}
+			}
+		}
+
+		private void drain() {
+			if (done) {
+				return;
+			}
+			try {
+				long emitted = 0;
+				long demand = requested.get();
+				updateFetchSize(demand);
+				while (!cancelled && emitted < demand) {
+					Object[] row = cursor.next();
+					if (row == null) {
+						close();
+						subscriber.onComplete();
+						return;
+					}
+					subscriber.onNext(row);
+					if (++emitted == demand) {
+						demand = requested.addAndGet(-emitted);
+						emitted = 0;
+						updateFetchSize(demand);
+					}
+				}
+				if (emitted > 0) {
+					requested.addAndGet(-emitted);
+				}
+				if (cancelled) {
+					close();
+					if (error != null) {
+						subscriber.onError(error);
+					}
+				}
+			} catch (Exception e) {
+				close();
+				subscriber.onError(e);
+			}
+		}
+
+		private void updateFetchSize(long demand) throws Exception {
+			int size = (int) Math.min(demand, MAX_FETCH_SIZE);
+			if (size > 0 && size != fetchSize) {
+				cursor.fetchSize(size);
+				fetchSize = size;
+			}
+		}
+
+		private void close() {
+			done = true;
+			onClose.run();
+		}
+	}
+}
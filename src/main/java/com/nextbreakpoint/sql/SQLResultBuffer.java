@@ -0,0 +1,241 @@
+/*
+ * This file is part of SQLTemplate
+ *
+ * Copyright (c) 2016, Andrea Medeghini
+ * All rights reserved.
+ */
+package com.nextbreakpoint.sql;
+
+import com.nextbreakpoint.Try;
+
+import java.io.IOException;
+import java.lang.reflect.Field;
+import java.lang.reflect.Method;
+import java.nio.Buffer;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.Spliterator;
+import java.util.Spliterators;
+import java.util.function.Consumer;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
+
+/**
+ * Provides a buffer which stores the rows of a result outside of the heap. Rows are encoded into direct buffers
+ * until the size of the buffer reaches the given threshold, then rows are encoded into a temporary file which is
+ * mapped in memory. Rows can be read many times as stream, and the buffer must be closed in order to release the
+ * memory and delete the temporary file. The direct buffers are freed and the mapped buffers are unmapped when the
+ * buffer is closed, without waiting for the garbage collector, when the runtime allows it, and streams which are
+ * read after the buffer has been closed throw IllegalStateException.
+ *
+ * @author Andrea Medeghini
+ *
+ */
+public class SQLResultBuffer implements AutoCloseable {
+	/**
+	 * Default size of each chunk of memory.
+	 */
+	public static final int DEFAULT_CHUNK_SIZE = 1 << 20;
+
+	private final List<ByteBuffer> chunks = new ArrayList<>();
+	private final long threshold;
+	private final int chunkSize;
+	private SQLRowCodec codec = new SQLRowCodec();
+	private ByteBuffer chunk;
+	private FileChannel channel;
+	private Path file;
+	private long memorySize;
+	private long fileSize;
+	private long rowCount;
+	private boolean closed;
+
+	private SQLResultBuffer(long threshold, int chunkSize) {
+		if (threshold < 0) {
+			throw new IllegalArgumentException("Threshold must not be negative");
+		}
+		if (chunkSize <= 0) {
+			throw new IllegalArgumentException("Chunk size must be greater than zero");
+		}
+		this.threshold = threshold;
+		this.chunkSize = chunkSize;
+	}
+
+	/**
+	 * Creates a new instance which spills to file when the memory used is greater than given threshold.
+	 * @param threshold the max number of bytes stored in memory
+	 * @return new instance
+	 */
+	public static SQLResultBuffer create(long threshold) {
+		return new SQLResultBuffer(threshold, DEFAULT_CHUNK_SIZE);
+	}
+
+	/**
+	 * Creates a new instance which spills to file when the memory used is greater than given threshold.
+	 * @param threshold the max number of bytes stored in memory
+	 * @param chunkSize the size of each chunk of memory
+	 * @return new instance
+	 */
+	public static SQLResultBuffer create(long threshold, int chunkSize) {
+		return new SQLResultBuffer(threshold, chunkSize);
+	}
+
+	/**
+	 * Appends a row.
+	 * @param row the row
+	 * @throws SQLException if the row can't be read
+	 * @throws IOException if the row can't be written
+	 */
+	public synchronized void append(SQLRow row) throws SQLException, IOException {
+		ensureOpen();
+		ByteBuffer encoded = codec.encode(row);
+		ensureChunk(encoded.remaining()).put(encoded);
+		rowCount += 1;
+	}
+
+	/**
+	 * Returns the rows as stream. The stream can be created many times until the buffer is closed.
+	 * @return the stream
+	 */
+	public synchronized Stream<Object[]> stream() {
+		ensureOpen();
+		List<ByteBuffer> buffers = new ArrayList<>(chunks.size());
+		for (ByteBuffer buffer : chunks) {
+			ByteBuffer view = buffer.duplicate();
+			((Buffer) view).flip();
+			buffers.add(view);
+		}
+		return StreamSupport.stream(Spliterators.spliterator(new RowIterator(buffers), rowCount, Spliterator.ORDERED | Spliterator.NONNULL), false);
+	}
+
+	/**
+	 * Returns the number of rows.
+	 * @return the number of rows
+	 */
+	public synchronized long rowCount() {
+		return rowCount;
+	}
+
+	/**
+	 * Returns the number of bytes allocated in memory.
+	 * @return the number of bytes
+	 */
+	public synchronized long memorySize() {
+		return memorySize;
+	}
+
+	/**
+	 * Returns the number of bytes allocated in the temporary file.
+	 * @return the number of bytes
+	 */
+	public synchronized long fileSize() {
+		return fileSize;
+	}
+
+	/**
+	 * Releases the memory and deletes the temporary file.
+	 */
+	@Override
+	public synchronized void close() {
+		if (closed) {
+			return;
+		}
+		closed = true;
+		chunks.forEach(CleanerHolder.cleaner);
+		chunks.clear();
+		chunk = null;
+		codec = null;
+		if (channel != null) {
+			Try.of(() -> { channel.close(); return null; }).execute();
+			Try.of(() -> Files.deleteIfExists(file)).execute();
+		}
+	}
+
+	private void ensureOpen() {
+		if (closed) {
+			throw new IllegalStateException("Buffer is closed");
+		}
+	}
+
+	private ByteBuffer ensureChunk(int size) throws IOException {
+		if (chunk == null || chunk.remaining() < size) {
+			int capacity = Math.max(chunkSize, size);
+			if (memorySize + capacity <= threshold) {
+				chunk = ByteBuffer.allocateDirect(capacity);
+				memorySize += capacity;
+			} else {
+				chunk = mapChunk(capacity);
+				fileSize += capacity;
+			}
+			chunks.add(chunk);
+		}
+		return chunk;
+	}
+
+	private ByteBuffer mapChunk(int capacity) throws IOException {
+		if (channel == null) {
+			file = Files.createTempFile("sqltemplate", ".buffer");
+			channel = FileChannel.open(file, StandardOpenOption.READ, StandardOpenOption.WRITE);
+		}
+		return channel.map(FileChannel.MapMode.READ_WRITE, fileSize, capacity);
+	}
+
+	private class RowIterator implements Iterator<Object[]> {
+		private final List<ByteBuffer> buffers;
+		private int index;
+
+		public RowIterator(List<ByteBuffer> buffers) {
+			this.buffers = buffers;
+		}
+
+		@Override
+		public boolean hasNext() {
+			while (index < buffers.size() && !buffers.get(index).hasRemaining()) {
+				index += 1;
+			}
+			return index < buffers.size();
+		}
+
+		@Override
+		public Object[] next() {
+			if (!hasNext()) {
+				throw new NoSuchElementException();
+			}
+			synchronized (SQLResultBuffer.this) {
+				ensureOpen();
+				return SQLRowCodec.decodeRow(buffers.get(index));
+			}
+		}
+	}
+
+	private static class CleanerHolder {
+		private static final Consumer<ByteBuffer> cleaner = createCleaner();
+
+		private static Consumer<ByteBuffer> createCleaner() {
+			return Try.of(CleanerHolder::createUnsafeCleaner)
+				.orElseGet(() -> Try.of(CleanerHolder::createDirectBufferCleaner).orElse(buffer -> {}));
+		}
+
+		private static Consumer<ByteBuffer> createUnsafeCleaner() throws Exception {
+			Class<?> unsafeClass = Class.forName("sun.misc.Unsafe");
+			Method invokeCleaner = unsafeClass.getMethod("invokeCleaner", ByteBuffer.class);
+			Field field = unsafeClass.getDeclaredField("theUnsafe");
+			field.setAccessible(true);
+			Object unsafe = field.get(null);
+			return buffer -> Try.of(() -> invokeCleaner.invoke(unsafe, buffer)).execute();
+		}
+
+		private static Consumer<ByteBuffer> createDirectBufferCleaner() throws Exception {
+			Method cleaner = Class.forName("sun.nio.ch.DirectBuffer").getMethod("cleaner");
+			Method clean = Class.forName("sun.misc.Cleaner").getMethod("clean");
+			return buffer -> Try.of(() -> clean.invoke(cleaner.invoke(buffer))).execute();
+		}
+	}
+}
@@ -0,0 +1,328 @@
+/*
+ * This file is part of SQLTemplate
+ *
+ * Copyright (c) 2016, Andrea Medeghini
+ * All rights reserved.
+ */
+package com.nextbreakpoint.sql;
+
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Provides a cache of query results. Results are keyed by SQL text and bound parameters, and they are stored as
+ * immutable lists of rows in an LRU cache with a bounded size. The rows are shared with the drivers, which never
+ * modify them and copy a row only when it is returned as array. Results expire after a fixed time, and they are
+ * invalidated when an update or batch, executed by any driver which uses the same cache, writes one of the tables
+ * named in the query. When the connection is not in auto commit mode, the tables written by the open transaction are
+ * invalidated again when the transaction is committed or rolled back by the template, or when the driver is closed,
+ * and queries executed by the transaction don't use the cache until then. Commits executed outside the templates,
+ * for instance with {@link java.sql.Connection#commit()} after the template has been applied, are not observed by the
+ * cache, therefore queries of other connections executed between the end of the template and the commit can cache
+ * rows which are stale after the commit, and the tables should be invalidated with {@link #invalidate(String...)}
+ * after such commits. Tables are found in the SQL text after FROM, JOIN, INTO, UPDATE, DELETE and TABLE, and
+ * statements which write tables that can't be found invalidate the whole cache. Writes executed outside the
+ * templates must be notified with {@link #invalidate(String...)}. Cached queries read all rows when they are
+ * executed, therefore the cache is suitable for lookups which return few rows.
+ *
+ * @author Andrea Medeghini
+ *
+ */
+public class SQLResultCache {
+	private final ResultLRU results = new ResultLRU();
+	private final Map<String, Long> invalidations = new HashMap<>();
+	private final int maxSize;
+	private final long ttlNanos;
+	private long stamp;
+	private long cleared;
+	private long hits;
+	private long misses;
+	private long evictions;
+
+	private SQLResultCache(int maxSize, long ttlNanos) {
+		if (maxSize <= 0) {
+			throw new IllegalArgumentException("Max size must be greater than zero");
+		}
+		if (ttlNanos <= 0) {
+			throw new IllegalArgumentException("Time to live must be greater than zero");
+		}
+		this.maxSize = maxSize;
+		this.ttlNanos = ttlNanos;
+	}
+
+	/**
+	 * Creates a new instance with given max number of results and time to live.
+	 * @param maxSize the max number of results
+	 * @param ttl the time to live
+	 * @param unit the unit of the time to live
+	 * @return new instance
+	 */
+	public static SQLResultCache create(int maxSize, long ttl, TimeUnit unit) {
+		return new SQLResultCache(maxSize, unit.toNanos(ttl));
+	}
+
+	/**
+	 * Invalidates the results of the queries which read given tables.
+	 * @param tables the names of the tables
+	 */
+	public synchronized void invalidate(String... tables) {
+		stamp += 1;
+		for (String table : tables) {
+			invalidations.put(normalize(table), stamp);
+		}
+	}
+
+	/**
+	 * Removes all results. Queries which are executing are not stored when they complete.
+	 */
+	public synchronized void clear() {
+		stamp += 1;
+		cleared = stamp;
+		results.clear();
+		invalidations.clear();
+	}
+
+	/**
+	 * Returns the number of results in the cache.
+	 * @return the number of results
+	 */
+	public synchronized int size() {
+		return results.size();
+	}
+
+	/**
+	 * Returns the number of queries which have been found in the cache.
+	 * @return the number of hits
+	 */
+	public synchronized long hits() {
+		return hits;
+	}
+
+	/**
+	 * Returns the number of queries which have not been found in the cache.
+	 * @return the number of misses
+	 */
+	public synchronized long misses() {
+		return misses;
+	}
+
+	/**
+	 * Returns the number of results which have been evicted because the cache was full.
+	 * @return the number of evictions
+	 */
+	public synchronized long evictions() {
+		return evictions;
+	}
+
+	synchronized long stamp() {
+		return stamp;
+	}
+
+	synchronized List<Object[]> get(String sql, Object[] params) {
+		ResultKey key = new ResultKey(sql, params);
+		Result result = results.get(key);
+		if (result == null || System.nanoTime() - result.expires > 0 || isStale(result.tables, result.stamp)) {
+			if (result != null) {
+				results.remove(key);
+			}
+			misses += 1;
+			return null;
+		}
+		hits += 1;
+		return result.rows;
+	}
+
+	synchronized void put(String sql, Object[] params, String[] tables, long stamp, List<Object[]> rows) {
+		if (isStale(tables, stamp)) {
+			return;
+		}
+		results.put(new ResultKey(sql, params), new Result(rows, tables, stamp, System.nanoTime() + ttlNanos));
+	}
+
+	private boolean isStale(String[] tables, long stamp) {
+		if (stamp < cleared) {
+			return true;
+		}
+		for (String table : tables) {
+			Long invalidation = invalidations.get(table);
+			if (invalidation != null && invalidation > stamp) {
+				return true;
+			}
+		}
+		return false;
+	}
+
+	/**
+	 * Returns the names of the tables which are read or written by given statement.
+	 * @param sql the SQL statement
+	 * @return the names of the tables
+	 */
+	static String[] tables(String sql) {
+		Set<String> tables = new LinkedHashSet<>();
+		BitSet from = new BitSet();
+		boolean expectTable = false;
+		int depth = 0;
+		int length = sql.length();
+		int i = 0;
+		while (i < length) {
+			char c = sql.charAt(i);
+			char next = i + 1 < length ? sql.charAt(i + 1) : 0;
+			if (c == '\'') {
+				int end = sql.indexOf('\'', i + 1);
+				i = end < 0 ? length : end + 1;
+			} else if (c == '-' && next == '-') {
+				int end = sql.indexOf('\n', i);
+				i = end < 0 ? length : end + 1;
+			} else if (c == '/' && next == '*') {
+				int end = sql.indexOf("*/", i + 2);
+				i = end < 0 ? length : end + 2;
+			} else if (c == '(') {
+				depth += 1;
+				expectTable = false;
+				i += 1;
+			} else if (c == ')') {
+				from.clear(depth);
+				depth = Math.max(0, depth - 1);
+				i += 1;
+			} else if (c == ',') {
+				expectTable = from.get(depth);
+				i += 1;
+			} else if (c == '"' || Character.isJavaIdentifierStart(c)) {
+				int end = i;
+				while (end < length) {
+					char d = sql.charAt(end);
+					if (d == '"') {
+						int quote = sql.indexOf('"', end + 1);
+						end = quote < 0 ? length : quote + 1;
+					} else if (d == '.' || Character.isJavaIdentifierPart(d)) {
+						end += 1;
+					} else {
+						break;
+					}
+				}
+				String word = sql.substring(i, end);
+				String keyword = word.toUpperCase();
+				switch (keyword) {
+					case "FROM":
+						from.set(depth);
+						expectTable = true;
+						break;
+					case "JOIN":
+					case "INTO":
+					case "UPDATE":
+					case "DELETE":
+					case "TABLE":
+						expectTable = true;
+						break;
+					case "ONLY":
+					case "LATERAL":
+					case "IF":
+					case "NOT":
+					case "EXISTS":
+						break;
+					case "WHERE":
+					case "GROUP":
+					case "ORDER":
+					case "HAVING":
+					case "LIMIT":
+					case "UNION":
+					case "SET":
+					case "VALUES":
+					case "SELECT":
+						from.clear(depth);
+						expectTable = false;
+						break;
+					default:
+						if (expectTable) {
+							tables.add(normalize(word));
+							expectTable = false;
+						}
+						break;
+				}
+				i = end;
+			} else {
+				i += 1;
+			}
+		}
+		return tables.toArray(new String[0]);
+	}
+
+	private static String normalize(String name) {
+		int start = 0;
+		boolean quoted = false;
+		for (int i = 0; i < name.length(); i++) {
+			char c = name.charAt(i);
+			if (c == '"') {
+				quoted = !quoted;
+			} else if (c == '.' && !quoted) {
+				start = i + 1;
+			}
+		}
+		return name.substring(start).replace("\"", "").toUpperCase();
+	}
+
+	private static class Result {
+		private final List<Object[]> rows;
+		private final String[] tables;
+		private final long stamp;
+		private final long expires;
+
+		public Result(List<Object[]> rows, String[] tables, long stamp, long expires) {
+			this.rows = Collections.unmodifiableList(rows);
+			this.tables = tables;
+			this.stamp = stamp;
+			this.expires = expires;
+		}
+	}
+
+	private static class ResultKey {
+		private final String sql;
+		private final Object[] params;
+		private final int hash;
+
+		public ResultKey(String sql, Object[] params) {
+			this.sql = Objects.requireNonNull(sql);
+			this.params = params != null ? params.clone() : new Object[0];
+			this.hash = 31 * sql.hashCode() + Arrays.deepHashCode(this.params);
+		}
+
+		@Override
+		public boolean equals(Object o) {
+			if (this == o) return true;
+			if (o == null || getClass() != o.getClass()) return false;
+			ResultKey that = (ResultKey) o;
+			return hash == that.hash && sql.equals(that.sql) && Arrays.deepEquals(params, that.params);
+		}
+
+		@Override
+		public int hashCode() {
+			return hash;
+		}
+	}
+
+	private class ResultLRU extends LinkedHashMap<ResultKey, Result> {
+		private static final long serialVersionUID = 1L;
+
+		public ResultLRU() {
+			super(16, 0.75f, true);
+		}
+
+		@Override
+		protected boolean removeEldestEntry(Map.Entry<ResultKey, Result> eldest) {
+			if (size() > maxSize) {
+				evictions += 1;
+				return true;
+			}
+			return false;
+		}
+	}
+}
@@ -0,0 +1,79 @@
+/*
+ * This file is part of SQLTemplate
+ *
+ * Copyright (c) 2016, Andrea Medeghini
+ * All rights reserved.
+ */
+package com.nextbreakpoint.sql;
+
+import java.sql.SQLException;
+
+/**
+ * Provides a view of the current row of a result. The same instance is reused for all rows of the result,
+ * therefore the values must be read or copied before moving to the next row. Columns are numbered from 1.
+ *
+ * @author Andrea Medeghini
+ *
+ */
+public interface SQLRow {
+	/**
+	 * Returns the number of columns.
+	 * @return the number of columns
+	 * @throws SQLException if the metadata can't be read
+	 */
+	public int columnCount() throws SQLException;
+
+	/**
+	 * Returns the value of given column as object.
+	 * @param column the column index
+	 * @return the value
+	 * @throws SQLException if the value can't be read
+	 */
+	public Object getObject(int column) throws SQLException;
+
+	/**
+	 * Returns the value of given column as string.
+	 * @param column the column index
+	 * @return the value
+	 * @throws SQLException if the value can't be read
+	 */
+	public String getString(int column) throws SQLException;
+
+	/**
+	 * Returns the value of given column as int, or zero if the value is null.
+	 * @param column the column index
+	 * @return the value
+	 * @throws SQLException if the value can't be read
+	 */
+	public int getInt(int column) throws SQLException;
+
+	/**
+	 * Returns the value of given column as long, or zero if the value is null.
+	 * @param column the column index
+	 * @return the value
+	 * @throws SQLException if the value can't be read
+	 */
+	public long getLong(int column) throws SQLException;
+
+	/**
+	 * Returns the value of given column as double, or zero if the value is null.
+	 * @param column the column index
+	 * @return the value
+	 * @throws SQLException if the value can't be read
+	 */
+	public double getDouble(int column) throws SQLException;
+
+	/**
+	 * Returns true if the last value read was null.
+	 * @return true if the value was null
+	 * @throws SQLException if the state can't be read
+	 */
+	public boolean wasNull() throws SQLException;
+
+	/**
+	 * Returns a copy of the values of the current row.
+	 * @return the values
+	 * @throws SQLException if the values can't be read
+	 */
+	public Object[] toArray() throws SQLException;
+}
@@ -0,0 +1,23 @@
+/*
+ * This file is part of SQLTemplate
+ *
+ * Copyright (c) 2016, Andrea Medeghini
+ * All rights reserved.
+ */
+package com.nextbreakpoint.sql;
+
+/**
+ * Provides an interface for consuming the rows of a result.
+ *
+ * @author Andrea Medeghini
+ *
+ */
+@FunctionalInterface
+public interface SQLRowCallback {
+	/**
+	 * Consumes the current row. The row is a view which is reused for the next row.
+	 * @param row the row
+	 * @throws Exception if the row can't be consumed
+	 */
+	public void accept(SQLRow row) throws Exception;
+}
@@ -0,0 +1,239 @@
+/*
+ * This file is part of SQLTemplate
+ *
+ * Copyright (c) 2016, Andrea Medeghini
+ * All rights reserved.
+ */
+package com.nextbreakpoint.sql;
+
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.nio.Buffer;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.sql.Date;
+import java.sql.SQLException;
+import java.sql.Time;
+import java.sql.Timestamp;
+import java.time.Instant;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.LocalTime;
+import java.time.OffsetDateTime;
+import java.util.UUID;
+
+/**
+ * Provides the binary encoding of rows. Each row is encoded as the number of columns followed by the values, and each
+ * value is encoded as a type followed by the content, where strings, decimals and arrays are prefixed by their length.
+ * UUID and java.time values are encoded as tagged strings in their standard text format. Values of other types are
+ * not supported, therefore the encoding doesn't depend on the classes of the JVM which reads it. The encoder reuses
+ * the same scratch buffer for all rows.
+ *
+ * @author Andrea Medeghini
+ *
+ */
+final class SQLRowCodec {
+	private static final byte NULL = 0;
+	private static final byte INTEGER = 1;
+	private static final byte LONG = 2;
+	private static final byte DOUBLE = 3;
+	private static final byte FLOAT = 4;
+	private static final byte SHORT = 5;
+	private static final byte BYTE = 6;
+	private static final byte BOOLEAN = 7;
+	private static final byte STRING = 8;
+	private static final byte DECIMAL = 9;
+	private static final byte BYTES = 10;
+	private static final byte TIMESTAMP = 11;
+	private static final byte DATE = 12;
+	private static final byte TIME = 13;
+	private static final byte BIG_INTEGER = 15;
+	private static final byte UUID_STRING = 16;
+	private static final byte LOCAL_DATE = 17;
+	private static final byte LOCAL_TIME = 18;
+	private static final byte LOCAL_DATE_TIME = 19;
+	private static final byte OFFSET_DATE_TIME = 20;
+	private static final byte INSTANT = 21;
+
+	private ByteBuffer scratch = ByteBuffer.allocate(256);
+
+	/**
+	 * Encodes given row. The returned buffer is valid until the next row is encoded.
+	 * @param row the row
+	 * @return the buffer which contains the encoded row
+	 * @throws SQLException if the row can't be read
+	 * @throws IOException if a value can't be encoded
+	 */
+	public ByteBuffer encode(SQLRow row) throws SQLException, IOException {
+		int count = row.columnCount();
+		((Buffer) scratch).clear();
+		ensureScratch(4);
+		scratch.putInt(count);
+		for (int i = 1; i <= count; i++) {
+			Object value = row.getObject(i);
+			if (!encode(value)) {
+				throw new IOException("Unsupported type " + value.getClass().getName() + " of column " + i);
+			}
+		}
+		((Buffer) scratch).flip();
+		return scratch;
+	}
+
+	/**
+	 * Decodes the row at the current position of given buffer.
+	 * @param buffer the buffer
+	 * @return the columns
+	 */
+	public static Object[] decodeRow(ByteBuffer buffer) {
+		Object[] columns = new Object[buffer.getInt()];
+		for (int i = 0; i < columns.length; i++) {
+			columns[i] = decode(buffer);
+		}
+		return columns;
+	}
+
+	private void ensureScratch(int size) {
+		if (scratch.remaining() < size) {
+			ByteBuffer buffer = ByteBuffer.allocate(Math.max(scratch.capacity() * 2, scratch.position() + size));
+			((Buffer) scratch).flip();
+			buffer.put(scratch);
+			scratch = buffer;
+		}
+	}
+
+	private boolean encode(Object value) {
+		if (value == null) {
+			ensureScratch(1);
+			scratch.put(NULL);
+		} else if (value instanceof Integer) {
+			ensureScratch(5);
+			scratch.put(INTEGER).putInt((Integer) value);
+		} else if (value instanceof Long) {
+			ensureScratch(9);
+			scratch.put(LONG).putLong((Long) value);
+		} else if (value instanceof Double) {
+			ensureScratch(9);
+			scratch.put(DOUBLE).putDouble((Double) value);
+		} else if (value instanceof Float) {
+			ensureScratch(5);
+			scratch.put(FLOAT).putFloat((Float) value);
+		} else if (value instanceof Short) {
+			ensureScratch(3);
+			scratch.put(SHORT).putShort((Short) value);
+		} else if (value instanceof Byte) {
+			ensureScratch(2);
+			scratch.put(BYTE).put((Byte) value);
+		} else if (value instanceof Boolean) {
+			ensureScratch(2);
+			scratch.put(BOOLEAN).put((byte) ((Boolean) value ? 1 : 0));
+		} else if (value instanceof String) {
+			encodeBytes(STRING, ((String) value).getBytes(StandardCharsets.UTF_8));
+		} else if (value instanceof BigDecimal) {
+			BigDecimal decimal = (BigDecimal) value;
+			encodeBytes(DECIMAL, decimal.unscaledValue().toByteArray());
+			ensureScratch(4);
+			scratch.putInt(decimal.scale());
+		} else if (value instanceof byte[]) {
+			encodeBytes(BYTES, (byte[]) value);
+		} else if (value instanceof Timestamp) {
+			ensureScratch(13);
+			scratch.put(TIMESTAMP).putLong(((Timestamp) value).getTime()).putInt(((Timestamp) value).getNanos());
+		} else if (value instanceof Date) {
+			ensureScratch(9);
+			scratch.put(DATE).putLong(((Date) value).getTime());
+		} else if (value instanceof Time) {
+			ensureScratch(9);
+			scratch.put(TIME).putLong(((Time) value).getTime());
+		} else if (value instanceof BigInteger) {
+			encodeBytes(BIG_INTEGER, ((BigInteger) value).toByteArray());
+		} else if (value instanceof UUID) {
+			encodeText(UUID_STRING, value);
+		} else if (value instanceof LocalDate) {
+			encodeText(LOCAL_DATE, value);
+		} else if (value instanceof LocalTime) {
+			encodeText(LOCAL_TIME, value);
+		} else if (value instanceof LocalDateTime) {
+			encodeText(LOCAL_DATE_TIME, value);
+		} else if (value instanceof OffsetDateTime) {
+			encodeText(OFFSET_DATE_TIME, value);
+		} else if (value instanceof Instant) {
+			encodeText(INSTANT, value);
+		} else {
+			return false;
+		}
+		return true;
+	}
+
+	private void encodeText(byte type, Object value) {
+		encodeBytes(type, value.toString().getBytes(StandardCharsets.UTF_8));
+	}
+
+	private void encodeBytes(byte type, byte[] bytes) {
+		ensureScratch(5 + bytes.length);
+		scratch.put(type).putInt(bytes.length).put(bytes);
+	}
+
+	private static byte[] decodeBytes(ByteBuffer buffer) {
+		byte[] bytes = new byte[buffer.getInt()];
+		buffer.get(bytes);
+		return bytes;
+	}
+
+	private static String decodeText(ByteBuffer buffer) {
+		return new String(decodeBytes(buffer), StandardCharsets.UTF_8);
+	}
+
+	private static Object decode(ByteBuffer buffer) {
+		byte type = buffer.get();
+		switch (type) {
+			case NULL:
+				return null;
+			case INTEGER:
+				return buffer.getInt();
+			case LONG:
+				return buffer.getLong();
+			case DOUBLE:
+				return buffer.getDouble();
+			case FLOAT:
+				return buffer.getFloat();
+			case SHORT:
+				return buffer.getShort();
+			case BYTE:
+				return buffer.get();
+			case BOOLEAN:
+				return buffer.get() != 0;
+			case STRING:
+				return new String(decodeBytes(buffer), StandardCharsets.UTF_8);
+			case DECIMAL:
+				BigInteger unscaled = new BigInteger(decodeBytes(buffer));
+				return new BigDecimal(unscaled, buffer.getInt());
+			case BYTES:
+				return decodeBytes(buffer);
+			case TIMESTAMP:
+				Timestamp timestamp = new Timestamp(buffer.getLong());
+				timestamp.setNanos(buffer.getInt());
+				return timestamp;
+			case DATE:
+				return new Date(buffer.getLong());
+			case TIME:
+				return new Time(buffer.getLong());
+			case BIG_INTEGER:
+				return new BigInteger(decodeBytes(buffer));
+			case UUID_STRING:
+				return UUID.fromString(decodeText(buffer));
+			case LOCAL_DATE:
+				return LocalDate.parse(decodeText(buffer));
+			case LOCAL_TIME:
+				return LocalTime.parse(decodeText(buffer));
+			case LOCAL_DATE_TIME:
+				return LocalDateTime.parse(decodeText(buffer));
+			case OFFSET_DATE_TIME:
+				return OffsetDateTime.parse(decodeText(buffer));
+			case INSTANT:
+				return Instant.parse(decodeText(buffer));
+			default:
+				throw new IllegalStateException("Unknown type " + type);
+		}
+	}
+}
@@ -0,0 +1,25 @@
+/*
+ * This file is part of SQLTemplate
+ *
+ * Copyright (c) 2016, Andrea Medeghini
+ * All rights reserved.
+ */
+package com.nextbreakpoint.sql;
+
+/**
+ * Provides an interface for mapping the rows of a result to objects.
+ *
+ * @author Andrea Medeghini
+ *
+ * @param <T> the type of object
+ */
+@FunctionalInterface
+public interface SQLRowMapper<T> {
+	/**
+	 * Creates an object from the current row. Values should be read with typed getters to avoid boxing.
+	 * @param row the row
+	 * @return the object
+	 * @throws Exception if the row can't be mapped
+	 */
+	public T map(SQLRow row) throws Exception;
+}
@@ -0,0 +1,513 @@
+/*
+ * This file is part of SQLTemplate
+ *
+ * Copyright (c) 2016, Andrea Medeghini
+ * All rights reserved.
+ */
+package com.nextbreakpoint.sql;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Savepoint;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Objects;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.function.Supplier;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import java.util.regex.Pattern;
+
+/**
+ * Provides a log of slow statements. Execute and fetch operations which take longer than the threshold, and a sampled
+ * fraction of all execute and fetch operations, are recorded in a ring buffer of fixed capacity, therefore the log
+ * keeps only the most recent entries and never grows. Each entry contains the SQL statement, the types and sizes of
+ * the bound parameters, the elapsed time and the number of rows. The values of the parameters are not recorded.
+ * The log can optionally explain queries and DML statements on the same connection when an entry is recorded.
+ * The explain runs synchronously on the thread which executes the statement, therefore it adds the time of one more
+ * round trip, and the time of the statement when the explain executes it, to each recorded operation. Queries are
+ * explained when their result is closed, and the explain runs inside a savepoint when the connection is not in auto
+ * commit mode, therefore a failed explain doesn't abort the transaction. When the prefix contains ANALYZE, which
+ * executes the statement on databases like PostgreSQL, MySQL and H2, only SELECT and VALUES queries are explained,
+ * therefore writes are never executed twice. Failures of the explain are logged. The log can be shared by many drivers.
+ *
+ * @author Andrea Medeghini
+ *
+ */
+public class SQLSlowLog {
+	/**
+	 * Default capacity of the log.
+	 */
+	public static final int DEFAULT_CAPACITY = 100;
+
+	private static final Logger logger = Logger.getLogger(SQLSlowLog.class.getName());
+
+	private final AtomicReferenceArray<Entry> entries;
+	private final AtomicLong sequence = new AtomicLong();
+	private final long thresholdNanos;
+	private final double sampleRate;
+	private final String explainPrefix;
+	private final boolean explainExecutes;
+
+	private SQLSlowLog(long thresholdNanos, double sampleRate, int capacity, String explainPrefix) {
+		this.entries = new AtomicReferenceArray<>(capacity);
+		this.thresholdNanos = thresholdNanos;
+		this.sampleRate = sampleRate;
+		this.explainPrefix = explainPrefix;
+		this.explainExecutes = explainPrefix != null && isExecutingPrefix(explainPrefix);
+	}
+
+	/**
+	 * Creates a new builder.
+	 * @return new builder
+	 */
+	public static SQLSlowLogBuilder builder() {
+		return new SQLSlowLogBuilder();
+	}
+
+	/**
+	 * Returns the recorded entries, from the oldest to the most recent.
+	 * @return the entries
+	 */
+	public List<Entry> entries() {
+		long last = sequence.get();
+		long first = Math.max(0, last - entries.length());
+		List<Entry> result = new ArrayList<>((int) (last - first));
+		for (long i = first; i < last; i++) {
+			Entry entry = entries.get((int) (i % entries.length()));
+			if (entry != null) {
+				result.add(entry);
+			}
+		}
+		return result;
+	}
+
+	/**
+	 * Removes all entries.
+	 */
+	public void clear() {
+		for (int i = 0; i < entries.length(); i++) {
+			entries.set(i, null);
+		}
+	}
+
+	SQLListener listener(Connection conn, Supplier<Object[]> params, SQLListener next) {
+		return new StatementListener(Objects.requireNonNull(conn), Objects.requireNonNull(params), next);
+	}
+
+	private Operation sample(SQLListener.Phase phase, String sql, Object[] params, long nanos, long count, Exception error) {
+		boolean slow = nanos >= thresholdNanos;
+		if (!slow && (sampleRate == 0 || ThreadLocalRandom.current().nextDouble() >= sampleRate)) {
+			return null;
+		}
+		return new Operation(phase, sql, params, nanos, count, error, !slow);
+	}
+
+	private void record(Operation operation, String plan) {
+		Entry entry = new Entry(operation.timestamp, operation.phase, operation.sql, types(operation.params), sizes(operation.params), operation.nanos, operation.count, operation.error, plan, operation.sampled);
+		long index = sequence.getAndIncrement();
+		entries.set((int) (index % entries.length()), entry);
+	}
+
+	private String explain(Connection conn, Object[] params, String sql) {
+		if (params == null && sql.indexOf('?') >= 0) {
+			return null;
+		}
+		Savepoint savepoint = null;
+		try {
+			if (!conn.getAutoCommit()) {
+				savepoint = conn.setSavepoint();
+			}
+			String plan = executeExplain(conn, params, sql);
+			if (savepoint != null) {
+				releaseSavepoint(conn, savepoint);
+			}
+			return plan;
+		} catch (SQLException e) {
+			if (savepoint != null) {
+				try {
+					conn.rollback(savepoint);
+				} catch (SQLException x) {
+					e.addSuppressed(x);
+				}
+			}
+			logger.log(Level.WARNING, "Can't explain statement " + sql, e);
+			return null;
+		}
+	}
+
+	private String executeExplain(Connection conn, Object[] params, String sql) throws SQLException {
+		try (PreparedStatement st = conn.prepareStatement(explainPrefix + sql)) {
+			if (params != null) {
+				for (int p = 1; p <= params.length; p++) {
+					st.setObject(p, params[p - 1]);
+				}
+			}
+			try (ResultSet rs = st.executeQuery()) {
+				StringBuilder builder = new StringBuilder();
+				int columns = rs.getMetaData().getColumnCount();
+				while (rs.next()) {
+					if (builder.length() > 0) {
+						builder.append('\n');
+					}
+					for (int c = 1; c <= columns; c++) {
+						if (c > 1) {
+							builder.append(' ');
+						}
+						builder.append(rs.getString(c));
+					}
+				}
+				return builder.toString();
+			}
+		}
+	}
+
+	private static void releaseSavepoint(Connection conn, Savepoint savepoint) {
+		try {
+			conn.releaseSavepoint(savepoint);
+		} catch (SQLException e) {
+			logger.log(Level.FINE, "Can't release savepoint", e);
+		}
+	}
+
+	private static String keyword(String sql) {
+		int i = 0;
+		while (i < sql.length() && (Character.isWhitespace(sql.charAt(i)) || sql.charAt(i) == '(')) {
+			i += 1;
+		}
+		int start = i;
+		while (i < sql.length() && Character.isLetter(sql.charAt(i))) {
+			i += 1;
+		}
+		return sql.substring(start, i).toUpperCase();
+	}
+
+	private static boolean isQuery(String keyword) {
+		return keyword.equals("SELECT") || keyword.equals("WITH") || keyword.equals("VALUES");
+	}
+
+	private boolean isExplainable(String keyword) {
+		if (explainExecutes) {
+			return keyword.equals("SELECT") || keyword.equals("VALUES");
+		}
+		return isQuery(keyword) || keyword.equals("INSERT") || keyword.equals("UPDATE") || keyword.equals("DELETE") || keyword.equals("MERGE");
+	}
+
+	private static boolean isExecutingPrefix(String prefix) {
+		return Pattern.compile("\\bANALY[SZ]E\\b", Pattern.CASE_INSENSITIVE).matcher(prefix).find();
+	}
+
+	private static String[] types(Object[] params) {
+		if (params == null) {
+			return new String[0];
+		}
+		String[] types = new String[params.length];
+		for (int i = 0; i < params.length; i++) {
+			types[i] = params[i] != null ? params[i].getClass().getSimpleName() : "null";
+		}
+		return types;
+	}
+
+	private static int[] sizes(Object[] params) {
+		if (params == null) {
+			return new int[0];
+		}
+		int[] sizes = new int[params.length];
+		for (int i = 0; i < params.length; i++) {
+			sizes[i] = size(params[i]);
+		}
+		return sizes;
+	}
+
+	private static int size(Object value) {
+		if (value instanceof CharSequence) {
+			return ((CharSequence) value).length();
+		}
+		if (value instanceof byte[]) {
+			return ((byte[]) value).length;
+		}
+		if (value instanceof char[]) {
+			return ((char[]) value).length;
+		}
+		return -1;
+	}
+
+	private class StatementListener implements SQLListener {
+		private final List<Operation> pending = new ArrayList<>();
+		private final Connection conn;
+		private final Supplier<Object[]> params;
+		private final SQLListener next;
+
+		public StatementListener(Connection conn, Supplier<Object[]> params, SQLListener next) {
+			this.conn = conn;
+			this.params = params;
+			this.next = next;
+		}
+
+		@Override
+		public void onOperation(Phase phase, String sql, long nanos, long count, Exception error) {
+			if (next != null) {
+				next.onOperation(phase, sql, nanos, count, error);
+			}
+			if (phase != Phase.EXECUTE && phase != Phase.FETCH) {
+				return;
+			}
+			Object[] values = params.get();
+			Operation operation = sample(phase, sql, values, nanos, count, error);
+			if (explainPrefix == null) {
+				if (operation != null) {
+					record(operation, null);
+				}
+				return;
+			}
+			String keyword = keyword(sql);
+			if (phase == Phase.EXECUTE && error == null && isQuery(keyword)) {
+				if (operation != null) {
+					pending.add(operation);
+				}
+				return;
+			}
+			if (operation == null && pending.isEmpty()) {
+				return;
+			}
+			Object[] planParams = !pending.isEmpty() ? pending.get(0).params : values;
+			String plan = isExplainable(keyword) ? explain(conn, planParams, sql) : null;
+			pending.forEach(executed -> record(executed, plan));
+			pending.clear();
+			if (operation != null) {
+				record(operation, plan);
+			}
+		}
+	}
+
+	private static class Operation {
+		private final long timestamp = System.currentTimeMillis();
+		private final SQLListener.Phase phase;
+		private final String sql;
+		private final Object[] params;
+		private final long nanos;
+		private final long count;
+		private final String error;
+		private final boolean sampled;
+
+		public Operation(SQLListener.Phase phase, String sql, Object[] params, long nanos, long count, Exception error, boolean sampled) {
+			this.phase = phase;
+			this.sql = sql;
+			this.params = params != null ? params.clone() : null;
+			this.nanos = nanos;
+			this.count = count;
+			this.error = error != null ? error.getMessage() : null;
+			this.sampled = sampled;
+		}
+	}
+
+	/**
+	 * Entry of the log.
+	 */
+	public static class Entry {
+		private final long timestamp;
+		private final SQLListener.Phase phase;
+		private final String sql;
+		private final String[] parameterTypes;
+		private final int[] parameterSizes;
+		private final long nanos;
+		private final long rows;
+		private final String error;
+		private final String plan;
+		private final boolean sampled;
+
+		private Entry(long timestamp, SQLListener.Phase phase, String sql, String[] parameterTypes, int[] parameterSizes, long nanos, long rows, String error, String plan, boolean sampled) {
+			this.timestamp = timestamp;
+			this.phase = phase;
+			this.sql = sql;
+			this.parameterTypes = parameterTypes;
+			this.parameterSizes = parameterSizes;
+			this.nanos = nanos;
+			this.rows = rows;
+			this.error = error;
+			this.plan = plan;
+			this.sampled = sampled;
+		}
+
+		/**
+		 * Returns the time when the entry has been recorded in milliseconds since epoch.
+		 * @return the timestamp
+		 */
+		public long getTimestamp() {
+			return timestamp;
+		}
+
+		/**
+		 * Returns the phase, which is execute or fetch.
+		 * @return the phase
+		 */
+		public SQLListener.Phase getPhase() {
+			return phase;
+		}
+
+		/**
+		 * Returns the SQL statement.
+		 * @return the SQL statement
+		 */
+		public String getSql() {
+			return sql;
+		}
+
+		/**
+		 * Returns the simple class names of the bound parameters. The array is empty if parameters are not available.
+		 * @return the types
+		 */
+		public String[] getParameterTypes() {
+			return parameterTypes.clone();
+		}
+
+		/**
+		 * Returns the lengths of the bound strings and arrays, or -1 for parameters of other types.
+		 * @return the sizes
+		 */
+		public int[] getParameterSizes() {
+			return parameterSizes.clone();
+		}
+
+		/**
+		 * Returns the elapsed time in nanoseconds.
+		 * @return the elapsed time
+		 */
+		public long getNanos() {
+			return nanos;
+		}
+
+		/**
+		 * Returns the number of rows, or -1 if not available.
+		 * @return the number of rows
+		 */
+		public long getRows() {
+			return rows;
+		}
+
+		/**
+		 * Returns the message of the error, or null if the operation succeeded.
+		 * @return the error
+		 */
+		public String getError() {
+			return error;
+		}
+
+		/**
+		 * Returns the plan of the statement, or null if the statement has not been explained.
+		 * @return the plan
+		 */
+		public String getPlan() {
+			return plan;
+		}
+
+		/**
+		 * Returns true if the entry has been recorded by sampling rather than because of the threshold.
+		 * @return true if sampled
+		 */
+		public boolean isSampled() {
+			return sampled;
+		}
+
+		@Override
+		public String toString() {
+			return "Entry{" +
+				"timestamp=" + timestamp +
+				", phase=" + phase +
+				", sql='" + sql + '\'' +
+				", parameterTypes=" + Arrays.toString(parameterTypes) +
+				", parameterSizes=" + Arrays.toString(parameterSizes) +
+				", nanos=" + nanos +
+				", rows=" + rows +
+				", error=" + error +
+				", plan=" + plan +
+				", sampled=" + sampled +
+				'}';
+		}
+	}
+
+	public static class SQLSlowLogBuilder {
+		private long thresholdNanos = TimeUnit.SECONDS.toNanos(1);
+		private double sampleRate;
+		private int capacity = DEFAULT_CAPACITY;
+		private String explainPrefix;
+
+		private SQLSlowLogBuilder() {
+		}
+
+		/**
+		 * Sets the threshold above which operations are recorded. The default threshold is one second.
+		 * @param threshold the threshold
+		 * @param unit the unit of the threshold
+		 * @return the builder
+		 */
+		public SQLSlowLogBuilder threshold(long threshold, TimeUnit unit) {
+			if (threshold < 0) {
+				throw new IllegalArgumentException("Threshold must not be negative");
+			}
+			this.thresholdNanos = unit.toNanos(threshold);
+			return this;
+		}
+
+		/**
+		 * Sets the fraction of operations which are recorded regardless of the threshold. The default rate is zero.
+		 * @param sampleRate the fraction, between 0 and 1
+		 * @return the builder
+		 */
+		public SQLSlowLogBuilder sampleRate(double sampleRate) {
+			if (sampleRate < 0 || sampleRate > 1) {
+				throw new IllegalArgumentException("Sample rate must be between 0 and 1");
+			}
+			this.sampleRate = sampleRate;
+			return this;
+		}
+
+		/**
+		 * Sets the max number of entries.
+		 * @param capacity the capacity
+		 * @return the builder
+		 */
+		public SQLSlowLogBuilder capacity(int capacity) {
+			if (capacity <= 0) {
+				throw new IllegalArgumentException("Capacity must be greater than zero");
+			}
+			this.capacity = capacity;
+			return this;
+		}
+
+		/**
+		 * Enables explain of recorded queries and DML statements with the statement EXPLAIN.
+		 * The explain runs synchronously on the thread which executes the statement.
+		 * @return the builder
+		 */
+		public SQLSlowLogBuilder explain() {
+			return explain("EXPLAIN ");
+		}
+
+		/**
+		 * Enables explain of recorded queries and DML statements with given prefix, for instance EXPLAIN QUERY PLAN.
+		 * When the prefix contains ANALYZE only SELECT and VALUES queries are explained, because the explain executes
+		 * the statement again. The explain runs synchronously on the thread which executes the statement.
+		 * @param explainPrefix the prefix which is prepended to the statement
+		 * @return the builder
+		 */
+		public SQLSlowLogBuilder explain(String explainPrefix) {
+			this.explainPrefix = Objects.requireNonNull(explainPrefix);
+			return this;
+		}
+
+		/**
+		 * Builds the log.
+		 * @return new log
+		 */
+		public SQLSlowLog build() {
+			return new SQLSlowLog(thresholdNanos, sampleRate, capacity, explainPrefix);
+		}
+	}
+}
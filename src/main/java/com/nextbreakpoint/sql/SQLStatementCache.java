@@ -0,0 +1,250 @@
+/*
+ * This file is part of SQLTemplate
+ *
+ * Copyright (c) 2016, Andrea Medeghini
+ * All rights reserved.
+ */
+package com.nextbreakpoint.sql;
+
+import com.nextbreakpoint.Try;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.Objects;
+
+/**
+ * Provides a cache of prepared statements. Statements are keyed by SQL text and options, and scoped to the connection
+ * which created them. Each connection has its own LRU cache with a bounded size, and evicted statements are closed.
+ * Statements which are acquired by a template are in use until the template releases them, and when they are evicted
+ * while in use they are closed when they are released. Statements of closed connections are discarded when a statement
+ * is not found in the cache.
+ *
+ * @author Andrea Medeghini
+ *
+ */
+public class SQLStatementCache {
+	private final Map<Connection, StatementLRU> statements = new IdentityHashMap<>();
+	private final Map<PreparedStatement, Integer> inUse = new IdentityHashMap<>();
+	private final Map<PreparedStatement, Connection> evicted = new IdentityHashMap<>();
+	private final int maxSize;
+	private long hits;
+	private long misses;
+	private long evictions;
+
+	private SQLStatementCache(int maxSize) {
+		if (maxSize <= 0) {
+			throw new IllegalArgumentException("Max size must be greater than zero");
+		}
+		this.maxSize = maxSize;
+	}
+
+	/**
+	 * Creates a new instance with given max number of statements for each connection.
+	 * @param maxSize the max number of statements
+	 * @return new instance
+	 */
+	public static SQLStatementCache create(int maxSize) {
+		return new SQLStatementCache(maxSize);
+	}
+
+	/**
+	 * Returns a prepared statement for given SQL, creating the statement when it is not present in the cache.
+	 * @param conn the connection
+	 * @param sql the SQL statement
+	 * @return the statement
+	 * @throws SQLException if the statement can't be created
+	 */
+	public PreparedStatement prepareStatement(Connection conn, String sql) throws SQLException {
+		return prepareStatement(conn, sql, SQLStatementOptions.defaults());
+	}
+
+	/**
+	 * Returns a prepared statement for given SQL and options, creating the statement when it is not present in the cache.
+	 * @param conn the connection
+	 * @param sql the SQL statement
+	 * @param options the statement options
+	 * @return the statement
+	 * @throws SQLException if the statement can't be created
+	 */
+	public synchronized PreparedStatement prepareStatement(Connection conn, String sql, SQLStatementOptions options) throws SQLException {
+		Objects.requireNonNull(conn);
+		StatementKey key = new StatementKey(sql, options);
+		StatementLRU lru = statements.get(conn);
+		PreparedStatement st = lru != null ? lru.get(key) : null;
+		if (st != null) {
+			hits += 1;
+			return st;
+		}
+		misses += 1;
+		discardClosedConnections();
+		st = options.prepareStatement(conn, sql);
+		statements.computeIfAbsent(conn, StatementLRU::new).put(key, st);
+		return st;
+	}
+
+	/**
+	 * Closes and removes all statements of given connection, including the statements which are in use.
+	 * @param conn the connection
+	 */
+	public synchronized void close(Connection conn) {
+		Objects.requireNonNull(conn);
+		StatementLRU lru = statements.remove(conn);
+		if (lru != null) {
+			lru.values().forEach(this::discard);
+		}
+		closeEvicted(conn);
+	}
+
+	/**
+	 * Closes and removes all statements, including the statements which are in use.
+	 */
+	public synchronized void clear() {
+		statements.values().forEach(lru -> lru.values().forEach(this::discard));
+		statements.clear();
+		evicted.keySet().forEach(this::discard);
+		evicted.clear();
+	}
+
+	/**
+	 * Returns the number of statements of given connection.
+	 * @param conn the connection
+	 * @return the number of statements
+	 */
+	public synchronized int size(Connection conn) {
+		StatementLRU lru = statements.get(conn);
+		return lru != null ? lru.size() : 0;
+	}
+
+	/**
+	 * Returns the number of requests which have found the statement in the cache.
+	 * @return the number of hits
+	 */
+	public synchronized long hits() {
+		return hits;
+	}
+
+	/**
+	 * Returns the number of requests which haven't found the statement in the cache.
+	 * @return the number of misses
+	 */
+	public synchronized long misses() {
+		return misses;
+	}
+
+	/**
+	 * Returns the number of statements which have been evicted from the cache.
+	 * @return the number of evictions
+	 */
+	public synchronized long evictions() {
+		return evictions;
+	}
+
+	synchronized PreparedStatement acquire(Connection conn, String sql, SQLStatementOptions options) throws SQLException {
+		PreparedStatement st = prepareStatement(conn, sql, options);
+		inUse.merge(st, 1, Integer::sum);
+		return st;
+	}
+
+	synchronized void release(PreparedStatement st) {
+		Integer count = inUse.get(st);
+		if (count == null) {
+			return;
+		}
+		if (count > 1) {
+			inUse.put(st, count - 1);
+			return;
+		}
+		inUse.remove(st);
+		if (evicted.remove(st) != null) {
+			closeStatement(st);
+		}
+	}
+
+	private void discardClosedConnections() {
+		for (Iterator<Map.Entry<Connection, StatementLRU>> i = statements.entrySet().iterator(); i.hasNext();) {
+			Map.Entry<Connection, StatementLRU> entry = i.next();
+			if (Try.of(() -> entry.getKey().isClosed()).orElse(true)) {
+				entry.getValue().values().forEach(this::discard);
+				closeEvicted(entry.getKey());
+				i.remove();
+			}
+		}
+	}
+
+	private void closeEvicted(Connection conn) {
+		Set<PreparedStatement> closed = Collections.newSetFromMap(new IdentityHashMap<>());
+		evicted.forEach((st, owner) -> {
+			if (owner == conn) {
+				closed.add(st);
+			}
+		});
+		closed.forEach(st -> {
+			evicted.remove(st);
+			discard(st);
+		});
+	}
+
+	private void discard(PreparedStatement st) {
+		inUse.remove(st);
+		closeStatement(st);
+	}
+
+	private static void closeStatement(PreparedStatement st) {
+		Try.of(() -> { st.close(); return null; }).execute();
+	}
+
+	private static class StatementKey {
+		private final String sql;
+		private final SQLStatementOptions options;
+
+		public StatementKey(String sql, SQLStatementOptions options) {
+			this.sql = Objects.requireNonNull(sql);
+			this.options = Objects.requireNonNull(options);
+		}
+
+		@Override
+		public boolean equals(Object o) {
+			if (this == o) return true;
+			if (o == null || getClass() != o.getClass()) return false;
+			StatementKey that = (StatementKey) o;
+			return sql.equals(that.sql) && options.equals(that.options);
+		}
+
+		@Override
+		public int hashCode() {
+			return 31 * sql.hashCode() + options.hashCode();
+		}
+	}
+
+	private class StatementLRU extends LinkedHashMap<StatementKey, PreparedStatement> {
+		private static final long serialVersionUID = 1L;
+		private final Connection conn;
+
+		public StatementLRU(Connection conn) {
+			super(16, 0.75f, true);
+			this.conn = conn;
+		}
+
+		@Override
+		protected boolean removeEldestEntry(Map.Entry<StatementKey, PreparedStatement> eldest) {
+			if (size() > maxSize) {
+				evictions += 1;
+				PreparedStatement st = eldest.getValue();
+				if (inUse.containsKey(st)) {
+					evicted.put(st, conn);
+				} else {
+					closeStatement(st);
+				}
+				return true;
+			}
+			return false;
+		}
+	}
+}
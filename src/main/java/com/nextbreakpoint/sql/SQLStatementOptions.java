@@ -0,0 +1,288 @@
+/*
+ * This file is part of SQLTemplate
+ *
+ * Copyright (c) 2016, Andrea Medeghini
+ * All rights reserved.
+ */
+package com.nextbreakpoint.sql;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.Objects;
+
+/**
+ * Provides the options for creating prepared statements. Options which are not defined keep the default value of the JDBC driver.
+ *
+ * @author Andrea Medeghini
+ *
+ */
+public class SQLStatementOptions {
+	private static final SQLStatementOptions DEFAULTS = new SQLStatementOptions(null, null, null, null, null, null, null);
+
+	private final Integer fetchSize;
+	private final Integer maxRows;
+	private final Integer queryTimeout;
+	private final Integer fetchDirection;
+	private final Integer resultSetType;
+	private final Integer resultSetConcurrency;
+	private final Integer resultSetHoldability;
+
+	private SQLStatementOptions(Integer fetchSize, Integer maxRows, Integer queryTimeout, Integer fetchDirection, Integer resultSetType, Integer resultSetConcurrency, Integer resultSetHoldability) {
+		this.fetchSize = fetchSize;
+		this.maxRows = maxRows;
+		this.queryTimeout = queryTimeout;
+		this.fetchDirection = fetchDirection;
+		this.resultSetType = resultSetType;
+		this.resultSetConcurrency = resultSetConcurrency;
+		this.resultSetHoldability = resultSetHoldability;
+	}
+
+	/**
+	 * Returns the default options.
+	 * @return the options
+	 */
+	public static SQLStatementOptions defaults() {
+		return DEFAULTS;
+	}
+
+	/**
+	 * Creates a new builder.
+	 * @return the builder
+	 */
+	public static SQLStatementOptionsBuilder builder() {
+		return new SQLStatementOptionsBuilder();
+	}
+
+	/**
+	 * Returns the fetch size or null if not defined.
+	 * @return the fetch size
+	 */
+	public Integer getFetchSize() {
+		return fetchSize;
+	}
+
+	/**
+	 * Returns the max number of rows or null if not defined.
+	 * @return the max number of rows
+	 */
+	public Integer getMaxRows() {
+		return maxRows;
+	}
+
+	/**
+	 * Returns the query timeout in seconds or null if not defined.
+	 * @return the timeout
+	 */
+	public Integer getQueryTimeout() {
+		return queryTimeout;
+	}
+
+	/**
+	 * Returns the fetch direction or null if not defined.
+	 * @return the fetch direction
+	 */
+	public Integer getFetchDirection() {
+		return fetchDirection;
+	}
+
+	/**
+	 * Returns the result set type or null if not defined.
+	 * @return the result set type
+	 */
+	public Integer getResultSetType() {
+		return resultSetType;
+	}
+
+	/**
+	 * Returns the result set concurrency or null if not defined.
+	 * @return the result set concurrency
+	 */
+	public Integer getResultSetConcurrency() {
+		return resultSetConcurrency;
+	}
+
+	/**
+	 * Returns the result set holdability or null if not defined.
+	 * @return the result set holdability
+	 */
+	public Integer getResultSetHoldability() {
+		return resultSetHoldability;
+	}
+
+	/**
+	 * Creates a prepared statement for given SQL using the options.
+	 * @param conn the connection
+	 * @param sql the SQL statement
+	 * @return the statement
+	 * @throws SQLException if the statement can't be created
+	 */
+	public PreparedStatement prepareStatement(Connection conn, String sql) throws SQLException {
+		PreparedStatement st = createStatement(conn, sql);
+		try {
+			if (fetchSize != null) st.setFetchSize(fetchSize);
+			if (maxRows != null) st.setMaxRows(maxRows);
+			if (queryTimeout != null) st.setQueryTimeout(queryTimeout);
+			if (fetchDirection != null) st.setFetchDirection(fetchDirection);
+			return st;
+		} catch (SQLException e) {
+			st.close();
+			throw e;
+		}
+	}
+
+	@Override
+	public boolean equals(Object o) {
+		if (this == o) return true;
+		if (o == null || getClass() != o.getClass()) return false;
+		SQLStatementOptions that = (SQLStatementOptions) o;
+		return Objects.equals(fetchSize, that.fetchSize) &&
+				Objects.equals(maxRows, that.maxRows) &&
+				Objects.equals(queryTimeout, that.queryTimeout) &&
+				Objects.equals(fetchDirection, that.fetchDirection) &&
+				Objects.equals(resultSetType, that.resultSetType) &&
+				Objects.equals(resultSetConcurrency, that.resultSetConcurrency) &&
+				Objects.equals(resultSetHoldability, that.resultSetHoldability);
+	}
+
+	@Override
+	public int hashCode() {
+		return Objects.hash(fetchSize, maxRows, queryTimeout, fetchDirection, resultSetType, resultSetConcurrency, resultSetHoldability);
+	}
+
+	private PreparedStatement createStatement(Connection conn, String sql) throws SQLException {
+		int type = resultSetType != null ? resultSetType : ResultSet.TYPE_FORWARD_ONLY;
+		int concurrency = resultSetConcurrency != null ? resultSetConcurrency : ResultSet.CONCUR_READ_ONLY;
+		if (resultSetHoldability != null) {
+			return conn.prepareStatement(sql, type, concurrency, resultSetHoldability);
+		}
+		if (resultSetType != null || resultSetConcurrency != null) {
+			return conn.prepareStatement(sql, type, concurrency);
+		}
+		return conn.prepareStatement(sql);
+	}
+
+	public static class SQLStatementOptionsBuilder {
+		private Integer fetchSize;
+		private Integer maxRows;
+		private Integer queryTimeout;
+		private Integer fetchDirection;
+		private Integer resultSetType;
+		private Integer resultSetConcurrency;
+		private Integer resultSetHoldability;
+
+		private SQLStatementOptionsBuilder() {
+		}
+
+		/**
+		 * Sets the number of rows fetched from the database in each round trip.
+		 * @param fetchSize the fetch size
+		 * @return the builder
+		 */
+		public SQLStatementOptionsBuilder fetchSize(int fetchSize) {
+			if (fetchSize < 0) {
+				throw new IllegalArgumentException("Fetch size must not be negative");
+			}
+			this.fetchSize = fetchSize;
+			return this;
+		}
+
+		/**
+		 * Sets the max number of rows returned by a query.
+		 * @param maxRows the max number of rows
+		 * @return the builder
+		 */
+		public SQLStatementOptionsBuilder maxRows(int maxRows) {
+			if (maxRows < 0) {
+				throw new IllegalArgumentException("Max rows must not be negative");
+			}
+			this.maxRows = maxRows;
+			return this;
+		}
+
+		/**
+		 * Sets the query timeout in seconds.
+		 * @param queryTimeout the timeout
+		 * @return the builder
+		 */
+		public SQLStatementOptionsBuilder queryTimeout(int queryTimeout) {
+			if (queryTimeout < 0) {
+				throw new IllegalArgumentException("Query timeout must not be negative");
+			}
+			this.queryTimeout = queryTimeout;
+			return this;
+		}
+
+		/**
+		 * Sets fetch direction forward.
+		 * @return the builder
+		 */
+		public SQLStatementOptionsBuilder fetchForward() {
+			this.fetchDirection = ResultSet.FETCH_FORWARD;
+			return this;
+		}
+
+		/**
+		 * Sets result set type forward only.
+		 * @return the builder
+		 */
+		public SQLStatementOptionsBuilder forwardOnly() {
+			this.resultSetType = ResultSet.TYPE_FORWARD_ONLY;
+			return this;
+		}
+
+		/**
+		 * Sets result set type scroll insensitive.
+		 * @return the builder
+		 */
+		public SQLStatementOptionsBuilder scrollInsensitive() {
+			this.resultSetType = ResultSet.TYPE_SCROLL_INSENSITIVE;
+			return this;
+		}
+
+		/**
+		 * Sets result set concurrency read only.
+		 * @return the builder
+		 */
+		public SQLStatementOptionsBuilder readOnly() {
+			this.resultSetConcurrency = ResultSet.CONCUR_READ_ONLY;
+			return this;
+		}
+
+		/**
+		 * Sets result set concurrency updatable.
+		 * @return the builder
+		 */
+		public SQLStatementOptionsBuilder updatable() {
+			this.resultSetConcurrency = ResultSet.CONCUR_UPDATABLE;
+			return this;
+		}
+
+		/**
+		 * Sets result set holdability hold cursors over commit.
+		 * @return the builder
+		 */
+		public SQLStatementOptionsBuilder holdCursorsOverCommit() {
+			this.resultSetHoldability = ResultSet.HOLD_CURSORS_OVER_COMMIT;
+			return this;
+		}
+
+		/**
+		 * Sets result set holdability close cursors at commit.
+		 * @return the builder
+		 */
+		public SQLStatementOptionsBuilder closeCursorsAtCommit() {
+			this.resultSetHoldability = ResultSet.CLOSE_CURSORS_AT_COMMIT;
+			return this;
+		}
+
+		/**
+		 * Builds the options.
+		 * @return new options
+		 */
+		public SQLStatementOptions build() {
+			return new SQLStatementOptions(fetchSize, maxRows, queryTimeout, fetchDirection, resultSetType, resultSetConcurrency, resultSetHoldability);
+		}
+	}
+}
@@ -8,9 +8,21 @@ package com.nextbreakpoint.sql;
 
 import com.nextbreakpoint.Try;
 
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.nio.channels.WritableByteChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
 import java.sql.Connection;
 import java.util.List;
 import java.util.Objects;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Supplier;
+import java.util.stream.Stream;
 
 /**
  * SQLTemplate implements a fluent interface for executing SQL statements.
@@ -19,20 +31,350 @@ import java.util.Objects;
  *
  */
 public class SQLTemplate {
+	/**
+	 * Default number of rows sent to the database in a single batch.
+	 */
+	public static final int DEFAULT_BATCH_SIZE = 1000;
+
+	/**
+	 * Default max number of parameters of a rewritten insert statement, below the limit of 2100 parameters of
+	 * SQL Server and the limit of 32767 parameters of PostgreSQL.
+	 */
+	public static final int DEFAULT_INSERT_PARAMETER_LIMIT = 2000;
+
+	private static final int PARTITION_QUEUE_SIZE = 1000;
+
 	private final SQLOperation operation;
+	private final SQLBindings bindings;
 
-	private SQLTemplate(SQLOperation operation) {
+	private SQLTemplate(SQLOperation operation, SQLBindings bindings) {
 		this.operation = Objects.requireNonNull(operation);
+		this.bindings = Objects.requireNonNull(bindings);
+	}
+
+	/**
+	 * Creates a template with the same operations, which binds given arguments to the placeholders created with
+	 * {@link SQLParam#of(int)} when it is applied. The bindings are used by all methods which apply the template,
+	 * except {@link #applyParallel} which binds the parameters of each partition. The template is not modified,
+	 * therefore it can be bound many times, also concurrently, with different arguments.
+	 * @param args the arguments
+	 * @return new template
+	 */
+	public SQLTemplate bind(Object... args) {
+		return bind(SQLBindings.of(Objects.requireNonNull(args).clone()));
+	}
+
+	/**
+	 * Creates a template with the same operations, which binds given arguments to the named parameters and to the
+	 * placeholders of the statements when it is applied. The bindings are used by all methods which apply the template,
+	 * except {@link #applyParallel} which binds the parameters of each partition. The template is not modified,
+	 * therefore it can be bound many times, also concurrently, with different bindings.
+	 * @param bindings the bindings
+	 * @return new template
+	 */
+	public SQLTemplate bind(SQLBindings bindings) {
+		return new SQLTemplate(operation, bindings);
 	}
 
 	/**
 	 * Creates a Try monad with operations defined in the template.
+	 * Statements and results are closed before returning the monad.
 	 * @param connection a JDBC connection
 	 * @return the monad
 	 */
 	public Try<List<Object[]>, SQLTemplateException> apply(Connection connection) {
-		return operation.apply(SQLTemplateDriver.create(connection))
-				.flatMap(SQLTemplateDriver::fetch).map(SQLTemplateDriver::values).execute();
+		return apply(SQLTemplateDriver.create(connection, bindings));
+	}
+
+	/**
+	 * Creates a Try monad with operations defined in the template, binding given arguments to the placeholders
+	 * created with {@link SQLParam#of(int)}. The template can be applied many times, also concurrently, with different arguments.
+	 * Statements and results are closed before returning the monad. Same as {@code bind(args).apply(connection)}.
+	 * @param connection a JDBC connection
+	 * @param args the arguments
+	 * @return the monad
+	 */
+	public Try<List<Object[]>, SQLTemplateException> apply(Connection connection, Object... args) {
+		return bind(args).apply(connection);
+	}
+
+	/**
+	 * Creates a Try monad with operations defined in the template, binding given arguments to the named parameters
+	 * and to the placeholders of the statements. The template can be applied many times, also concurrently, with different bindings.
+	 * Statements and results are closed before returning the monad. Same as {@code bind(bindings).apply(connection)}.
+	 * @param connection a JDBC connection
+	 * @param bindings the bindings
+	 * @return the monad
+	 */
+	public Try<List<Object[]>, SQLTemplateException> apply(Connection connection, SQLBindings bindings) {
+		return bind(bindings).apply(connection);
+	}
+
+	/**
+	 * Creates a future which completes with the result of the operations defined in the template.
+	 * The template is executed by the default executor, which uses virtual threads when available.
+	 * @param connection a JDBC connection
+	 * @return the future
+	 */
+	public CompletableFuture<List<Object[]>> applyAsync(Connection connection) {
+		return applyAsync(connection, defaultExecutor());
+	}
+
+	/**
+	 * Creates a future which completes with the result of the operations defined in the template.
+	 * The future completes exceptionally with a {@link SQLTemplateException} when the template fails.
+	 * @param connection a JDBC connection
+	 * @param executor the executor
+	 * @return the future
+	 */
+	public CompletableFuture<List<Object[]>> applyAsync(Connection connection, Executor executor) {
+		Objects.requireNonNull(connection);
+		Objects.requireNonNull(executor);
+		CompletableFuture<List<Object[]>> future = new CompletableFuture<>();
+		try {
+			executor.execute(() -> {
+				Try<List<Object[]>, SQLTemplateException> result = apply(connection);
+				if (result.isFailure()) {
+					result.ifFailure(future::completeExceptionally);
+				} else {
+					future.complete(result.get());
+				}
+			});
+		} catch (RejectedExecutionException e) {
+			future.completeExceptionally(new SQLTemplateException("SQL template rejected", e));
+		}
+		return future;
+	}
+
+	/**
+	 * Returns the default executor for asynchronous execution. The executor creates a new virtual thread for each
+	 * template when the runtime supports virtual threads, otherwise it uses a bounded pool of daemon threads.
+	 * @return the executor
+	 */
+	public static Executor defaultExecutor() {
+		return DefaultExecutorHolder.executor;
+	}
+
+	/**
+	 * Returns the default executor for parallel execution. The executor is a bounded pool of daemon threads which is
+	 * dedicated to partitions, therefore partitions waiting for the consumer of the stream don't block other tasks.
+	 * Partitions are started in the order they are submitted, and they wait in the queue of the pool when all threads
+	 * are busy.
+	 * @return the executor
+	 */
+	public static Executor partitionExecutor() {
+		return PartitionExecutorHolder.executor;
+	}
+
+	/**
+	 * Creates a Try monad with operations defined in the template, which executes the template once for each partition
+	 * and returns the rows of all partitions as stream. Each partition is executed on a different connection provided
+	 * by given supplier, and the connection is closed when the partition completes. The parameters of the partition
+	 * are bound to the query operation appended with {@link SQLTemplateBuilder#queryPartition()}.
+	 * Partitions are executed by the default partition executor and rows are returned in the order of partitions.
+	 * @param connections the supplier of JDBC connections
+	 * @param partitioner the partitioner
+	 * @return the monad
+	 */
+	public Try<Stream<Object[]>, SQLTemplateException> applyParallel(Supplier<Connection> connections, SQLPartitioner partitioner) {
+		return applyParallel(connections, partitioner, partitionExecutor(), true);
+	}
+
+	/**
+	 * Creates a Try monad with operations defined in the template, which executes the template once for each partition
+	 * and returns the rows of all partitions as stream. Each partition is executed on a different connection provided
+	 * by given supplier, and the connection is closed when the partition completes. The parameters of the partition
+	 * are bound to the query operation appended with {@link SQLTemplateBuilder#queryPartition()}.
+	 * Rows are passed to the stream through bounded queues while the partitions are executing, therefore partitions
+	 * wait when the consumer is slower, and rows in order of completion are available as soon as they are read.
+	 * Errors of the partitions are thrown by the stream as {@link SQLTemplateUncheckedException}, and closing the
+	 * stream cancels the partitions which are still running. Partitions block their thread while they wait, therefore
+	 * the executor should not be shared with other tasks, and when rows are returned in the order of partitions the
+	 * executor must start the partitions in the order they are submitted.
+	 * @param connections the supplier of JDBC connections
+	 * @param partitioner the partitioner
+	 * @param executor the executor of partitions
+	 * @param ordered true if rows must be returned in the order of partitions, false if rows must be returned in order of completion
+	 * @return the monad
+	 */
+	public Try<Stream<Object[]>, SQLTemplateException> applyParallel(Supplier<Connection> connections, SQLPartitioner partitioner, Executor executor, boolean ordered) {
+		Objects.requireNonNull(connections);
+		Objects.requireNonNull(partitioner);
+		Objects.requireNonNull(executor);
+		return SQLTemplateDriver.tryCallable(() -> {
+			List<Object[]> partitions = partitioner.partitions();
+			SQLPartitionQueue queue = new SQLPartitionQueue(partitions.size(), ordered, PARTITION_QUEUE_SIZE);
+			try {
+				for (int i = 0; i < partitions.size(); i++) {
+					int partition = i;
+					executor.execute(() -> applyPartition(connections, partitions.get(partition), queue, partition));
+				}
+			} catch (RejectedExecutionException e) {
+				queue.cancel();
+				throw e;
+			}
+			return queue.stream();
+		}).execute();
+	}
+
+	/**
+	 * Creates a Try monad with operations defined in the template, which maps the rows of the result using given mapper.
+	 * Statements and results are closed before returning the monad.
+	 * @param connection a JDBC connection
+	 * @param mapper the mapper
+	 * @param <T> the type of object
+	 * @return the monad
+	 */
+	public <T> Try<List<T>, SQLTemplateException> apply(Connection connection, SQLRowMapper<T> mapper) {
+		Objects.requireNonNull(mapper);
+		try (SQLTemplateDriver driver = SQLTemplateDriver.create(connection, bindings)) {
+			return operation.apply(driver).flatMap(result -> result.map(mapper)).execute();
+		}
+	}
+
+	/**
+	 * Creates a Try monad with operations defined in the template, which returns the result stored by column.
+	 * Statements and results are closed before returning the monad.
+	 * @param connection a JDBC connection
+	 * @return the monad
+	 */
+	public Try<SQLColumnarResult, SQLTemplateException> columns(Connection connection) {
+		try (SQLTemplateDriver driver = SQLTemplateDriver.create(connection, bindings)) {
+			return operation.apply(driver).flatMap(SQLTemplateDriver::columns).execute();
+		}
+	}
+
+	/**
+	 * Creates a Try monad with operations defined in the template, which returns the result stored outside of the heap.
+	 * Rows are stored in direct memory until the size reaches given threshold, then rows are stored in a temporary file
+	 * mapped in memory. Statements and results are closed before returning the monad, and the buffer must be closed
+	 * when it is not used anymore.
+	 * @param connection a JDBC connection
+	 * @param threshold the max number of bytes stored in memory
+	 * @return the monad
+	 */
+	public Try<SQLResultBuffer, SQLTemplateException> buffer(Connection connection, long threshold) {
+		try (SQLTemplateDriver driver = SQLTemplateDriver.create(connection, bindings)) {
+			return operation.apply(driver).flatMap(result -> result.buffer(threshold)).execute();
+		}
+	}
+
+	/**
+	 * Creates a Try monad with operations defined in the template, which returns the result as lazy stream.
+	 * Rows are read from the result set while the stream is consumed, therefore the stream must be closed
+	 * in order to release the result set and the statement.
+	 * @param connection a JDBC connection
+	 * @return the monad
+	 */
+	public Try<Stream<Object[]>, SQLTemplateException> stream(Connection connection) {
+		SQLTemplateDriver driver = SQLTemplateDriver.create(connection, bindings);
+		Try<Stream<Object[]>, SQLTemplateException> result = operation.apply(driver).map(SQLTemplateDriver::stream).execute();
+		if (result.isFailure()) {
+			driver.close();
+		}
+		return result;
+	}
+
+	/**
+	 * Creates a Try monad with operations defined in the template, which returns the result as publisher.
+	 * Rows are published in the thread which requests them.
+	 * @param connection a JDBC connection
+	 * @return the monad
+	 */
+	public Try<SQLPublisher, SQLTemplateException> publisher(Connection connection) {
+		return publisher(connection, Runnable::run);
+	}
+
+	/**
+	 * Creates a Try monad with operations defined in the template, which returns the result as publisher.
+	 * Rows are read from the result set when the subscriber requests them, and the fetch size of the result set
+	 * follows the demand of the subscriber. The result set and the statement are released when the publication
+	 * completes or the subscription is cancelled.
+	 * @param connection a JDBC connection
+	 * @param executor the executor which publishes the rows
+	 * @return the monad
+	 */
+	public Try<SQLPublisher, SQLTemplateException> publisher(Connection connection, Executor executor) {
+		Objects.requireNonNull(executor);
+		SQLTemplateDriver driver = SQLTemplateDriver.create(connection, bindings);
+		Try<SQLPublisher, SQLTemplateException> result = operation.apply(driver).map(d -> d.publisher(executor)).execute();
+		if (result.isFailure()) {
+			driver.close();
+		}
+		return result;
+	}
+
+	/**
+	 * Creates a Try monad with operations defined in the template, which passes each row of the result to given callback
+	 * and returns the number of rows. The row is a view which is reused for all rows, therefore no array is allocated
+	 * for each row unless the callback copies the values with {@link SQLRow#toArray()}.
+	 * Statements and results are closed before returning the monad.
+	 * @param connection a JDBC connection
+	 * @param callback the callback
+	 * @return the monad
+	 */
+	public Try<Long, SQLTemplateException> forEachRow(Connection connection, SQLRowCallback callback) {
+		Objects.requireNonNull(callback);
+		try (SQLTemplateDriver driver = SQLTemplateDriver.create(connection, bindings)) {
+			return operation.apply(driver).flatMap(result -> result.forEachRow(callback)).execute();
+		}
+	}
+
+	/**
+	 * Creates a Try monad with operations defined in the template, which writes the rows of the result to given file
+	 * and returns the number of rows. The file is created or truncated. Rows are written one at a time through
+	 * the buffer of the exporter, therefore the memory used doesn't depend on the number of rows.
+	 * Statements and results are closed before returning the monad.
+	 * @param connection a JDBC connection
+	 * @param exporter the exporter
+	 * @param path the path of the file
+	 * @return the monad
+	 */
+	public Try<Long, SQLTemplateException> export(Connection connection, SQLExporter exporter, Path path) {
+		Objects.requireNonNull(exporter);
+		try (FileChannel channel = FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE)) {
+			return export(connection, exporter, channel);
+		} catch (IOException e) {
+			return SQLTemplateDriver.<Long>tryCallable(() -> { throw e; }).execute();
+		}
+	}
+
+	/**
+	 * Creates a Try monad with operations defined in the template, which writes the rows of the result to given channel
+	 * and returns the number of rows. Rows are written one at a time through the buffer of the exporter, therefore the
+	 * memory used doesn't depend on the number of rows. The channel is not closed.
+	 * Statements and results are closed before returning the monad.
+	 * @param connection a JDBC connection
+	 * @param exporter the exporter
+	 * @param channel the channel
+	 * @return the monad
+	 */
+	public Try<Long, SQLTemplateException> export(Connection connection, SQLExporter exporter, WritableByteChannel channel) {
+		SQLExporter.RowWriter writer = Objects.requireNonNull(exporter).writer(channel);
+		try (SQLTemplateDriver driver = SQLTemplateDriver.create(connection, bindings)) {
+			return operation.apply(driver).flatMap(result -> result.forEachRow(writer))
+				.flatMap(rows -> SQLTemplateDriver.tryCallable(() -> { writer.finish(); return rows; })).execute();
+		} finally {
+			writer.release();
+		}
+	}
+
+	private Try<List<Object[]>, SQLTemplateException> apply(SQLTemplateDriver driver) {
+		try {
+			return operation.apply(driver).flatMap(SQLTemplateDriver::fetch).map(SQLTemplateDriver::values).execute();
+		} finally {
+			driver.close();
+		}
+	}
+
+	private void applyPartition(Supplier<Connection> connections, Object[] arguments, SQLPartitionQueue queue, int partition) {
+		SQLTemplateException error = null;
+		try (Connection connection = connections.get(); SQLTemplateDriver driver = SQLTemplateDriver.create(connection, arguments)) {
+			operation.apply(driver).flatMap(result -> result.forEachRow(row -> queue.put(partition, row.toArray()))).orThrow();
+		} catch (Exception e) {
+			error = SQLTemplateDriver.defaultMapper().apply(e);
+		}
+		queue.end(partition, error);
 	}
 
 	/**
@@ -40,14 +382,43 @@ public class SQLTemplate {
 	 * @return the builder
 	 */
 	public static SQLTemplateBuilder builder() {
-		return new SQLTemplateBuilder(driver -> Try.success(driver).mapper(SQLTemplateDriver.defaultMapper()));
+		return new SQLTemplateBuilder(null, null, new String[0]);
+	}
+
+	private static class DefaultExecutorHolder {
+		private static final Executor executor = createExecutor();
+
+		private static Executor createExecutor() {
+			return Try.of(() -> (Executor) Executors.class.getMethod("newVirtualThreadPerTaskExecutor").invoke(null))
+				.orElseGet(() -> createThreadPool("sqltemplate-"));
+		}
+	}
+
+	private static class PartitionExecutorHolder {
+		private static final Executor executor = createThreadPool("sqltemplate-partition-");
+	}
+
+	private static Executor createThreadPool(String prefix) {
+		int threads = Math.max(4, Runtime.getRuntime().availableProcessors() * 2);
+		AtomicInteger counter = new AtomicInteger();
+		return Executors.newFixedThreadPool(threads, runnable -> {
+			Thread thread = new Thread(runnable, prefix + counter.incrementAndGet());
+			thread.setDaemon(true);
+			return thread;
+		});
 	}
 
 	public static class SQLTemplateBuilder {
-		private final SQLOperation operation;
+		private final SQLTemplateBuilder previous;
+		private final SQLPlan.Step step;
+		private final String[] names;
+		private final int size;
 
-		private SQLTemplateBuilder(SQLOperation operation) {
-			this.operation = Objects.requireNonNull(operation);
+		private SQLTemplateBuilder(SQLTemplateBuilder previous, SQLPlan.Step step, String[] names) {
+			this.previous = previous;
+			this.step = step;
+			this.names = names;
+			this.size = previous != null ? previous.size + 1 : 0;
 		}
 
 		/**
@@ -55,7 +426,7 @@ public class SQLTemplate {
 		 * @return the builder
 		 */
 		public SQLTemplateBuilder autoCommit() {
-			return create(operation.andThen(driver -> driver.autoCommit()));
+			return create(driver -> driver.applyAutoCommit(true));
 		}
 
 		/**
@@ -63,7 +434,7 @@ public class SQLTemplate {
 		 * @return the builder
 		 */
 		public SQLTemplateBuilder noAutoCommit() {
-			return create(operation.andThen(driver -> driver.noAutoCommit()));
+			return create(driver -> driver.applyAutoCommit(false));
 		}
 
 		/**
@@ -71,7 +442,7 @@ public class SQLTemplate {
 		 * @return the builder
 		 */
 		public SQLTemplateBuilder commit() {
-			return create(operation.andThen(driver -> driver.commit()));
+			return create(SQLTemplateDriver::applyCommit);
 		}
 
 		/**
@@ -79,62 +450,300 @@ public class SQLTemplate {
 		 * @return the builder
 		 */
 		public SQLTemplateBuilder rollback() {
-			return create(operation.andThen(driver -> driver.rollback()));
+			return create(SQLTemplateDriver::applyRollback);
+		}
+
+		/**
+		 * Appends operation which sets auto commit false and enables given commit policy. Subsequent updates and batches
+		 * are committed when the policy is due, and they are rolled back to the last savepoint when they fail.
+		 * @param policy the commit policy
+		 * @return the builder
+		 */
+		public SQLTemplateBuilder commitPolicy(SQLCommitPolicy policy) {
+			Objects.requireNonNull(policy);
+			return create(driver -> driver.applyCommitPolicy(policy));
+		}
+
+		/**
+		 * Appends operation which enables given statement cache. Subsequent statements are taken from the cache when present.
+		 * @param statementCache the statement cache
+		 * @return the builder
+		 */
+		public SQLTemplateBuilder statementCache(SQLStatementCache statementCache) {
+			Objects.requireNonNull(statementCache);
+			return create(driver -> driver.applyStatementCache(statementCache));
+		}
+
+		/**
+		 * Appends operation which enables given listener. Subsequent operations are measured and reported to the listener.
+		 * @param listener the listener
+		 * @return the builder
+		 */
+		public SQLTemplateBuilder listener(SQLListener listener) {
+			Objects.requireNonNull(listener);
+			return create(driver -> driver.applyListener(listener));
+		}
+
+		/**
+		 * Appends operation which enables given slow statement log. Subsequent execute and fetch operations are recorded
+		 * in the log when they are slow or sampled.
+		 * @param slowLog the log
+		 * @return the builder
+		 */
+		public SQLTemplateBuilder slowLog(SQLSlowLog slowLog) {
+			Objects.requireNonNull(slowLog);
+			return create(driver -> driver.applySlowLog(slowLog));
+		}
+
+		/**
+		 * Appends operation which enables given result cache. Subsequent queries are read from the cache,
+		 * and subsequent updates invalidate the results of the queries which read the same tables.
+		 * @param resultCache the cache
+		 * @return the builder
+		 */
+		public SQLTemplateBuilder resultCache(SQLResultCache resultCache) {
+			Objects.requireNonNull(resultCache);
+			return create(driver -> driver.applyResultCache(resultCache));
+		}
+
+		/**
+		 * Appends operation which enables the rewrite of batched inserts. Subsequent batches of statements
+		 * INSERT ... VALUES (...) are executed as statements with many VALUES tuples, each one inserting up to
+		 * chunkSize rows, and the statement of each chunk size is prepared once. The batch size is ignored
+		 * when the statement is rewritten, and the count of each row is 1, or SUCCESS_NO_INFO when the count
+		 * of the chunk doesn't match the number of rows. The chunk size is reduced when the parameters of a chunk
+		 * would exceed {@link SQLTemplate#DEFAULT_INSERT_PARAMETER_LIMIT}.
+		 * @param chunkSize the max number of rows inserted by each statement
+		 * @return the builder
+		 */
+		public SQLTemplateBuilder rewriteInserts(int chunkSize) {
+			return rewriteInserts(chunkSize, DEFAULT_INSERT_PARAMETER_LIMIT);
 		}
 
 		/**
-		 * Appends operation prepare statement.
+		 * Appends operation which enables the rewrite of batched inserts, like {@link #rewriteInserts(int)}.
+		 * The chunk size is reduced when the parameters of a chunk would exceed given limit, which should not
+		 * be greater than the max number of parameters supported by the driver, and rows with more parameters
+		 * than the limit are inserted one at a time.
+		 * @param chunkSize the max number of rows inserted by each statement
+		 * @param parameterLimit the max number of parameters of each statement
+		 * @return the builder
+		 */
+		public SQLTemplateBuilder rewriteInserts(int chunkSize, int parameterLimit) {
+			if (chunkSize <= 0) {
+				throw new IllegalArgumentException("Chunk size must be greater than zero");
+			}
+			if (parameterLimit <= 0) {
+				throw new IllegalArgumentException("Parameter limit must be greater than zero");
+			}
+			return create(driver -> driver.applyRewriteInserts(chunkSize, parameterLimit));
+		}
+
+		/**
+		 * Appends operation prepare statement. The statement is prepared as it is, with JDBC placeholders.
 		 * @param sqlStmt the SQL statement
 		 * @return the builder
 		 */
 		public SQLTemplateBuilder statement(String sqlStmt) {
-			return create(operation.andThen(driver -> driver.prepareStatement(sqlStmt)));
+			return statement(sqlStmt, SQLStatementOptions.defaults());
 		}
 
 		/**
-		 * Appends operation update with arguments.
+		 * Appends operation prepare statement with options. The statement is prepared as it is, with JDBC placeholders.
+		 * @param sqlStmt the SQL statement
+		 * @param options the statement options
+		 * @return the builder
+		 */
+		public SQLTemplateBuilder statement(String sqlStmt, SQLStatementOptions options) {
+			Objects.requireNonNull(sqlStmt);
+			Objects.requireNonNull(options);
+			return new SQLTemplateBuilder(this, driver -> driver.applyPrepareStatement(sqlStmt, options), new String[0]);
+		}
+
+		/**
+		 * Appends operation prepare statement with named parameters like :name, which are replaced by JDBC placeholders
+		 * and bound by {@link #update()} and {@link #query()} to the named arguments provided when the template is applied.
+		 * Named and positional parameters can't be mixed.
+		 * @param sqlStmt the SQL statement
+		 * @return the builder
+		 */
+		public SQLTemplateBuilder namedStatement(String sqlStmt) {
+			return namedStatement(sqlStmt, SQLStatementOptions.defaults());
+		}
+
+		/**
+		 * Appends operation prepare statement with named parameters like :name and options.
+		 * @param sqlStmt the SQL statement
+		 * @param options the statement options
+		 * @return the builder
+		 */
+		public SQLTemplateBuilder namedStatement(String sqlStmt, SQLStatementOptions options) {
+			Objects.requireNonNull(options);
+			SQLNamedStatement namedStmt = SQLNamedStatement.parse(sqlStmt);
+			return new SQLTemplateBuilder(this, driver -> driver.applyPrepareStatement(namedStmt.sql(), options), namedStmt.names());
+		}
+
+		/**
+		 * Appends operation update with arguments. Parameters created with {@link SQLParam#of(int)}
+		 * are replaced by the arguments provided when the template is applied.
+		 * @param params the parameters
+		 * @return the builder
+		 */
+		public SQLTemplateBuilder update(Object... params) {
+			if (SQLParam.hasParams(params)) {
+				return create(driver -> driver.applyUpdate(driver.bindArguments(params)));
+			}
+			return create(driver -> driver.applyUpdate(params));
+		}
+
+		/**
+		 * Appends operation query with arguments. Parameters created with {@link SQLParam#of(int)}
+		 * are replaced by the arguments provided when the template is applied.
 		 * @param params the parameters
 		 * @return the builder
 		 */
-		public SQLTemplateBuilder update(Object[] params) {
-			return create(operation.andThen(driver -> driver.executeUpdate(params)));
+		public SQLTemplateBuilder query(Object... params) {
+			if (SQLParam.hasParams(params)) {
+				return create(driver -> driver.applyQuery(driver.bindArguments(params)));
+			}
+			return create(driver -> driver.applyQuery(params));
 		}
 
 		/**
-		 * Appends operation query with arguments.
+		 * Appends operation query by pages with arguments. The query is executed for each page with given parameters
+		 * followed by the values of the key of the last row of the previous page, and the result contains the rows
+		 * of all pages, which are read when the stream is consumed. Errors which occur while a page is read are thrown
+		 * by the stream as {@link SQLTemplateUncheckedException}. When prefetch is enabled the connection must not be
+		 * used until the stream has been consumed or closed. Parameters created with {@link SQLParam#of(int)}
+		 * are replaced by the arguments provided when the template is applied.
+		 * @param keyset the keyset
 		 * @param params the parameters
 		 * @return the builder
 		 */
-		public SQLTemplateBuilder query(Object[] params) {
-			return create(operation.andThen(driver -> driver.executeQuery(params)));
+		public SQLTemplateBuilder queryPages(SQLKeyset keyset, Object... params) {
+			Objects.requireNonNull(keyset);
+			if (SQLParam.hasParams(params)) {
+				return create(driver -> driver.applyQueryPages(driver.bindArguments(params), keyset));
+			}
+			return create(driver -> driver.applyQueryPages(params, keyset));
+		}
+
+		/**
+		 * Appends operation batch update with given rows of arguments, using default batch size.
+		 * @param params the rows of parameters
+		 * @return the builder
+		 */
+		public SQLTemplateBuilder batch(Iterable<Object[]> params) {
+			return batch(params, DEFAULT_BATCH_SIZE);
 		}
 
 		/**
-		 * Appends operation update.
+		 * Appends operation batch update with given rows of arguments.
+		 * Rows are added to the current statement and sent to the database every batchSize rows.
+		 * @param params the rows of parameters
+		 * @param batchSize the number of rows for each batch
+		 * @return the builder
+		 */
+		public SQLTemplateBuilder batch(Iterable<Object[]> params, int batchSize) {
+			Objects.requireNonNull(params);
+			requireBatchSize(batchSize);
+			return create(driver -> driver.applyBatch(params, batchSize));
+		}
+
+		/**
+		 * Appends operation batch update with given objects. The parameters of each row are set from the object
+		 * by given binder, therefore primitive values can be set without creating an array of objects for each row.
+		 * @param items the objects
+		 * @param binder the binder
+		 * @param batchSize the number of rows for each batch
+		 * @param <T> the type of object
+		 * @return the builder
+		 */
+		public <T> SQLTemplateBuilder batch(Iterable<T> items, SQLParameterBinder<? super T> binder, int batchSize) {
+			Objects.requireNonNull(items);
+			Objects.requireNonNull(binder);
+			requireBatchSize(batchSize);
+			return create(driver -> driver.applyBatch(items, binder, batchSize));
+		}
+
+		/**
+		 * Appends operation batch update with given stream of arguments.
+		 * The stream can be consumed only once, therefore the template can be applied only once.
+		 * @param params the stream of parameters
+		 * @param batchSize the number of rows for each batch
+		 * @return the builder
+		 */
+		public SQLTemplateBuilder batch(Stream<Object[]> params, int batchSize) {
+			Objects.requireNonNull(params);
+			return batch(params::iterator, batchSize);
+		}
+
+		/**
+		 * Appends operation bulk load with given loader and source. The rows of the source are parsed on another thread
+		 * and executed in batches of the current statement. The result contains one row with the number of rows,
+		 * the elapsed time in nanoseconds and the rows per second.
+		 * @param loader the loader
+		 * @param source the source
+		 * @return the builder
+		 */
+		public SQLTemplateBuilder load(SQLBulkLoader loader, SQLBulkLoader.Source source) {
+			Objects.requireNonNull(loader);
+			Objects.requireNonNull(source);
+			return create(driver -> driver.applyLoad(loader, source));
+		}
+
+		/**
+		 * Appends operation query with the arguments of the driver, which are the parameters
+		 * of the partition when the template is applied with {@link SQLTemplate#applyParallel}.
+		 * @return the builder
+		 */
+		public SQLTemplateBuilder queryPartition() {
+			return create(driver -> driver.applyQuery(driver.arguments()));
+		}
+
+		/**
+		 * Appends operation update. Named parameters of the current statement are bound to the named arguments.
 		 * @return the builder
 		 */
 		public SQLTemplateBuilder update() {
-			return create(operation.andThen(driver -> driver.executeUpdate()));
+			if (names.length > 0) {
+				return create(driver -> driver.applyUpdate(driver.bindNames(names)));
+			}
+			return create(driver -> driver.applyUpdate(null));
 		}
 
 		/**
-		 * Appends operation query.
+		 * Appends operation query. Named parameters of the current statement are bound to the named arguments.
 		 * @return the builder
 		 */
 		public SQLTemplateBuilder query() {
-			return create(operation.andThen(driver -> driver.executeQuery()));
+			if (names.length > 0) {
+				return create(driver -> driver.applyQuery(driver.bindNames(names)));
+			}
+			return create(driver -> driver.applyQuery(null));
 		}
 
 		/**
-		 * Builds a template from sequence of operations.
+		 * Builds a template from sequence of operations. The operations are compiled into a flat plan,
+		 * which executes the operations in a loop.
 		 * @return new template
 		 */
 		public SQLTemplate build() {
-			return new SQLTemplate(operation);
+			SQLPlan.Step[] steps = new SQLPlan.Step[size];
+			for (SQLTemplateBuilder builder = this; builder.previous != null; builder = builder.previous) {
+				steps[builder.size - 1] = builder.step;
+			}
+			return new SQLTemplate(new SQLPlan(steps), SQLBindings.empty());
+		}
+
+		private SQLTemplateBuilder create(SQLPlan.Step step) {
+			return new SQLTemplateBuilder(this, step, names);
 		}
 
-		private SQLTemplateBuilder create(SQLOperation operation) {
-			return new SQLTemplateBuilder(operation);
+		private static void requireBatchSize(int batchSize) {
+			if (batchSize <= 0) {
+				throw new IllegalArgumentException("Batch size must be greater than zero");
+			}
 		}
 	}
 }
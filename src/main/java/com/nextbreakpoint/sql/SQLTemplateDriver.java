@@ -8,37 +8,70 @@ package com.nextbreakpoint.sql;
 
 import com.nextbreakpoint.Try;
 
+import java.lang.ref.PhantomReference;
+import java.lang.ref.Reference;
+import java.lang.ref.ReferenceQueue;
+import java.math.BigDecimal;
 import java.sql.*;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.IdentityHashMap;
+import java.util.Iterator;
 import java.util.List;
+import java.util.Map;
 import java.util.Objects;
 import java.util.Optional;
+import java.util.Set;
 import java.util.Spliterator;
 import java.util.concurrent.Callable;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executor;
 import java.util.function.Consumer;
 import java.util.function.Function;
+import java.util.logging.Level;
+import java.util.logging.Logger;
 import java.util.stream.Collectors;
+import java.util.stream.IntStream;
 import java.util.stream.Stream;
 import java.util.stream.StreamSupport;
 
 /**
  * Provides a driver for executing JDBC operations.
+ * Each operation closes the statement or result which is replaced by the operation,
+ * and the driver must be closed in order to release the remaining statement and result.
+ * Drivers which are garbage collected without being closed can be reported as leaks
+ * enabling leak detection with system property com.nextbreakpoint.sql.leakDetection.
  * 
  * @author Andrea Medeghini
  *
  */
-public class SQLTemplateDriver {
+public class SQLTemplateDriver implements AutoCloseable {
+	private static final Logger logger = Logger.getLogger(SQLTemplateDriver.class.getName());
+	private static volatile boolean leakDetection = Boolean.getBoolean("com.nextbreakpoint.sql.leakDetection");
+
 	private final Connection conn;
 	private final SQLResult sqlResult;
 	private final SQLStatement sqlStatement;
+	private final SQLSettings settings;
+	private final SQLResources resources;
+	private final SQLBindings bindings;
 
-	private SQLTemplateDriver(Connection conn) {
-		this(conn, null, null);
+	private SQLTemplateDriver(Connection conn, SQLBindings bindings) {
+		this(conn, null, null, SQLSettings.defaults(), new SQLResources(leakDetection), bindings);
 	}
 
-	private SQLTemplateDriver(Connection conn, SQLStatement sqlStatement, SQLResult sqlResult) {
+	private SQLTemplateDriver(Connection conn, SQLStatement sqlStatement, SQLResult sqlResult, SQLSettings settings, SQLResources resources, SQLBindings bindings) {
 		this.conn = Objects.requireNonNull(conn);
 		this.sqlResult = sqlResult;
 		this.sqlStatement = sqlStatement;
+		this.settings = Objects.requireNonNull(settings);
+		this.resources = Objects.requireNonNull(resources);
+		this.bindings = Objects.requireNonNull(bindings);
 	}
 
 	/**
@@ -46,7 +79,7 @@ public class SQLTemplateDriver {
 	 * @return the result
 	 */
 	public Try<SQLTemplateDriver, SQLTemplateException> autoCommit() {
-		return tryCallable(() -> create(doAutoCommit(true), sqlStatement, sqlResult));
+		return tryCallable(() -> applyAutoCommit(true));
 	}
 
 	/**
@@ -54,7 +87,7 @@ public class SQLTemplateDriver {
 	 * @return the result
 	 */
 	public Try<SQLTemplateDriver, SQLTemplateException> noAutoCommit() {
-		return tryCallable(() -> create(doAutoCommit(false), sqlStatement, sqlResult));
+		return tryCallable(() -> applyAutoCommit(false));
 	}
 
 	/**
@@ -62,7 +95,7 @@ public class SQLTemplateDriver {
 	 * @return the result
 	 */
 	public Try<SQLTemplateDriver, SQLTemplateException> commit() {
-		return tryCallable(() -> create(doCommit(), sqlStatement, sqlResult));
+		return tryCallable(this::applyCommit);
 	}
 
 	/**
@@ -70,7 +103,83 @@ public class SQLTemplateDriver {
 	 * @return the result
 	 */
 	public Try<SQLTemplateDriver, SQLTemplateException> rollback() {
-		return tryCallable(() -> create(doRollback(), sqlStatement, sqlResult));
+		return tryCallable(this::applyRollback);
+	}
+
+	/**
+	 * Attempts to enable given statement cache and returns the result as Try instance.
+	 * Subsequent statements are taken from the cache when present.
+	 * @param statementCache the statement cache
+	 * @return the result
+	 */
+	public Try<SQLTemplateDriver, SQLTemplateException> statementCache(SQLStatementCache statementCache) {
+		return tryCallable(() -> applyStatementCache(statementCache));
+	}
+
+	/**
+	 * Attempts to enable given listener and returns the result as Try instance.
+	 * Subsequent operations are measured and reported to the listener.
+	 * @param listener the listener
+	 * @return the result
+	 */
+	public Try<SQLTemplateDriver, SQLTemplateException> listener(SQLListener listener) {
+		return tryCallable(() -> applyListener(listener));
+	}
+
+	/**
+	 * Attempts to enable given slow statement log and returns the result as Try instance.
+	 * Subsequent execute and fetch operations are recorded in the log when they are slow or sampled.
+	 * @param slowLog the log
+	 * @return the result
+	 */
+	public Try<SQLTemplateDriver, SQLTemplateException> slowLog(SQLSlowLog slowLog) {
+		return tryCallable(() -> applySlowLog(slowLog));
+	}
+
+	/**
+	 * Attempts to enable given result cache and returns the result as Try instance.
+	 * Subsequent queries are read from the cache, and subsequent updates invalidate the cache.
+	 * @param resultCache the cache
+	 * @return the result
+	 */
+	public Try<SQLTemplateDriver, SQLTemplateException> resultCache(SQLResultCache resultCache) {
+		return tryCallable(() -> applyResultCache(resultCache));
+	}
+
+	/**
+	 * Attempts to enable the rewrite of batched inserts and returns the result as Try instance.
+	 * Subsequent batches of statements INSERT ... VALUES (...) are executed as statements with many VALUES tuples,
+	 * each one inserting up to chunkSize rows. The chunk size is reduced when the parameters of a chunk would exceed
+	 * {@link SQLTemplate#DEFAULT_INSERT_PARAMETER_LIMIT}.
+	 * @param chunkSize the max number of rows inserted by each statement
+	 * @return the result
+	 */
+	public Try<SQLTemplateDriver, SQLTemplateException> rewriteInserts(int chunkSize) {
+		return rewriteInserts(chunkSize, SQLTemplate.DEFAULT_INSERT_PARAMETER_LIMIT);
+	}
+
+	/**
+	 * Attempts to enable the rewrite of batched inserts and returns the result as Try instance.
+	 * Subsequent batches of statements INSERT ... VALUES (...) are executed as statements with many VALUES tuples,
+	 * each one inserting up to chunkSize rows. The chunk size is reduced when the parameters of a chunk would exceed
+	 * given limit, and rows with more parameters than the limit are inserted one at a time.
+	 * @param chunkSize the max number of rows inserted by each statement
+	 * @param parameterLimit the max number of parameters of each statement
+	 * @return the result
+	 */
+	public Try<SQLTemplateDriver, SQLTemplateException> rewriteInserts(int chunkSize, int parameterLimit) {
+		return tryCallable(() -> applyRewriteInserts(chunkSize, parameterLimit));
+	}
+
+	/**
+	 * Attempts to load the rows of given source into the current statement and returns the result as Try instance.
+	 * The result contains one row with the number of rows, the elapsed time in nanoseconds and the rows per second.
+	 * @param loader the loader
+	 * @param source the source
+	 * @return the result
+	 */
+	public Try<SQLTemplateDriver, SQLTemplateException> load(SQLBulkLoader loader, SQLBulkLoader.Source source) {
+		return tryCallable(() -> applyLoad(loader, source));
 	}
 
 	/**
@@ -79,7 +188,17 @@ public class SQLTemplateDriver {
 	 * @return the result
 	 */
 	public Try<SQLTemplateDriver, SQLTemplateException> prepareStatement(String sql) {
-		return tryCallable(() -> create(conn, new SQLStatement(conn.prepareStatement(sql)), null));
+		return prepareStatement(sql, SQLStatementOptions.defaults());
+	}
+
+	/**
+	 * Attempts to create a prepared statement with given options and returns the result as Try instance.
+	 * @param sql the SQL statement
+	 * @param options the statement options
+	 * @return the result
+	 */
+	public Try<SQLTemplateDriver, SQLTemplateException> prepareStatement(String sql, SQLStatementOptions options) {
+		return tryCallable(() -> applyPrepareStatement(sql, options));
 	}
 
 	/**
@@ -88,7 +207,7 @@ public class SQLTemplateDriver {
 	 * @return the result
 	 */
 	public Try<SQLTemplateDriver, SQLTemplateException> executeUpdate(Object[] params) {
-		return tryCallable(() -> sqlStatement.executeUpdate(params).map(res -> create(conn, sqlStatement, SQLResult.of(res))).orThrow());
+		return tryCallable(() -> applyUpdate(params));
 	}
 
 	/**
@@ -97,7 +216,31 @@ public class SQLTemplateDriver {
 	 * @return the result
 	 */
 	public Try<SQLTemplateDriver, SQLTemplateException> executeQuery(Object[] params) {
-		return tryCallable(() -> sqlStatement.executeQuery(params).map(res -> create(conn, sqlStatement, SQLResult.of(res))).orThrow());
+		return tryCallable(() -> applyQuery(params));
+	}
+
+	/**
+	 * Attempts to execute the current update statement as batch with given rows of parameters and returns the result as Try instance.
+	 * Rows are sent to the database every batchSize rows and the result contains the update count of each row.
+	 * @param params the rows of parameters
+	 * @param batchSize the number of rows for each batch
+	 * @return the result
+	 */
+	public Try<SQLTemplateDriver, SQLTemplateException> executeBatch(Iterable<Object[]> params, int batchSize) {
+		return tryCallable(() -> applyBatch(params, batchSize));
+	}
+
+	/**
+	 * Attempts to execute the current update statement as batch with given objects and returns the result as Try instance.
+	 * The parameters of each row are set from the object by given binder, and rows are sent to the database every batchSize rows.
+	 * @param items the objects
+	 * @param binder the binder
+	 * @param batchSize the number of rows for each batch
+	 * @param <T> the type of object
+	 * @return the result
+	 */
+	public <T> Try<SQLTemplateDriver, SQLTemplateException> executeBatch(Iterable<T> items, SQLParameterBinder<? super T> binder, int batchSize) {
+		return tryCallable(() -> applyBatch(items, binder, batchSize));
 	}
 
 	/**
@@ -121,32 +264,153 @@ public class SQLTemplateDriver {
 	 * @return the result
 	 */
 	public Try<SQLTemplateDriver, SQLTemplateException> fetch() {
-		return tryCallable(() -> create(conn, sqlStatement, SQLResult.of(values())));
+		return tryCallable(this::applyFetch);
+	}
+
+	/**
+	 * Attempts to pass each row of current result to given callback and returns the number of rows as Try instance.
+	 * The row passed to the callback is a view which is reused for all rows, and the values can be copied
+	 * with {@link SQLRow#toArray()} when they must be retained.
+	 * @param callback the callback
+	 * @return the result
+	 */
+	public Try<Long, SQLTemplateException> forEachRow(SQLRowCallback callback) {
+		Objects.requireNonNull(callback);
+		return tryCallable(() -> sqlResult != null ? sqlResult.forEachRow(callback) : 0L);
+	}
+
+	/**
+	 * Attempts to map each row of current result using given mapper and returns the list of objects as Try instance.
+	 * @param mapper the mapper
+	 * @param <T> the type of object
+	 * @return the result
+	 */
+	public <T> Try<List<T>, SQLTemplateException> map(SQLRowMapper<T> mapper) {
+		Objects.requireNonNull(mapper);
+		return tryCallable(() -> doMap(mapper));
+	}
+
+	/**
+	 * Attempts to read current result by column and returns the columnar result as Try instance.
+	 * Columns of numeric types are stored as arrays of primitive values and columns of character types
+	 * are stored as dictionary codes, according to the metadata of the result set.
+	 * @return the result
+	 */
+	public Try<SQLColumnarResult, SQLTemplateException> columns() {
+		return tryCallable(() -> sqlResult != null ? sqlResult.columns() : SQLColumnarResult.empty());
+	}
+
+	/**
+	 * Attempts to copy current result into a buffer outside of the heap and returns the buffer as Try instance.
+	 * Rows are stored in direct memory until the size of the buffer reaches given threshold, then rows are stored
+	 * in a temporary file mapped in memory. The buffer must be closed when it is not used anymore.
+	 * @param threshold the max number of bytes stored in memory
+	 * @return the result
+	 */
+	public Try<SQLResultBuffer, SQLTemplateException> buffer(long threshold) {
+		return tryCallable(() -> doBuffer(SQLResultBuffer.create(threshold)));
 	}
 
 	/**
 	 * Returns the result as list of arrays of objects.
+	 * Errors which occur while the rows are read are thrown as {@link SQLTemplateUncheckedException}.
 	 * @return the list
 	 */
 	public List<Object[]> values() {
 		return stream().collect(Collectors.toList());
 	}
 
+	/**
+	 * Returns the result as lazy stream of arrays of objects. Closing the stream closes the driver.
+	 * Errors which occur while the rows are read are thrown by the stream as {@link SQLTemplateUncheckedException}.
+	 * @return the stream
+	 */
+	public Stream<Object[]> stream() {
+		return Optional.ofNullable(sqlResult).map(s -> s.stream()).orElse(Stream.empty()).onClose(this::close);
+	}
+
+	/**
+	 * Returns the result as publisher of arrays of objects. Rows are read from the result set when the subscriber
+	 * requests them, and the driver is closed when the publication completes or the subscription is cancelled.
+	 * @param executor the executor which publishes the rows
+	 * @return the publisher
+	 */
+	public SQLPublisher publisher(Executor executor) {
+		SQLPublisher.Cursor cursor = Optional.ofNullable(sqlResult).orElseGet(() -> SQLResult.of(Collections.emptyList())).cursor();
+		return new SQLPublisher(cursor, this::close, executor);
+	}
+
+	/**
+	 * Returns the positional arguments which have been provided when the driver was created.
+	 * @return the arguments
+	 */
+	public Object[] arguments() {
+		return bindings.arguments().clone();
+	}
+
+	/**
+	 * Closes all statements and results which are still open, including the ones opened by the drivers
+	 * which have been created from the same connection and derived from this driver. The tables written
+	 * by a transaction which is still open are invalidated in the result cache.
+	 */
+	@Override
+	public void close() {
+		try {
+			resources.close();
+		} finally {
+			settings.writes.flush();
+		}
+	}
+
 	/**
 	 * Creates a new instance from given connection.
 	 * @param conn the connection
 	 * @return new instance
 	 */
 	public static SQLTemplateDriver create(Connection conn) {
-		return new SQLTemplateDriver(conn);
+		return new SQLTemplateDriver(conn, SQLBindings.empty());
+	}
+
+	/**
+	 * Creates a new instance from given connection and arguments.
+	 * @param conn the connection
+	 * @param arguments the arguments
+	 * @return new instance
+	 */
+	public static SQLTemplateDriver create(Connection conn, Object[] arguments) {
+		return new SQLTemplateDriver(conn, SQLBindings.of(arguments.clone()));
+	}
+
+	/**
+	 * Creates a new instance from given connection and bindings.
+	 * @param conn the connection
+	 * @param bindings the bindings
+	 * @return new instance
+	 */
+	public static SQLTemplateDriver create(Connection conn, SQLBindings bindings) {
+		return new SQLTemplateDriver(conn, bindings);
+	}
+
+	/**
+	 * Enables or disables detection of drivers which are garbage collected without being closed.
+	 * Leaks are reported as warnings when new drivers are created and leaked resources are closed.
+	 * @param enabled true if leak detection must be enabled
+	 */
+	public static void setLeakDetection(boolean enabled) {
+		leakDetection = enabled;
 	}
 
 	/**
-	 * Returns default exception mapper function.
+	 * Returns default exception mapper function. Unchecked exceptions thrown by streams are mapped to their cause.
 	 * @return the mapper
 	 */
 	public static Function<Exception, SQLTemplateException> defaultMapper() {
-		return e -> (e instanceof SQLTemplateException) ? (SQLTemplateException)e : new SQLTemplateException("SQL template error", e);
+		return e -> {
+			if (e instanceof SQLTemplateUncheckedException) {
+				return ((SQLTemplateUncheckedException) e).getCause();
+			}
+			return (e instanceof SQLTemplateException) ? (SQLTemplateException)e : new SQLTemplateException("SQL template error", e);
+		};
 	}
 
 	/**
@@ -159,180 +423,1367 @@ public class SQLTemplateDriver {
 		return Try.of(callable).mapper(defaultMapper());
 	}
 
-	private static SQLTemplateDriver create(Connection conn, SQLStatement sqlStatement, SQLResult sqlResult) {
-		return new SQLTemplateDriver(conn, sqlStatement, sqlResult);
+	SQLTemplateDriver applyAutoCommit(boolean autoCommit) throws SQLException {
+		conn.setAutoCommit(autoCommit);
+		return this;
 	}
 
-	private Stream<Object[]> stream() {
-		return Optional.ofNullable(sqlResult).map(s -> s.stream()).orElse(Stream.empty());
+	SQLTemplateDriver applyCommit() throws SQLException {
+		try {
+			doCommit(conn, settings.listener);
+		} finally {
+			settings.writes.flush();
+		}
+		Optional.ofNullable(settings.transaction).ifPresent(SQLTransaction::reset);
+		return this;
 	}
 
-	private Connection doAutoCommit(boolean autoCommit) throws SQLException {
-		conn.setAutoCommit(autoCommit);
-		return conn;
+	SQLTemplateDriver applyRollback() throws SQLException {
+		try {
+			doRollback(conn, null, settings.listener);
+		} finally {
+			settings.writes.flush();
+		}
+		Optional.ofNullable(settings.transaction).ifPresent(SQLTransaction::reset);
+		return this;
 	}
 
-	private Connection doCommit() throws SQLException {
-		conn.commit();
-		return conn;
+	SQLTemplateDriver applyCommitPolicy(SQLCommitPolicy policy) throws SQLException {
+		SQLTransaction transaction = new SQLTransaction(conn, Objects.requireNonNull(policy), settings.writes);
+		conn.setAutoCommit(false);
+		return new SQLTemplateDriver(conn, sqlStatement, sqlResult, settings.withTransaction(transaction), resources, bindings);
 	}
 
-	private Connection doRollback() throws SQLException {
-		conn.rollback();
-		return conn;
+	SQLTemplateDriver applyStatementCache(SQLStatementCache statementCache) {
+		return new SQLTemplateDriver(conn, sqlStatement, sqlResult, settings.withStatementCache(Objects.requireNonNull(statementCache)), resources, bindings);
 	}
 
-	private static class SQLStatement {
-		private final PreparedStatement st;
+	SQLTemplateDriver applyListener(SQLListener listener) {
+		return new SQLTemplateDriver(conn, sqlStatement, sqlResult, settings.withListener(Objects.requireNonNull(listener)), resources, bindings);
+	}
 
-		public SQLStatement(PreparedStatement st) {
-			this.st = Objects.requireNonNull(st);
+	SQLTemplateDriver applySlowLog(SQLSlowLog slowLog) {
+		return new SQLTemplateDriver(conn, sqlStatement, sqlResult, settings.withSlowLog(Objects.requireNonNull(slowLog)), resources, bindings);
+	}
+
+	SQLTemplateDriver applyResultCache(SQLResultCache resultCache) {
+		return new SQLTemplateDriver(conn, sqlStatement, sqlResult, settings.withResultCache(Objects.requireNonNull(resultCache)), resources, bindings);
+	}
+
+	SQLTemplateDriver applyRewriteInserts(int chunkSize, int parameterLimit) {
+		if (chunkSize <= 0) {
+			throw new IllegalArgumentException("Chunk size must be greater than zero");
+		}
+		if (parameterLimit <= 0) {
+			throw new IllegalArgumentException("Parameter limit must be greater than zero");
+		}
+		return new SQLTemplateDriver(conn, sqlStatement, sqlResult, settings.withInsertChunkSize(chunkSize, parameterLimit), resources, bindings);
+	}
+
+	SQLTemplateDriver applyPrepareStatement(String sql, SQLStatementOptions options) throws SQLException {
+		return create(conn, doPrepareStatement(sql, Objects.requireNonNull(options)), null);
+	}
+
+	SQLTemplateDriver applyUpdate(Object[] params) throws Exception {
+		try {
+			return create(conn, sqlStatement, SQLResult.of(closeResult().executeUpdate(params)));
+		} finally {
+			invalidateResults();
 		}
+	}
 
-		@Override
-		protected void finalize() throws Throwable {
-			if (st != null) {
-				st.close();
-			}
-			super.finalize();
+	SQLTemplateDriver applyQuery(Object[] params) throws Exception {
+		if (settings.resultCache != null && !settings.writes.isPending(settings.resultCache)) {
+			return create(conn, sqlStatement, doCachedQuery(settings.resultCache, closeResult(), params));
 		}
+		return create(conn, sqlStatement, SQLResult.of(closeResult().executeQuery(params), resources, sqlStatement.sql, sqlStatement.listener));
+	}
+
+	SQLTemplateDriver applyQueryPages(Object[] params, SQLKeyset keyset) throws Exception {
+		return create(conn, sqlStatement, SQLResult.of(closeResult(), resources, params, Objects.requireNonNull(keyset)));
+	}
 
-		public Try<Integer, SQLTemplateException> executeUpdate(Object[] params) {
-			return SQLTemplateDriver.tryCallable(() -> bindParameters(params).executeUpdate());
+	SQLTemplateDriver applyBatch(Iterable<Object[]> params, int batchSize) throws Exception {
+		try {
+			SQLStatement statement = closeResult();
+			SQLInsertRewrite rewrite = settings.insertChunkSize > 0 ? statement.rewrite() : null;
+			if (rewrite != null) {
+				return create(conn, sqlStatement, SQLResult.of(doRewrittenBatch(statement, rewrite, params)));
+			}
+			return create(conn, sqlStatement, SQLResult.of(statement.executeBatch(params, batchSize)));
+		} finally {
+			invalidateResults();
 		}
+	}
 
-		public Try<ResultSet, SQLTemplateException> executeQuery(Object[] params) {
-			return SQLTemplateDriver.tryCallable(() -> bindParameters(params).executeQuery());
+	<T> SQLTemplateDriver applyBatch(Iterable<T> items, SQLParameterBinder<? super T> binder, int batchSize) throws Exception {
+		try {
+			return create(conn, sqlStatement, SQLResult.of(closeResult().executeBatch(items, binder, batchSize)));
+		} finally {
+			invalidateResults();
 		}
+	}
 
-		private PreparedStatement bindParameters(Object[] params) throws Exception {
-			if (params != null) for (int p = 1; p <= params.length; p++) st.setObject(p, params[p - 1]);
-			return st;
+	SQLTemplateDriver applyLoad(SQLBulkLoader loader, SQLBulkLoader.Source source) throws Exception {
+		try {
+			SQLStatement statement = closeResult();
+			SQLInsertRewrite rewrite = settings.insertChunkSize > 0 ? statement.rewrite() : null;
+			boolean commit = !conn.getAutoCommit();
+			long time = System.nanoTime();
+			long rows = loader.load(source, new SQLBulkLoader.Sink() {
+				@Override
+				public void accept(List<Object[]> batch) throws Exception {
+					if (rewrite != null) {
+						doRewrittenBatch(statement, rewrite, batch);
+					} else {
+						statement.executeBatch(batch, batch.size());
+					}
+				}
+
+				@Override
+				public void commit() throws Exception {
+					if (commit) {
+						applyCommit();
+					}
+				}
+			});
+			long nanos = System.nanoTime() - time;
+			return create(conn, sqlStatement, SQLResult.of(Collections.singletonList(new Object[] { rows, nanos, rows * 1e9 / Math.max(nanos, 1) })));
+		} finally {
+			invalidateResults();
 		}
 	}
 
-	private static abstract class SQLResult {
-		public abstract Stream<Object[]> stream();
+	Object[] bindArguments(Object[] params) throws SQLTemplateException {
+		return SQLParam.bind(params, bindings.arguments());
+	}
 
-		public static SQLResult of(List<Object[]> list) {
-			return new SQLResult.SQLResultList(list);
+	Object[] bindNames(String[] names) throws SQLTemplateException {
+		Object[] values = new Object[names.length];
+		for (int i = 0; i < names.length; i++) {
+			values[i] = bindings.value(names[i]);
 		}
+		return values;
+	}
+
+	SQLTemplateDriver applyFetch() {
+		return create(conn, sqlStatement, doFetch());
+	}
 
-		public static SQLResult of(ResultSet rs) {
-			return new SQLResult.SQLResultQuery(rs);
+	private SQLTemplateDriver create(Connection conn, SQLStatement sqlStatement, SQLResult sqlResult) {
+		return new SQLTemplateDriver(conn, sqlStatement, sqlResult, settings, resources, bindings);
+	}
+
+	private SQLResult doCachedQuery(SQLResultCache cache, SQLStatement statement, Object[] params) throws Exception {
+		List<Object[]> rows = cache.get(statement.sql, params);
+		if (rows != null) {
+			return SQLResult.shared(rows);
 		}
+		long stamp = cache.stamp();
+		SQLResult result = SQLResult.of(statement.executeQuery(params), resources, statement.sql, statement.listener);
+		List<Object[]> list = new ArrayList<>();
+		try {
+			result.forEachRow(row -> list.add(row.toArray()));
+		} finally {
+			result.close();
+		}
+		cache.put(statement.sql, params, statement.tables(), stamp, list);
+		return SQLResult.shared(list);
+	}
 
-		public static SQLResult of(Integer result) {
-			return new SQLResult.SQLResultUpdate(result);
+	private int[] doRewrittenBatch(SQLStatement statement, SQLInsertRewrite rewrite, Iterable<Object[]> params) throws Exception {
+		int chunkSize = rewrite.chunkSize(settings.insertChunkSize, settings.insertParameterLimit);
+		int width = rewrite.parameters();
+		IntStream.Builder counts = IntStream.builder();
+		Object[] values = new Object[chunkSize * width];
+		int rows = 0;
+		for (Object[] row : params) {
+			if (row.length != width) {
+				throw new SQLTemplateException("Expected " + width + " arguments but found " + row.length);
+			}
+			System.arraycopy(row, 0, values, rows * width, width);
+			if (++rows == chunkSize) {
+				doInsertChunk(statement, rewrite, rows, values, counts);
+				rows = 0;
+			}
 		}
+		if (rows > 0) {
+			doInsertChunk(statement, rewrite, rows, Arrays.copyOf(values, rows * width), counts);
+		}
+		return counts.build().toArray();
+	}
 
-		private static class SQLResultList extends SQLResult {
-			private final List<Object[]> list;
+	private void doInsertChunk(SQLStatement statement, SQLInsertRewrite rewrite, int rows, Object[] values, IntStream.Builder counts) throws Exception {
+		SQLStatement chunk = statement.chunks.get(rows);
+		if (chunk == null) {
+			chunk = newStatement(rewrite.sql(rows), statement.options);
+			statement.chunks.put(rows, chunk);
+		}
+		int count = chunk.executeUpdate(values);
+		for (int i = 0; i < rows; i++) {
+			counts.add(count == rows ? 1 : Statement.SUCCESS_NO_INFO);
+		}
+	}
 
-			public SQLResultList(List<Object[]> list) {
-				Objects.requireNonNull(list);
-				this.list = list;
+	private void invalidateResults() {
+		if (settings.resultCache != null && sqlStatement != null) {
+			String[] tables = sqlStatement.tables();
+			if (tables.length > 0) {
+				settings.resultCache.invalidate(tables);
+			} else {
+				settings.resultCache.clear();
 			}
-
-			@Override
-			public Stream<Object[]> stream() {
-				return list.stream();
+			if (isTransactionOpen()) {
+				settings.writes.add(settings.resultCache, tables);
 			}
 		}
+	}
 
-		private static class SQLResultQuery extends SQLResult {
-			private final ResultSet rs;
+	private boolean isTransactionOpen() {
+		try {
+			return !conn.getAutoCommit();
+		} catch (SQLException e) {
+			logger.log(Level.FINE, "Can't read auto commit", e);
+			return true;
+		}
+	}
 
-			public SQLResultQuery(ResultSet rs) {
-				this.rs = Objects.requireNonNull(rs);
-			}
+	private SQLStatement closeResult() {
+		Optional.ofNullable(sqlResult).ifPresent(SQLResult::close);
+		return Objects.requireNonNull(sqlStatement);
+	}
 
-			@Override
-			protected void finalize() throws Throwable {
-				if (rs != null) {
-					rs.close();
-				}
-				super.finalize();
-			}
+	private <T> List<T> doMap(SQLRowMapper<T> mapper) throws Exception {
+		List<T> values = new ArrayList<>();
+		if (sqlResult != null) {
+			sqlResult.forEachRow(row -> values.add(mapper.map(row)));
+		}
+		return values;
+	}
 
-			public Stream<Object[]> stream() {
-				return StreamSupport.stream(new SQLResult.SQLResultQuery.ResultSpliterator(), false);
+	private SQLResultBuffer doBuffer(SQLResultBuffer buffer) throws Exception {
+		try {
+			if (sqlResult != null) {
+				sqlResult.forEachRow(buffer::append);
 			}
+			return buffer;
+		} catch (Exception e) {
+			buffer.close();
+			throw e;
+		}
+	}
 
-			private class ResultSpliterator implements Spliterator<Object[]> {
-				@Override
-				public boolean tryAdvance(Consumer<? super Object[]> consumer) {
-					return Try.of(() -> {
-						if (rs.next()) {
-							ResultSetMetaData metadata = rs.getMetaData();
-							Object[] columns = new Object[metadata.getColumnCount()];
-							bindColumns(rs, columns);
-							consumer.accept(columns);
-							return true;
-						} else {
-							return false;
-						}
-					}).orElse(false);
-				}
+	private SQLResult doFetch() {
+		List<Object[]> values = values();
+		Optional.ofNullable(sqlResult).ifPresent(SQLResult::close);
+		return SQLResult.of(values);
+	}
 
-				private void bindColumns(ResultSet rs, Object[] columns) throws Exception {
-					for (int i = 0; i < columns.length; i++) columns[i] = rs.getObject(i + 1);
-				}
+	private SQLStatement doPrepareStatement(String sql, SQLStatementOptions options) throws SQLException {
+		Optional.ofNullable(sqlResult).ifPresent(SQLResult::close);
+		Optional.ofNullable(sqlStatement).ifPresent(SQLStatement::close);
+		return newStatement(sql, options);
+	}
 
-				@Override
-				public Spliterator<Object[]> trySplit() {
-					return null;
-				}
+	private SQLStatement newStatement(String sql, SQLStatementOptions options) throws SQLException {
+		SQLListener listener = settings.listener;
+		SQLStatementCache statementCache = settings.statementCache;
+		if (statementCache != null) {
+			PreparedStatement st = listener == null ? statementCache.acquire(conn, sql, options) :
+				measure(listener, SQLListener.Phase.PREPARE, sql, () -> statementCache.acquire(conn, sql, options));
+			return new SQLStatement(st, () -> statementCache.release(st), resources, sql, options, listener, conn, settings.slowLog, settings.transaction);
+		}
+		PreparedStatement st = listener == null ? options.prepareStatement(conn, sql) :
+			measure(listener, SQLListener.Phase.PREPARE, sql, () -> options.prepareStatement(conn, sql));
+		return new SQLStatement(st, st, resources, sql, options, listener, conn, settings.slowLog, settings.transaction);
+	}
 
-				@Override
-				public long estimateSize() {
-					return Long.MAX_VALUE;
-				}
+	private static void doCommit(Connection conn, SQLListener listener) throws SQLException {
+		if (listener == null) {
+			conn.commit();
+		} else {
+			measure(listener, SQLListener.Phase.COMMIT, null, () -> { conn.commit(); return conn; });
+		}
+	}
 
-				@Override
-				public int characteristics() {
-					return Spliterator.IMMUTABLE | Spliterator.NONNULL;
-				}
+	private static void doRollback(Connection conn, Savepoint savepoint, SQLListener listener) throws SQLException {
+		SQLCallable<Connection> rollback = () -> {
+			if (savepoint != null) {
+				conn.rollback(savepoint);
+			} else {
+				conn.rollback();
 			}
+			return conn;
+		};
+		if (listener == null) {
+			rollback.call();
+		} else {
+			measure(listener, SQLListener.Phase.ROLLBACK, null, rollback);
 		}
+	}
 
-		private static class SQLResultUpdate extends SQLResult {
-			private final long value;
-			private boolean consumed;
+	private static <R> R measure(SQLListener listener, SQLListener.Phase phase, String sql, SQLCallable<R> callable) throws SQLException {
+		long time = System.nanoTime();
+		try {
+			R result = callable.call();
+			listener.onOperation(phase, sql, System.nanoTime() - time, -1, null);
+			return result;
+		} catch (SQLException e) {
+			listener.onOperation(phase, sql, System.nanoTime() - time, -1, e);
+			throw e;
+		}
+	}
 
-			public SQLResultUpdate(long value) {
-				this.value = value;
-			}
+	@FunctionalInterface
+	private interface SQLCallable<R> {
+		R call() throws SQLException;
+	}
 
-			public Stream<Object[]> stream() {
-				return StreamSupport.stream(new SQLResult.SQLResultUpdate.ResultSpliterator(), false);
-			}
+	private static class SQLSettings {
+		private final SQLStatementCache statementCache;
+		private final SQLListener listener;
+		private final SQLSlowLog slowLog;
+		private final SQLResultCache resultCache;
+		private final int insertChunkSize;
+		private final int insertParameterLimit;
+		private final SQLTransaction transaction;
+		private final SQLPendingWrites writes;
 
-			private class ResultSpliterator implements Spliterator<Object[]> {
-				@Override
-				public boolean tryAdvance(Consumer<? super Object[]> consumer) {
-					if (!consumed) {
-						consumer.accept(new Object[] { value });
-						consumed = true;
-						return true;
-					}
-					return false;
-				}
+		private SQLSettings(SQLStatementCache statementCache, SQLListener listener, SQLSlowLog slowLog, SQLResultCache resultCache, int insertChunkSize, int insertParameterLimit, SQLTransaction transaction, SQLPendingWrites writes) {
+			this.statementCache = statementCache;
+			this.listener = listener;
+			this.slowLog = slowLog;
+			this.resultCache = resultCache;
+			this.insertChunkSize = insertChunkSize;
+			this.insertParameterLimit = insertParameterLimit;
+			this.transaction = transaction;
+			this.writes = writes;
+		}
 
-				@Override
-				public Spliterator<Object[]> trySplit() {
-					return null;
-				}
+		public static SQLSettings defaults() {
+			return new SQLSettings(null, null, null, null, 0, 0, null, new SQLPendingWrites());
+		}
 
-				@Override
-				public long estimateSize() {
-					return 1;
-				}
+		public SQLSettings withStatementCache(SQLStatementCache statementCache) {
+			return new SQLSettings(statementCache, listener, slowLog, resultCache, insertChunkSize, insertParameterLimit, transaction, writes);
+		}
 
-				@Override
-				public int characteristics() {
-					return Spliterator.IMMUTABLE | Spliterator.SIZED | Spliterator.NONNULL;
-				}
+		public SQLSettings withListener(SQLListener listener) {
+			return new SQLSettings(statementCache, listener, slowLog, resultCache, insertChunkSize, insertParameterLimit, transaction, writes);
+		}
+
+		public SQLSettings withSlowLog(SQLSlowLog slowLog) {
+			return new SQLSettings(statementCache, listener, slowLog, resultCache, insertChunkSize, insertParameterLimit, transaction, writes);
+		}
+
+		public SQLSettings withResultCache(SQLResultCache resultCache) {
+			return new SQLSettings(statementCache, listener, slowLog, resultCache, insertChunkSize, insertParameterLimit, transaction, writes);
+		}
+
+		public SQLSettings withInsertChunkSize(int insertChunkSize, int insertParameterLimit) {
+			return new SQLSettings(statementCache, listener, slowLog, resultCache, insertChunkSize, insertParameterLimit, transaction, writes);
+		}
+
+		public SQLSettings withTransaction(SQLTransaction transaction) {
+			return new SQLSettings(statementCache, listener, slowLog, resultCache, insertChunkSize, insertParameterLimit, transaction, writes);
+		}
+	}
+
+	private static class SQLPendingWrites {
+		private final Map<SQLResultCache, Set<String>> tables = new IdentityHashMap<>();
+		private final Set<SQLResultCache> cleared = Collections.newSetFromMap(new IdentityHashMap<>());
+
+		public boolean isPending(SQLResultCache cache) {
+			return tables.containsKey(cache) || cleared.contains(cache);
+		}
+
+		public void add(SQLResultCache cache, String[] written) {
+			if (written.length > 0) {
+				tables.computeIfAbsent(cache, key -> new HashSet<>()).addAll(Arrays.asList(written));
+			} else {
+				cleared.add(cache);
+			}
+		}
+
+		public void flush() {
+			tables.forEach((cache, written) -> cache.invalidate(written.toArray(new String[0])));
+			cleared.forEach(SQLResultCache::clear);
+			tables.clear();
+			cleared.clear();
+		}
+	}
+
+	private static class SQLTransaction {
+		private final Connection conn;
+		private final SQLCommitPolicy policy;
+		private final SQLPendingWrites writes;
+		private Savepoint savepoint;
+		private long savepointUpdates;
+		private long executions;
+		private long updates;
+		private long time = System.nanoTime();
+
+		public SQLTransaction(Connection conn, SQLCommitPolicy policy, SQLPendingWrites writes) {
+			this.conn = Objects.requireNonNull(conn);
+			this.policy = Objects.requireNonNull(policy);
+			this.writes = Objects.requireNonNull(writes);
+		}
+
+		public void begin() throws SQLException {
+			if (policy.isSavepointDue(executions)) {
+				release();
+				savepoint = conn.setSavepoint();
+				savepointUpdates = updates;
+			}
+			executions += 1;
+		}
+
+		public void complete(long count, SQLListener listener) throws SQLException {
+			updates += Math.max(count, 1);
+			if (policy.isDue(updates, System.nanoTime() - time)) {
+				savepoint = null;
+				try {
+					doCommit(conn, listener);
+				} finally {
+					writes.flush();
+				}
+				reset();
+			}
+		}
+
+		public void fail(Exception error, SQLListener listener) {
+			Savepoint last = savepoint;
+			boolean open = false;
+			try {
+				doRollback(conn, last, listener);
+				if (last != null && policy.commitOnFailure()) {
+					doCommit(conn, listener);
+				} else {
+					open = last != null;
+				}
+			} catch (SQLException e) {
+				error.addSuppressed(e);
+			} finally {
+				if (open) {
+					updates = savepointUpdates;
+				} else {
+					reset();
+					writes.flush();
+				}
+			}
+		}
+
+		public void reset() {
+			savepoint = null;
+			savepointUpdates = 0;
+			executions = 0;
+			updates = 0;
+			time = System.nanoTime();
+		}
+
+		private void release() {
+			if (savepoint != null) {
+				Savepoint last = savepoint;
+				savepoint = null;
+				try {
+					conn.releaseSavepoint(last);
+				} catch (SQLException e) {
+					logger.log(Level.FINE, "Can't release savepoint", e);
+				}
+			}
+		}
+	}
+
+	private static class SQLStatement {
+		private final PreparedStatement st;
+		private final AutoCloseable handle;
+		private final SQLResources resources;
+		private final String sql;
+		private final SQLListener listener;
+		private final SQLTransaction transaction;
+		private SQLBinder[] binders = new SQLBinder[0];
+		private final SQLStatementOptions options;
+		private final Map<Integer, SQLStatement> chunks = new HashMap<>();
+		private Object[] params;
+		private String[] tables;
+		private Optional<SQLInsertRewrite> rewrite;
+
+		public SQLStatement(PreparedStatement st, AutoCloseable handle, SQLResources resources, String sql, SQLStatementOptions options, SQLListener listener, Connection conn, SQLSlowLog slowLog, SQLTransaction transaction) {
+			this.st = Objects.requireNonNull(st);
+			this.handle = Objects.requireNonNull(handle);
+			this.resources = Objects.requireNonNull(resources);
+			this.sql = sql;
+			this.options = options;
+			this.listener = slowLog != null ? slowLog.listener(conn, () -> params, listener) : listener;
+			this.transaction = transaction;
+			resources.open(handle);
+		}
+
+		public void close() {
+			chunks.values().forEach(SQLStatement::close);
+			chunks.clear();
+			resources.close(handle);
+		}
+
+		public SQLInsertRewrite rewrite() {
+			if (rewrite == null) {
+				rewrite = Optional.ofNullable(SQLInsertRewrite.of(sql));
+			}
+			return rewrite.orElse(null);
+		}
+
+		public String[] tables() {
+			if (tables == null) {
+				tables = SQLResultCache.tables(sql);
+			}
+			return tables;
+		}
+
+		public int executeUpdate(Object[] params) throws Exception {
+			if (transaction == null) {
+				return doExecuteUpdate(params);
+			}
+			transaction.begin();
+			int count;
+			try {
+				count = doExecuteUpdate(params);
+			} catch (Exception e) {
+				transaction.fail(e, listener);
+				throw e;
+			}
+			transaction.complete(count, listener);
+			return count;
+		}
+
+		private int doExecuteUpdate(Object[] params) throws Exception {
+			if (listener == null) {
+				return bindParameters(params).executeUpdate();
+			}
+			measure(listener, SQLListener.Phase.BIND, sql, () -> bindParameters(params));
+			long time = System.nanoTime();
+			try {
+				int count = st.executeUpdate();
+				listener.onOperation(SQLListener.Phase.EXECUTE, sql, System.nanoTime() - time, count, null);
+				return count;
+			} catch (SQLException e) {
+				listener.onOperation(SQLListener.Phase.EXECUTE, sql, System.nanoTime() - time, -1, e);
+				throw e;
+			}
+		}
+
+		public ResultSet executeQuery(Object[] params) throws Exception {
+			if (listener == null) {
+				return bindParameters(params).executeQuery();
+			}
+			measure(listener, SQLListener.Phase.BIND, sql, () -> bindParameters(params));
+			return measure(listener, SQLListener.Phase.EXECUTE, sql, st::executeQuery);
+		}
+
+		public int[] executeBatch(Iterable<Object[]> params, int batchSize) throws Exception {
+			return executeBatch(params, (row, parameters) -> bindParameters(row), batchSize);
+		}
+
+		public <T> int[] executeBatch(Iterable<T> items, SQLParameterBinder<? super T> binder, int batchSize) throws Exception {
+			IntStream.Builder counts = IntStream.builder();
+			StatementParameters parameters = new StatementParameters();
+			this.params = null;
+			long bindNanos = 0;
+			long bound = 0;
+			int pending = 0;
+			for (T item : items) {
+				long time = listener != null ? System.nanoTime() : 0;
+				binder.bind(item, parameters);
+				st.addBatch();
+				if (listener != null) {
+					bindNanos += System.nanoTime() - time;
+					bound += 1;
+				}
+				if (++pending == batchSize) {
+					flushBatch(counts);
+					pending = 0;
+				}
+			}
+			if (pending > 0) {
+				flushBatch(counts);
+			}
+			if (listener != null) {
+				listener.onOperation(SQLListener.Phase.BIND, sql, bindNanos, bound, null);
+			}
+			return counts.build().toArray();
+		}
+
+		private void flushBatch(IntStream.Builder counts) throws SQLException {
+			if (transaction != null) {
+				transaction.begin();
+			}
+			int[] result;
+			try {
+				result = executeBatch();
+			} catch (SQLException e) {
+				if (transaction != null) {
+					transaction.fail(e, listener);
+				}
+				throw e;
+			}
+			Arrays.stream(result).forEach(counts::add);
+			if (transaction != null) {
+				transaction.complete(Arrays.stream(result).mapToLong(count -> Math.max(count, 1)).sum(), listener);
+			}
+		}
+
+		private int[] executeBatch() throws SQLException {
+			if (listener == null) {
+				return st.executeBatch();
+			}
+			long time = System.nanoTime();
+			try {
+				int[] result = st.executeBatch();
+				listener.onOperation(SQLListener.Phase.EXECUTE, sql, System.nanoTime() - time, Arrays.stream(result).filter(count -> count > 0).asLongStream().sum(), null);
+				return result;
+			} catch (SQLException e) {
+				listener.onOperation(SQLListener.Phase.EXECUTE, sql, System.nanoTime() - time, -1, e);
+				throw e;
+			}
+		}
+
+		private PreparedStatement bindParameters(Object[] params) throws SQLException {
+			this.params = params;
+			if (params != null) for (int p = 1; p <= params.length; p++) bindParameter(p, params[p - 1]);
+			return st;
+		}
+
+		private void bindParameter(int index, Object value) throws SQLException {
+			if (binders.length < index) {
+				binders = Arrays.copyOf(binders, Math.max(index, binders.length * 2));
+			}
+			SQLBinder binder = binders[index - 1];
+			if (value == null) {
+				if (binder != null) {
+					binder.bindNull(st, index);
+				} else {
+					st.setObject(index, null);
+				}
+				return;
+			}
+			if (binder == null || binder.type() != value.getClass()) {
+				binder = SQLBinder.of(value.getClass());
+				binders[index - 1] = binder;
+			}
+			binder.bind(st, index, value);
+		}
+
+		private class StatementParameters implements SQLParameters {
+			@Override
+			public void setNull(int index, int sqlType) throws SQLException {
+				st.setNull(index, sqlType);
+			}
+
+			@Override
+			public void setInt(int index, int value) throws SQLException {
+				st.setInt(index, value);
+			}
+
+			@Override
+			public void setLong(int index, long value) throws SQLException {
+				st.setLong(index, value);
+			}
+
+			@Override
+			public void setDouble(int index, double value) throws SQLException {
+				st.setDouble(index, value);
+			}
+
+			@Override
+			public void setString(int index, String value) throws SQLException {
+				st.setString(index, value);
+			}
+
+			@Override
+			public void setObject(int index, Object value) throws SQLException {
+				bindParameter(index, value);
+			}
+		}
+	}
+
+	private static abstract class SQLResult {
+		public abstract Stream<Object[]> stream();
+
+		public long forEachRow(SQLRowCallback callback) throws Exception {
+			ArrayRow row = new ArrayRow();
+			long count = 0;
+			for (Iterator<Object[]> iterator = stream().iterator(); iterator.hasNext(); count++) {
+				row.values = iterator.next();
+				callback.accept(row);
+			}
+			return count;
+		}
+
+		public SQLColumnarResult columns() throws Exception {
+			SQLColumnarResult.Builder[] builder = new SQLColumnarResult.Builder[1];
+			forEachRow(row -> {
+				if (builder[0] == null) {
+					builder[0] = SQLColumnarResult.builder(row.columnCount());
+				}
+				builder[0].append(row);
+			});
+			return builder[0] != null ? builder[0].build() : SQLColumnarResult.empty();
+		}
+
+		public SQLPublisher.Cursor cursor() {
+			Iterator<Object[]> iterator = stream().iterator();
+			return new SQLPublisher.Cursor() {
+				@Override
+				public Object[] next() {
+					return iterator.hasNext() ? iterator.next() : null;
+				}
+
+				@Override
+				public void fetchSize(int size) {
+				}
+			};
+		}
+
+		public void close() {
+		}
+
+		public static SQLResult of(List<Object[]> list) {
+			return new SQLResult.SQLResultList(list);
+		}
+
+		public static SQLResult shared(List<Object[]> list) {
+			return new SQLResult.SQLResultShared(list);
+		}
+
+		public static SQLResult of(ResultSet rs, SQLResources resources, String sql, SQLListener listener) {
+			return new SQLResult.SQLResultQuery(rs, resources, sql, listener);
+		}
+
+		public static SQLResult of(Integer result) {
+			return new SQLResult.SQLResultUpdate(result);
+		}
+
+		public static SQLResult of(int[] counts) {
+			return new SQLResult.SQLResultBatch(counts);
+		}
+
+		public static SQLResult of(SQLStatement statement, SQLResources resources, Object[] params, SQLKeyset keyset) throws Exception {
+			return new SQLResult.SQLResultPages(statement, resources, params, keyset);
+		}
+
+		private static class SQLResultList extends SQLResult {
+			private final List<Object[]> list;
+
+			public SQLResultList(List<Object[]> list) {
+				Objects.requireNonNull(list);
+				this.list = list;
+			}
+
+			@Override
+			public Stream<Object[]> stream() {
+				return list.stream();
+			}
+		}
+
+		private static class SQLResultShared extends SQLResult {
+			private final List<Object[]> list;
+
+			public SQLResultShared(List<Object[]> list) {
+				Objects.requireNonNull(list);
+				this.list = list;
+			}
+
+			@Override
+			public Stream<Object[]> stream() {
+				return list.stream().map(Object[]::clone);
+			}
+
+			@Override
+			public long forEachRow(SQLRowCallback callback) throws Exception {
+				ArrayRow row = new ArrayRow();
+				for (Object[] values : list) {
+					row.values = values;
+					callback.accept(row);
+				}
+				return list.size();
+			}
+		}
+
+		private static class SQLResultQuery extends SQLResult {
+			private final ResultSet rs;
+			private final SQLResources resources;
+			private final FetchReport report;
+
+			public SQLResultQuery(ResultSet rs, SQLResources resources, String sql, SQLListener listener) {
+				this.rs = Objects.requireNonNull(rs);
+				this.resources = Objects.requireNonNull(resources);
+				this.report = listener != null ? new FetchReport(sql, listener) : null;
+				if (report != null) {
+					resources.attach(report);
+				}
+				resources.open(rs);
+			}
+
+			@Override
+			public void close() {
+				resources.close(rs);
+				if (report != null) {
+					resources.close(report);
+				}
+			}
+
+			private boolean next() throws SQLException {
+				if (report == null) {
+					return rs.next();
+				}
+				long time = System.nanoTime();
+				try {
+					boolean next = rs.next();
+					if (next) {
+						report.rows += 1;
+					}
+					return next;
+				} catch (SQLException e) {
+					report.error = e;
+					throw e;
+				} finally {
+					report.nanos += System.nanoTime() - time;
+				}
+			}
+
+			public Stream<Object[]> stream() {
+				return StreamSupport.stream(new SQLResult.SQLResultQuery.ResultSpliterator(), false);
+			}
+
+			@Override
+			public long forEachRow(SQLRowCallback callback) throws Exception {
+				ResultSetRow row = new ResultSetRow(rs);
+				long count = 0;
+				for (; next(); count++) {
+					callback.accept(row);
+				}
+				return count;
+			}
+
+			@Override
+			public SQLPublisher.Cursor cursor() {
+				ResultSetRow row = new ResultSetRow(rs);
+				return new SQLPublisher.Cursor() {
+					@Override
+					public Object[] next() throws SQLException {
+						return SQLResultQuery.this.next() ? row.toArray() : null;
+					}
+
+					@Override
+					public void fetchSize(int size) throws SQLException {
+						rs.setFetchSize(size);
+					}
+				};
+			}
+
+			@Override
+			public SQLColumnarResult columns() throws Exception {
+				SQLColumnarResult.Builder builder = SQLColumnarResult.builder(rs.getMetaData());
+				forEachRow(builder::append);
+				return builder.build();
+			}
+
+			private class ResultSpliterator implements Spliterator<Object[]> {
+				private final ResultSetRow row = new ResultSetRow(rs);
+
+				@Override
+				public boolean tryAdvance(Consumer<? super Object[]> consumer) {
+					Object[] columns;
+					try {
+						if (!next()) {
+							return false;
+						}
+						columns = row.toArray();
+					} catch (SQLException e) {
+						throw new SQLTemplateUncheckedException(defaultMapper().apply(e));
+					}
+					consumer.accept(columns);
+					return true;
+				}
+
+				@Override
+				public Spliterator<Object[]> trySplit() {
+					return null;
+				}
+
+				@Override
+				public long estimateSize() {
+					return Long.MAX_VALUE;
+				}
+
+				@Override
+				public int characteristics() {
+					return Spliterator.IMMUTABLE | Spliterator.NONNULL;
+				}
+			}
+		}
+
+		private static class ResultSetRow implements SQLRow {
+			private final ResultSet rs;
+			private int columnCount = -1;
+
+			public ResultSetRow(ResultSet rs) {
+				this.rs = rs;
+			}
+
+			@Override
+			public int columnCount() throws SQLException {
+				if (columnCount == -1) {
+					columnCount = rs.getMetaData().getColumnCount();
+				}
+				return columnCount;
+			}
+
+			@Override
+			public Object getObject(int column) throws SQLException {
+				return rs.getObject(column);
+			}
+
+			@Override
+			public String getString(int column) throws SQLException {
+				return rs.getString(column);
+			}
+
+			@Override
+			public int getInt(int column) throws SQLException {
+				return rs.getInt(column);
+			}
+
+			@Override
+			public long getLong(int column) throws SQLException {
+				return rs.getLong(column);
+			}
+
+			@Override
+			public double getDouble(int column) throws SQLException {
+				return rs.getDouble(column);
+			}
+
+			@Override
+			public boolean wasNull() throws SQLException {
+				return rs.wasNull();
+			}
+
+			@Override
+			public Object[] toArray() throws SQLException {
+				Object[] columns = new Object[columnCount()];
+				for (int i = 0; i < columns.length; i++) columns[i] = rs.getObject(i + 1);
+				return columns;
+			}
+		}
+
+		private static class ArrayRow implements SQLRow {
+			private Object[] values;
+			private boolean wasNull;
+
+			@Override
+			public int columnCount() {
+				return values.length;
+			}
+
+			@Override
+			public Object getObject(int column) {
+				Object value = values[column - 1];
+				wasNull = value == null;
+				return value;
+			}
+
+			@Override
+			public String getString(int column) {
+				Object value = getObject(column);
+				return value != null ? value.toString() : null;
+			}
+
+			@Override
+			public int getInt(int column) throws SQLException {
+				Object value = getObject(column);
+				return value != null ? toNumber(value, column).intValue() : 0;
+			}
+
+			@Override
+			public long getLong(int column) throws SQLException {
+				Object value = getObject(column);
+				return value != null ? toNumber(value, column).longValue() : 0L;
+			}
+
+			@Override
+			public double getDouble(int column) throws SQLException {
+				Object value = getObject(column);
+				return value != null ? toNumber(value, column).doubleValue() : 0.0;
+			}
+
+			private static Number toNumber(Object value, int column) throws SQLException {
+				if (value instanceof Number) {
+					return (Number) value;
+				}
+				if (value instanceof Boolean) {
+					return (Boolean) value ? 1 : 0;
+				}
+				if (value instanceof CharSequence || value instanceof Character) {
+					String text = value.toString().trim();
+					try {
+						return new BigDecimal(text);
+					} catch (NumberFormatException e) {
+						try {
+							return Double.valueOf(text);
+						} catch (NumberFormatException x) {
+							throw new SQLException("Can't convert value of column " + column + " to number: " + text, "22018", x);
+						}
+					}
+				}
+				throw new SQLException("Can't convert value of column " + column + " of type " + value.getClass().getName() + " to number", "22018");
+			}
+
+			@Override
+			public boolean wasNull() {
+				return wasNull;
+			}
+
+			@Override
+			public Object[] toArray() {
+				return values.clone();
+			}
+		}
+
+		private static class FetchReport implements AutoCloseable {
+			private final String sql;
+			private final SQLListener listener;
+			private SQLException error;
+			private long nanos;
+			private long rows;
+
+			public FetchReport(String sql, SQLListener listener) {
+				this.sql = sql;
+				this.listener = listener;
+			}
+
+			@Override
+			public void close() {
+				listener.onOperation(SQLListener.Phase.FETCH, sql, nanos, rows, error);
+			}
+		}
+
+		private static class SQLResultPages extends SQLResult {
+			private final SQLResources resources;
+			private final Pager pager;
+
+			public SQLResultPages(SQLStatement statement, SQLResources resources, Object[] params, SQLKeyset keyset) throws Exception {
+				this.resources = Objects.requireNonNull(resources);
+				this.pager = new Pager(statement, params, keyset);
+				resources.attach(pager);
+				try {
+					pager.start();
+				} catch (Exception e) {
+					resources.close(pager);
+					throw e;
+				}
+			}
+
+			@Override
+			public void close() {
+				resources.close(pager);
+			}
+
+			@Override
+			public Stream<Object[]> stream() {
+				return StreamSupport.stream(new SQLResult.SQLResultPages.ResultSpliterator(), false);
+			}
+
+			private class ResultSpliterator implements Spliterator<Object[]> {
+				@Override
+				public boolean tryAdvance(Consumer<? super Object[]> consumer) {
+					Object[] columns;
+					try {
+						columns = pager.next();
+					} catch (Exception e) {
+						throw new SQLTemplateUncheckedException(defaultMapper().apply(e));
+					}
+					if (columns == null) {
+						return false;
+					}
+					consumer.accept(columns);
+					return true;
+				}
+
+				@Override
+				public Spliterator<Object[]> trySplit() {
+					return null;
+				}
+
+				@Override
+				public long estimateSize() {
+					return Long.MAX_VALUE;
+				}
+
+				@Override
+				public int characteristics() {
+					return Spliterator.IMMUTABLE | Spliterator.NONNULL;
+				}
+			}
+
+			private static class Pager implements AutoCloseable {
+				private final SQLStatement statement;
+				private final Object[] params;
+				private final SQLKeyset keyset;
+				private final Executor executor;
+				private final int maxRows;
+				private CompletableFuture<List<Object[]>> prefetch;
+				private List<Object[]> page = Collections.emptyList();
+				private int index;
+				private boolean last;
+
+				public Pager(SQLStatement statement, Object[] params, SQLKeyset keyset) throws SQLException {
+					this.statement = Objects.requireNonNull(statement);
+					this.params = params != null ? params.clone() : new Object[0];
+					this.keyset = keyset;
+					this.executor = keyset.executor();
+					this.maxRows = statement.st.getMaxRows();
+				}
+
+				public void start() throws Exception {
+					statement.st.setMaxRows(keyset.pageSize());
+					nextPage(read(keyset.start()));
+				}
+
+				public Object[] next() throws Exception {
+					while (index == page.size()) {
+						if (last) {
+							return null;
+						}
+						if (prefetch != null) {
+							CompletableFuture<List<Object[]>> future = prefetch;
+							prefetch = null;
+							nextPage(await(future));
+						} else {
+							nextPage(read(keyset.key(page.get(page.size() - 1))));
+						}
+					}
+					return page.get(index++);
+				}
+
+				@Override
+				public void close() throws SQLException {
+					last = true;
+					page = Collections.emptyList();
+					if (prefetch != null) {
+						prefetch.handle((rows, error) -> rows).join();
+						prefetch = null;
+					}
+					statement.st.setMaxRows(maxRows);
+				}
+
+				private void nextPage(List<Object[]> rows) {
+					page = rows;
+					index = 0;
+					last = rows.size() < keyset.pageSize();
+					if (!last && executor != null) {
+						Object[] key = keyset.key(rows.get(rows.size() - 1));
+						prefetch = CompletableFuture.supplyAsync(() -> {
+							try {
+								return read(key);
+							} catch (Exception e) {
+								throw new CompletionException(defaultMapper().apply(e));
+							}
+						}, executor);
+					}
+				}
+
+				private List<Object[]> read(Object[] key) throws Exception {
+					Object[] values = Arrays.copyOf(params, params.length + key.length);
+					System.arraycopy(key, 0, values, params.length, key.length);
+					SQLListener listener = statement.listener;
+					ResultSet result = statement.executeQuery(values);
+					try (FetchReport report = listener != null ? new FetchReport(statement.sql, listener) : null; ResultSet rs = result) {
+						ResultSetRow row = new ResultSetRow(rs);
+						List<Object[]> rows = new ArrayList<>();
+						long time = System.nanoTime();
+						try {
+							while (rs.next()) {
+								rows.add(row.toArray());
+							}
+						} catch (SQLException e) {
+							if (report != null) {
+								report.error = e;
+							}
+							throw e;
+						} finally {
+							if (report != null) {
+								report.nanos = System.nanoTime() - time;
+								report.rows = rows.size();
+							}
+						}
+						return rows;
+					}
+				}
+
+				private static List<Object[]> await(CompletableFuture<List<Object[]>> future) throws Exception {
+					try {
+						return future.join();
+					} catch (CompletionException e) {
+						throw (e.getCause() instanceof Exception) ? (Exception) e.getCause() : e;
+					}
+				}
+			}
+		}
+
+		private static class SQLResultBatch extends SQLResult {
+			private final int[] counts;
+
+			public SQLResultBatch(int[] counts) {
+				this.counts = Objects.requireNonNull(counts);
+			}
+
+			@Override
+			public Stream<Object[]> stream() {
+				return Arrays.stream(counts).mapToObj(count -> new Object[] { (long) count });
+			}
+		}
+
+		private static class SQLResultUpdate extends SQLResult {
+			private final long value;
+			private boolean consumed;
+
+			public SQLResultUpdate(long value) {
+				this.value = value;
+			}
+
+			public Stream<Object[]> stream() {
+				return StreamSupport.stream(new SQLResult.SQLResultUpdate.ResultSpliterator(), false);
+			}
+
+			private class ResultSpliterator implements Spliterator<Object[]> {
+				@Override
+				public boolean tryAdvance(Consumer<? super Object[]> consumer) {
+					if (!consumed) {
+						consumer.accept(new Object[] { value });
+						consumed = true;
+						return true;
+					}
+					return false;
+				}
+
+				@Override
+				public Spliterator<Object[]> trySplit() {
+					return null;
+				}
+
+				@Override
+				public long estimateSize() {
+					return 1;
+				}
+
+				@Override
+				public int characteristics() {
+					return Spliterator.IMMUTABLE | Spliterator.SIZED | Spliterator.NONNULL;
+				}
+			}
+		}
+	}
+
+	private static class SQLResources {
+		private static final ReferenceQueue<SQLResources> queue = new ReferenceQueue<>();
+		private static final Set<SQLLeak> leaks = Collections.newSetFromMap(new ConcurrentHashMap<>());
+
+		private final List<AutoCloseable> open = new ArrayList<>();
+		private final List<AutoCloseable> handles = new ArrayList<>();
+		private final SQLLeak leak;
+
+		public SQLResources(boolean leakDetection) {
+			if (leakDetection) {
+				reportLeaks();
+				leak = new SQLLeak(this, handles);
+				leaks.add(leak);
+			} else {
+				leak = null;
+			}
+		}
+
+		public void open(AutoCloseable handle) {
+			synchronized (handles) {
+				open.add(handle);
+				handles.add(handle);
+			}
+		}
+
+		public void attach(AutoCloseable resource) {
+			synchronized (handles) {
+				open.add(resource);
+			}
+		}
+
+		public void close(AutoCloseable resource) {
+			boolean removed;
+			synchronized (handles) {
+				removed = remove(open, resource);
+				remove(handles, resource);
+			}
+			if (removed) {
+				closeResource(resource);
+			}
+		}
+
+		public void close() {
+			List<AutoCloseable> resources;
+			synchronized (handles) {
+				resources = new ArrayList<>(open);
+				open.clear();
+				handles.clear();
+			}
+			closeAll(resources);
+			if (leak != null) {
+				leaks.remove(leak);
+				leak.clear();
+			}
+		}
+
+		private static boolean remove(List<AutoCloseable> resources, AutoCloseable resource) {
+			for (int i = resources.size() - 1; i >= 0; i--) {
+				if (resources.get(i) == resource) {
+					resources.remove(i);
+					return true;
+				}
+			}
+			return false;
+		}
+
+		private static void closeAll(List<AutoCloseable> resources) {
+			for (int i = resources.size() - 1; i >= 0; i--) {
+				closeResource(resources.get(i));
+			}
+		}
+
+		private static void closeResource(AutoCloseable resource) {
+			Try.of(() -> { resource.close(); return null; }).ifFailure(e -> logger.log(Level.FINE, "Can't close resource", e));
+		}
+
+		private static void reportLeaks() {
+			Reference<? extends SQLResources> reference;
+			while ((reference = queue.poll()) != null) {
+				SQLLeak leak = (SQLLeak) reference;
+				leaks.remove(leak);
+				List<AutoCloseable> resources;
+				synchronized (leak.handles) {
+					resources = new ArrayList<>(leak.handles);
+					leak.handles.clear();
+				}
+				if (resources.size() > 0) {
+					logger.log(Level.WARNING, "SQL template driver has been garbage collected without being closed (" + resources.size() + " resources leaked)", leak.origin);
+					closeAll(resources);
+				}
+			}
+		}
+
+		private static class SQLLeak extends PhantomReference<SQLResources> {
+			private final List<AutoCloseable> handles;
+			private final Exception origin = new Exception("Driver created at");
+
+			public SQLLeak(SQLResources resources, List<AutoCloseable> handles) {
+				super(resources, queue);
+				this.handles = handles;
 			}
 		}
 	}
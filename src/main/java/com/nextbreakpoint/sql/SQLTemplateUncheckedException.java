@@ -0,0 +1,36 @@
+/*
+ * This file is part of SQLTemplate
+ *
+ * Copyright (c) 2016, Andrea Medeghini
+ * All rights reserved.
+ */
+package com.nextbreakpoint.sql;
+
+import java.util.Objects;
+
+/**
+ * Unchecked exception which wraps the SQL errors raised while a lazy stream is consumed.
+ *
+ * @author Andrea Medeghini
+ *
+ */
+public class SQLTemplateUncheckedException extends RuntimeException {
+	private static final long serialVersionUID = 1L;
+
+	/**
+	 * Creates a new instance with given cause.
+	 * @param cause the cause
+	 */
+	public SQLTemplateUncheckedException(SQLTemplateException cause) {
+		super(cause.getMessage(), Objects.requireNonNull(cause));
+	}
+
+	/**
+	 * Returns the cause of this exception.
+	 * @return the cause
+	 */
+	@Override
+	public SQLTemplateException getCause() {
+		return (SQLTemplateException) super.getCause();
+	}
+}
@@ -0,0 +1,105 @@
+package com.nextbreakpoint.sql;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.ExpectedException;
+
+import java.io.ByteArrayInputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+public class SQLBulkLoaderTest {
+	@Rule
+	public ExpectedException exception = ExpectedException.none();
+
+	@Test
+	public void shouldParseQuotedFields() throws Exception {
+		RecordingSink sink = new RecordingSink();
+		SQLBulkLoader loader = SQLBulkLoader.builder().build();
+		loader.load(source("1,\"a,\"\"b\"\"\"\r\n2,\"x\ny\"\n"), sink);
+		assertEquals(2, sink.rows.size());
+		assertArrayEquals(new Object[] { "1", "a,\"b\"" }, sink.rows.get(0));
+		assertArrayEquals(new Object[] { "2", "x\ny" }, sink.rows.get(1));
+	}
+
+	@Test
+	public void shouldLoadEmptyFieldsAsNullUnlessQuoted() throws Exception {
+		RecordingSink sink = new RecordingSink();
+		SQLBulkLoader.builder().build().load(source("1,,\"\"\n\n2"), sink);
+		assertEquals(2, sink.rows.size());
+		assertArrayEquals(new Object[] { "1", null, "" }, sink.rows.get(0));
+		assertArrayEquals(new Object[] { "2" }, sink.rows.get(1));
+	}
+
+	@Test
+	public void shouldSkipHeaderAndConvertFields() throws Exception {
+		RecordingSink sink = new RecordingSink();
+		SQLBulkLoader loader = SQLBulkLoader.builder()
+			.skipHeader()
+			.delimiter(';')
+			.converter(fields -> new Object[] { Integer.valueOf(fields[0]), fields[1] })
+			.build();
+		loader.load(source("ID;NAME\n1;A\n"), sink);
+		assertArrayEquals(new Object[] { 1, "A" }, sink.rows.get(0));
+	}
+
+	@Test
+	public void shouldCommitEveryIntervalAndReportProgress() throws Exception {
+		RecordingSink sink = new RecordingSink();
+		List<Long> progress = new ArrayList<>();
+		SQLBulkLoader loader = SQLBulkLoader.builder()
+			.batchSize(2)
+			.commitInterval(4)
+			.queueSize(1)
+			.progress((rows, nanos) -> progress.add(rows))
+			.build();
+		StringBuilder text = new StringBuilder();
+		for (int i = 0; i < 9; i++) {
+			text.append(i).append('\n');
+		}
+		assertEquals(9, loader.load(source(text.toString()), sink));
+		assertEquals(5, sink.batches);
+		assertEquals(2, sink.commits);
+		assertEquals(3, progress.size());
+		assertEquals(Long.valueOf(9), progress.get(2));
+	}
+
+	@Test
+	public void shouldThrowExceptionWhenFieldsCantBeConverted() throws Exception {
+		exception.expect(SQLTemplateException.class);
+		SQLBulkLoader loader = SQLBulkLoader.builder().converter(fields -> new Object[] { Integer.valueOf(fields[0]) }).build();
+		loader.load(source("A\n"), new RecordingSink());
+	}
+
+	@Test(timeout = 10000)
+	public void shouldThrowExceptionWhenConverterThrowsError() throws Exception {
+		exception.expect(SQLTemplateException.class);
+		exception.expectCause(org.hamcrest.CoreMatchers.instanceOf(AssertionError.class));
+		SQLBulkLoader loader = SQLBulkLoader.builder().converter(fields -> { throw new AssertionError(); }).build();
+		loader.load(source("A\n"), new RecordingSink());
+	}
+
+	private SQLBulkLoader.Source source(String text) {
+		return SQLBulkLoader.stream(new ByteArrayInputStream(text.getBytes(StandardCharsets.UTF_8)));
+	}
+
+	private static class RecordingSink implements SQLBulkLoader.Sink {
+		private final List<Object[]> rows = new ArrayList<>();
+		private int batches;
+		private int commits;
+
+		@Override
+		public void accept(List<Object[]> batch) {
+			rows.addAll(batch);
+			batches += 1;
+		}
+
+		@Override
+		public void commit() {
+			commits += 1;
+		}
+	}
+}
@@ -0,0 +1,101 @@
+package com.nextbreakpoint.sql;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.ExpectedException;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.ResultSetMetaData;
+import java.sql.SQLException;
+import java.sql.Types;
+
+import static org.junit.Assert.*;
+import static org.mockito.Mockito.*;
+
+public class SQLColumnarResultTest {
+	@Rule
+	public ExpectedException exception = ExpectedException.none();
+
+	@Test
+	public void shouldStoreColumnsByType() throws Exception {
+		SQLColumnarResult result = SQLTemplate.builder().statement("XXX").query().build().columns(connection()).get();
+		assertEquals(3, result.rowCount());
+		assertEquals(4, result.columnCount());
+		assertEquals("ID", result.columnName(1));
+		assertEquals(SQLColumnarResult.ColumnType.INT, result.columnType(1));
+		assertEquals(SQLColumnarResult.ColumnType.LONG, result.columnType(2));
+		assertEquals(SQLColumnarResult.ColumnType.DOUBLE, result.columnType(3));
+		assertEquals(SQLColumnarResult.ColumnType.STRING, result.columnType(4));
+		assertArrayEquals(new int[] { 1, 2, 3 }, result.getInts(1));
+		assertArrayEquals(new long[] { 10L, 20L, 0L }, result.getLongs(2));
+		assertArrayEquals(new double[] { 1.5, 2.5, 3.5 }, result.getDoubles(3), 0.0);
+	}
+
+	@Test
+	public void shouldEncodeStringsWithDictionary() throws Exception {
+		SQLColumnarResult result = SQLTemplate.builder().statement("XXX").query().build().columns(connection()).get();
+		assertArrayEquals(new int[] { 0, 0, 1 }, result.getStringCodes(4));
+		assertArrayEquals(new String[] { "a", "b" }, result.getDictionary(4));
+		assertEquals("b", result.getObject(4, 2));
+	}
+
+	@Test
+	public void shouldTrackNullValues() throws Exception {
+		SQLColumnarResult result = SQLTemplate.builder().statement("XXX").query().build().columns(connection()).get();
+		assertFalse(result.isNull(2, 1));
+		assertTrue(result.isNull(2, 2));
+		assertNull(result.getObject(2, 2));
+		assertEquals(20L, result.getObject(2, 1));
+	}
+
+	@Test
+	public void shouldThrowExceptionWhenColumnHasDifferentType() throws Exception {
+		SQLColumnarResult result = SQLTemplate.builder().statement("XXX").query().build().columns(connection()).get();
+		exception.expect(IllegalArgumentException.class);
+		result.getLongs(1);
+	}
+
+	@Test
+	public void shouldThrowExceptionWhenRowIsInvalid() throws Exception {
+		SQLColumnarResult result = SQLTemplate.builder().statement("XXX").query().build().columns(connection()).get();
+		exception.expect(IndexOutOfBoundsException.class);
+		result.getObject(1, 3);
+	}
+
+	@Test
+	public void shouldStoreUpdateCountAsObject() throws Exception {
+		Connection conn = mock(Connection.class);
+		PreparedStatement stmt = mock(PreparedStatement.class);
+		when(conn.prepareStatement("XXX")).thenReturn(stmt);
+		when(stmt.executeUpdate()).thenReturn(7);
+		SQLColumnarResult result = SQLTemplate.builder().statement("XXX").update().build().columns(conn).get();
+		assertEquals(1, result.rowCount());
+		assertEquals(SQLColumnarResult.ColumnType.OBJECT, result.columnType(1));
+		assertEquals(7L, result.getObject(1, 0));
+	}
+
+	private Connection connection() throws SQLException {
+		Connection conn = mock(Connection.class);
+		PreparedStatement stmt = mock(PreparedStatement.class);
+		ResultSet rs = mock(ResultSet.class);
+		ResultSetMetaData meta = mock(ResultSetMetaData.class);
+		when(conn.prepareStatement("XXX")).thenReturn(stmt);
+		when(stmt.executeQuery()).thenReturn(rs);
+		when(rs.getMetaData()).thenReturn(meta);
+		when(meta.getColumnCount()).thenReturn(4);
+		when(meta.getColumnLabel(1)).thenReturn("ID");
+		when(meta.getColumnType(1)).thenReturn(Types.INTEGER);
+		when(meta.getColumnType(2)).thenReturn(Types.BIGINT);
+		when(meta.getColumnType(3)).thenReturn(Types.DOUBLE);
+		when(meta.getColumnType(4)).thenReturn(Types.VARCHAR);
+		when(rs.next()).thenReturn(true, true, true, false);
+		when(rs.getInt(1)).thenReturn(1, 2, 3);
+		when(rs.getLong(2)).thenReturn(10L, 20L, 0L);
+		when(rs.getDouble(3)).thenReturn(1.5, 2.5, 3.5);
+		when(rs.getString(4)).thenReturn("a", "a", "b");
+		when(rs.wasNull()).thenReturn(false, false, false, false, false, false, false, true, false);
+		return conn;
+	}
+}
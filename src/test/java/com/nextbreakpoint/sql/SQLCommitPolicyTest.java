@@ -0,0 +1,63 @@
+package com.nextbreakpoint.sql;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.ExpectedException;
+
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.*;
+
+public class SQLCommitPolicyTest {
+	@Rule
+	public ExpectedException exception = ExpectedException.none();
+
+	@Test
+	public void shouldBeDueWhenUpdatesReachMax() {
+		SQLCommitPolicy policy = SQLCommitPolicy.builder().everyUpdates(10).build();
+		assertFalse(policy.isDue(9, Long.MAX_VALUE));
+		assertTrue(policy.isDue(10, 0));
+	}
+
+	@Test
+	public void shouldBeDueWhenTimeReachesInterval() {
+		SQLCommitPolicy policy = SQLCommitPolicy.builder().every(1, TimeUnit.SECONDS).build();
+		assertFalse(policy.isDue(Long.MAX_VALUE, TimeUnit.MILLISECONDS.toNanos(999)));
+		assertTrue(policy.isDue(0, TimeUnit.SECONDS.toNanos(1)));
+	}
+
+	@Test
+	public void shouldNotEnableSavepointsByDefault() {
+		SQLCommitPolicy policy = SQLCommitPolicy.builder().everyUpdates(1).build();
+		assertFalse(policy.isSavepointDue(1));
+		assertFalse(policy.commitOnFailure());
+	}
+
+	@Test
+	public void shouldSetSavepointEveryNumberOfExecutions() {
+		SQLCommitPolicy policy = SQLCommitPolicy.builder().everyUpdates(100).savepoints(10).build();
+		assertFalse(policy.isSavepointDue(0));
+		assertFalse(policy.isSavepointDue(9));
+		assertTrue(policy.isSavepointDue(10));
+		assertFalse(policy.isSavepointDue(11));
+		assertTrue(policy.isSavepointDue(20));
+	}
+
+	@Test
+	public void shouldThrowIllegalStateExceptionWhenPolicyIsNotDefined() {
+		exception.expect(IllegalStateException.class);
+		SQLCommitPolicy.builder().savepoints(1).build();
+	}
+
+	@Test
+	public void shouldThrowIllegalStateExceptionWhenCommitOnFailureHasNoSavepoints() {
+		exception.expect(IllegalStateException.class);
+		SQLCommitPolicy.builder().everyUpdates(1).commitOnFailure().build();
+	}
+
+	@Test
+	public void shouldThrowIllegalArgumentExceptionWhenMaxUpdatesIsZero() {
+		exception.expect(IllegalArgumentException.class);
+		SQLCommitPolicy.builder().everyUpdates(0);
+	}
+}
@@ -0,0 +1,124 @@
+package com.nextbreakpoint.sql;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.ExpectedException;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.math.BigInteger;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.charset.StandardCharsets;
+import java.time.Instant;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+
+import static org.junit.Assert.*;
+import static org.mockito.Mockito.*;
+
+public class SQLExporterTest {
+	@Rule
+	public ExpectedException exception = ExpectedException.none();
+
+	@Test
+	public void shouldWriteCsvWithQuotesWhenRequired() throws Exception {
+		ByteArrayOutputStream output = new ByteArrayOutputStream();
+		SQLExporter exporter = SQLExporter.builder().header("A", "B", "C").build();
+		SQLExporter.RowWriter writer = exporter.writer(Channels.newChannel(output));
+		writer.accept(row(1, "x,\"y\"", null));
+		writer.accept(row(2, "", "z"));
+		writer.finish();
+		writer.release();
+		assertEquals("A,B,C\n1,\"x,\"\"y\"\"\",\n2,\"\",z\n", new String(output.toByteArray(), StandardCharsets.UTF_8));
+	}
+
+	@Test
+	public void shouldLoadExportedRowsWithOnlyNullColumn() throws Exception {
+		ByteArrayOutputStream output = new ByteArrayOutputStream();
+		SQLExporter.RowWriter writer = SQLExporter.builder().build().writer(Channels.newChannel(output));
+		writer.accept(row((Object) null));
+		writer.accept(row("\\N"));
+		writer.accept(row(""));
+		writer.accept(row((Object) null));
+		writer.finish();
+		writer.release();
+		assertEquals("\\N\n\"\\N\"\n\"\"\n\\N\n", new String(output.toByteArray(), StandardCharsets.UTF_8));
+		List<Object[]> rows = new ArrayList<>();
+		SQLBulkLoader.builder().build().load(SQLBulkLoader.stream(new ByteArrayInputStream(output.toByteArray())), new SQLBulkLoader.Sink() {
+			@Override
+			public void accept(List<Object[]> batch) {
+				rows.addAll(batch);
+			}
+
+			@Override
+			public void commit() {
+			}
+		});
+		assertEquals(4, rows.size());
+		assertArrayEquals(new Object[] { null }, rows.get(0));
+		assertArrayEquals(new Object[] { "\\N" }, rows.get(1));
+		assertArrayEquals(new Object[] { "" }, rows.get(2));
+		assertArrayEquals(new Object[] { null }, rows.get(3));
+	}
+
+	@Test
+	public void shouldWriteRowsLargerThanBuffer() throws Exception {
+		ByteArrayOutputStream output = new ByteArrayOutputStream();
+		SQLExporter exporter = SQLExporter.builder().bufferSize(16).build();
+		SQLExporter.RowWriter writer = exporter.writer(Channels.newChannel(output));
+		writer.accept(row("0123456789", "0123456789"));
+		writer.finish();
+		writer.release();
+		assertEquals("0123456789,0123456789\n", new String(output.toByteArray(), StandardCharsets.UTF_8));
+	}
+
+	@Test
+	public void shouldWriteBinaryRows() throws Exception {
+		ByteArrayOutputStream output = new ByteArrayOutputStream();
+		SQLExporter exporter = SQLExporter.builder().format(SQLExporter.Format.BINARY).bufferSize(16).build();
+		SQLExporter.RowWriter writer = exporter.writer(Channels.newChannel(output));
+		writer.accept(row(1, "A long enough string", null));
+		writer.accept(row(2L, "B", 1.5));
+		writer.finish();
+		writer.release();
+		ByteBuffer buffer = ByteBuffer.wrap(output.toByteArray());
+		assertArrayEquals(new Object[] { 1, "A long enough string", null }, SQLRowCodec.decodeRow(buffer));
+		assertArrayEquals(new Object[] { 2L, "B", 1.5 }, SQLRowCodec.decodeRow(buffer));
+		assertFalse(buffer.hasRemaining());
+	}
+
+	@Test
+	public void shouldWriteBinaryRowsWithUuidAndTimeValues() throws Exception {
+		ByteArrayOutputStream output = new ByteArrayOutputStream();
+		SQLExporter exporter = SQLExporter.builder().format(SQLExporter.Format.BINARY).build();
+		SQLExporter.RowWriter writer = exporter.writer(Channels.newChannel(output));
+		Object[] values = new Object[] { UUID.randomUUID(), LocalDate.of(2016, 1, 2), LocalDateTime.of(2016, 1, 2, 3, 4, 5), Instant.ofEpochSecond(1), BigInteger.TEN };
+		writer.accept(row(values));
+		writer.finish();
+		writer.release();
+		assertArrayEquals(values, SQLRowCodec.decodeRow(ByteBuffer.wrap(output.toByteArray())));
+	}
+
+	@Test
+	public void shouldThrowExceptionWhenBinaryValueIsNotSupported() throws Exception {
+		SQLExporter exporter = SQLExporter.builder().format(SQLExporter.Format.BINARY).build();
+		SQLExporter.RowWriter writer = exporter.writer(Channels.newChannel(new ByteArrayOutputStream()));
+		exception.expect(IOException.class);
+		exception.expectMessage("column 2");
+		writer.accept(row(1, new StringBuilder("A")));
+	}
+
+	private SQLRow row(Object... values) throws Exception {
+		SQLRow row = mock(SQLRow.class);
+		when(row.columnCount()).thenReturn(values.length);
+		for (int i = 0; i < values.length; i++) {
+			when(row.getObject(i + 1)).thenReturn(values[i]);
+		}
+		return row;
+	}
+}
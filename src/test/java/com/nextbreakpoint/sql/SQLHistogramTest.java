@@ -0,0 +1,59 @@
+package com.nextbreakpoint.sql;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.ExpectedException;
+
+import static org.junit.Assert.*;
+
+public class SQLHistogramTest {
+	@Rule
+	public ExpectedException exception = ExpectedException.none();
+
+	@Test
+	public void shouldCountRecords() {
+		SQLHistogram histogram = new SQLHistogram();
+		histogram.record(100, 2, false);
+		histogram.record(200, 3, true);
+		assertEquals(2, histogram.count());
+		assertEquals(1, histogram.failures());
+		assertEquals(5, histogram.rows());
+		assertEquals(300, histogram.totalNanos());
+		assertEquals(200, histogram.maxNanos());
+	}
+
+	@Test
+	public void shouldReturnPercentileWithinRelativeError() {
+		SQLHistogram histogram = new SQLHistogram();
+		for (long i = 1; i <= 1000; i++) {
+			histogram.record(i * 1000, 0, false);
+		}
+		long p50 = histogram.percentile(0.5);
+		long p99 = histogram.percentile(0.99);
+		assertTrue(Math.abs(p50 - 500000) <= 500000 / 16);
+		assertTrue(Math.abs(p99 - 990000) <= 990000 / 16);
+		assertEquals(1000000, histogram.percentile(1));
+	}
+
+	@Test
+	public void shouldMapValuesToBucketsWithUpperBoundNotLowerThanValue() {
+		for (long value : new long[] { 0, 1, 15, 16, 17, 1000, 123456789, Long.MAX_VALUE }) {
+			assertTrue(SQLHistogram.upperBound(SQLHistogram.bucket(value)) >= value);
+		}
+	}
+
+	@Test
+	public void shouldClearHistogram() {
+		SQLHistogram histogram = new SQLHistogram();
+		histogram.record(100, 1, false);
+		histogram.reset();
+		assertEquals(0, histogram.count());
+		assertEquals(0, histogram.percentile(0.5));
+	}
+
+	@Test
+	public void shouldThrowExceptionWhenQuantileIsInvalid() {
+		exception.expect(IllegalArgumentException.class);
+		new SQLHistogram().percentile(2);
+	}
+}
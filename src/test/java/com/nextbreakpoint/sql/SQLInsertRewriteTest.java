@@ -0,0 +1,47 @@
+package com.nextbreakpoint.sql;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+public class SQLInsertRewriteTest {
+	@Test
+	public void shouldRewriteInsertWithManyRows() {
+		SQLInsertRewrite rewrite = SQLInsertRewrite.of("INSERT INTO T (A, B) VALUES (?, ?);");
+		assertNotNull(rewrite);
+		assertEquals(2, rewrite.parameters());
+		assertEquals("INSERT INTO T (A, B) VALUES (?, ?), (?, ?), (?, ?)", rewrite.sql(3));
+	}
+
+	@Test
+	public void shouldLimitChunkSizeByNumberOfParameters() {
+		SQLInsertRewrite rewrite = SQLInsertRewrite.of("INSERT INTO T (A, B, C) VALUES (?, ?, ?)");
+		assertEquals(100, rewrite.chunkSize(100, 2100));
+		assertEquals(700, rewrite.chunkSize(1000, 2100));
+		assertEquals(1, rewrite.chunkSize(1000, 2));
+	}
+
+	@Test
+	public void shouldKeepFunctionsAndLiteralsOfTuple() {
+		SQLInsertRewrite rewrite = SQLInsertRewrite.of("insert into T values (?, lower(?), 'a)?')");
+		assertEquals(2, rewrite.parameters());
+		assertEquals("insert into T values (?, lower(?), 'a)?'), (?, lower(?), 'a)?')", rewrite.sql(2));
+	}
+
+	@Test
+	public void shouldKeepClauseAfterTuple() {
+		assertEquals("INSERT INTO T VALUES (?), (?) ON CONFLICT DO NOTHING", SQLInsertRewrite.of("INSERT INTO T VALUES (?) ON CONFLICT DO NOTHING").sql(2));
+	}
+
+	@Test
+	public void shouldNotRewriteStatementsWhichAreNotInsertValues() {
+		assertNull(SQLInsertRewrite.of("UPDATE T SET A = ?"));
+		assertNull(SQLInsertRewrite.of("INSERT INTO T SELECT * FROM S WHERE A = ?"));
+		assertNull(SQLInsertRewrite.of("INSERT INTO T VALUES (1, 2)"));
+	}
+
+	@Test
+	public void shouldNotRewriteStatementsWithParametersOutsideTuple() {
+		assertNull(SQLInsertRewrite.of("INSERT INTO T VALUES (?) ON DUPLICATE KEY UPDATE A = ?"));
+	}
+}
@@ -0,0 +1,53 @@
+package com.nextbreakpoint.sql;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.ExpectedException;
+
+import static org.junit.Assert.*;
+
+public class SQLKeysetTest {
+	@Rule
+	public ExpectedException exception = ExpectedException.none();
+
+	@Test
+	public void shouldReturnValuesOfKeyColumns() {
+		SQLKeyset keyset = SQLKeyset.builder().key(3, 1).start("a", 0).build();
+		assertArrayEquals(new Object[] { "c", 1 }, keyset.key(new Object[] { 1, "b", "c" }));
+	}
+
+	@Test
+	public void shouldReturnCopyOfStartValues() {
+		SQLKeyset keyset = SQLKeyset.builder().start(0).build();
+		keyset.start()[0] = 1;
+		assertArrayEquals(new Object[] { 0 }, keyset.start());
+	}
+
+	@Test
+	public void shouldNotReturnExecutorWhenPrefetchIsDisabled() {
+		assertNull(SQLKeyset.builder().start(0).build().executor());
+	}
+
+	@Test
+	public void shouldReturnDefaultExecutorWhenPrefetchIsEnabled() {
+		assertSame(SQLTemplate.defaultExecutor(), SQLKeyset.builder().start(0).prefetch().build().executor());
+	}
+
+	@Test
+	public void shouldThrowIllegalStateExceptionWhenStartValuesDontMatchKey() {
+		exception.expect(IllegalStateException.class);
+		SQLKeyset.builder().key(1, 2).start(0).build();
+	}
+
+	@Test
+	public void shouldThrowIllegalStateExceptionWhenKeyColumnIsMissing() {
+		exception.expect(IllegalStateException.class);
+		SQLKeyset.builder().key(2).start(0).build().key(new Object[] { 1 });
+	}
+
+	@Test
+	public void shouldThrowIllegalArgumentExceptionWhenPageSizeIsZero() {
+		exception.expect(IllegalArgumentException.class);
+		SQLKeyset.builder().pageSize(0);
+	}
+}
@@ -0,0 +1,49 @@
+package com.nextbreakpoint.sql;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.ExpectedException;
+
+import static org.junit.Assert.*;
+
+public class SQLNamedStatementTest {
+	@Rule
+	public ExpectedException exception = ExpectedException.none();
+
+	@Test
+	public void shouldReplaceNamedParametersWithPlaceholders() {
+		SQLNamedStatement statement = SQLNamedStatement.parse("SELECT * FROM TEST WHERE ID = :id AND NAME = :name OR ID = :id");
+		assertEquals("SELECT * FROM TEST WHERE ID = ? AND NAME = ? OR ID = ?", statement.sql());
+		assertArrayEquals(new String[] { "id", "name", "id" }, statement.names());
+	}
+
+	@Test
+	public void shouldIgnoreParametersInLiteralsCommentsAndCasts() {
+		String sql = "SELECT ':a', \":b\", X::INT FROM TEST -- :c\n/* :d */ WHERE ID = :id";
+		SQLNamedStatement statement = SQLNamedStatement.parse(sql);
+		assertEquals("SELECT ':a', \":b\", X::INT FROM TEST -- :c\n/* :d */ WHERE ID = ?", statement.sql());
+		assertArrayEquals(new String[] { "id" }, statement.names());
+	}
+
+	@Test
+	public void shouldNotChangeStatementWithoutNamedParameters() {
+		String sql = "SELECT * FROM TEST WHERE ID = ?";
+		SQLNamedStatement statement = SQLNamedStatement.parse(sql);
+		assertSame(sql, statement.sql());
+		assertFalse(statement.hasNames());
+	}
+
+	@Test
+	public void shouldIgnoreParametersInDollarQuotesAndDelimitedIdentifiers() {
+		String sql = "SELECT $$:a$$, $tag$:b$tag$, `:c`, [:d], ARR[1:n] FROM TEST WHERE ID = :id";
+		SQLNamedStatement statement = SQLNamedStatement.parse(sql);
+		assertEquals("SELECT $$:a$$, $tag$:b$tag$, `:c`, [:d], ARR[1:n] FROM TEST WHERE ID = ?", statement.sql());
+		assertArrayEquals(new String[] { "id" }, statement.names());
+	}
+
+	@Test
+	public void shouldThrowIllegalArgumentExceptionWhenNamedAndPositionalParametersAreMixed() {
+		exception.expect(IllegalArgumentException.class);
+		SQLNamedStatement.parse("SELECT * FROM TEST WHERE ID = :id AND NAME = ?");
+	}
+}
@@ -0,0 +1,63 @@
+package com.nextbreakpoint.sql;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.ExpectedException;
+
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+import static org.junit.Assert.*;
+
+public class SQLPartitionQueueTest {
+	@Rule
+	public ExpectedException exception = ExpectedException.none();
+
+	@Test
+	public void shouldReturnRowsInOrderOfPartitions() throws Exception {
+		SQLPartitionQueue queue = new SQLPartitionQueue(2, true, 10);
+		queue.put(1, new Object[] { "B" });
+		queue.end(1, null);
+		queue.put(0, new Object[] { "A" });
+		queue.end(0, null);
+		assertEquals(Arrays.asList("A", "B"), queue.stream().map(row -> row[0]).collect(Collectors.toList()));
+	}
+
+	@Test
+	public void shouldReturnRowsInOrderOfCompletion() throws Exception {
+		SQLPartitionQueue queue = new SQLPartitionQueue(2, false, 10);
+		queue.put(1, new Object[] { "B" });
+		queue.end(1, null);
+		queue.put(0, new Object[] { "A" });
+		queue.end(0, null);
+		assertEquals(Arrays.asList("B", "A"), queue.stream().map(row -> row[0]).collect(Collectors.toList()));
+	}
+
+	@Test
+	public void shouldReturnRowsBeforePartitionsComplete() throws Exception {
+		SQLPartitionQueue queue = new SQLPartitionQueue(2, false, 10);
+		queue.put(0, new Object[] { "A" });
+		Iterator<Object[]> iterator = queue.stream().iterator();
+		assertEquals("A", iterator.next()[0]);
+	}
+
+	@Test
+	public void shouldThrowExceptionWhenPartitionFails() throws Exception {
+		SQLPartitionQueue queue = new SQLPartitionQueue(1, true, 10);
+		queue.end(0, new SQLTemplateException("error"));
+		exception.expect(SQLTemplateUncheckedException.class);
+		queue.stream().count();
+	}
+
+	@Test
+	public void shouldCancelPartitionsWhenStreamIsClosed() throws Exception {
+		SQLPartitionQueue queue = new SQLPartitionQueue(1, true, 1);
+		Stream<Object[]> stream = queue.stream();
+		queue.put(0, new Object[] { "A" });
+		stream.close();
+		exception.expect(SQLTemplateException.class);
+		queue.put(0, new Object[] { "B" });
+	}
+}
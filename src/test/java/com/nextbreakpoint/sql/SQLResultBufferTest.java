@@ -0,0 +1,110 @@
+package com.nextbreakpoint.sql;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.ExpectedException;
+
+import java.math.BigDecimal;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.ResultSetMetaData;
+import java.sql.Timestamp;
+import java.util.Iterator;
+import java.util.List;
+import java.util.stream.Collectors;
+
+import static org.junit.Assert.*;
+import static org.mockito.Mockito.*;
+
+public class SQLResultBufferTest {
+	@Rule
+	public ExpectedException exception = ExpectedException.none();
+
+	@Test
+	public void shouldThrowExceptionWhenThresholdIsNegative() {
+		exception.expect(IllegalArgumentException.class);
+		SQLResultBuffer.create(-1);
+	}
+
+	@Test
+	public void shouldReplayRowsStoredInMemory() throws Exception {
+		try (SQLResultBuffer buffer = SQLResultBuffer.create(1 << 20, 1024)) {
+			buffer.append(row(1, "A", null));
+			buffer.append(row(2L, new BigDecimal("1.25"), new Timestamp(1000L)));
+			assertEquals(2, buffer.rowCount());
+			assertEquals(0, buffer.fileSize());
+			List<Object[]> rows = buffer.stream().collect(Collectors.toList());
+			assertArrayEquals(new Object[] { 1, "A", null }, rows.get(0));
+			assertArrayEquals(new Object[] { 2L, new BigDecimal("1.25"), new Timestamp(1000L) }, rows.get(1));
+		}
+	}
+
+	@Test
+	public void shouldSpillRowsToFileWhenThresholdIsExceeded() throws Exception {
+		try (SQLResultBuffer buffer = SQLResultBuffer.create(64, 64)) {
+			for (int i = 0; i < 100; i++) {
+				buffer.append(row(i, "ROW" + i, 0.5 * i));
+			}
+			assertEquals(64, buffer.memorySize());
+			assertTrue(buffer.fileSize() > 0);
+			assertEquals(100, buffer.stream().count());
+			assertEquals(100, buffer.stream().count());
+			assertEquals("ROW99", buffer.stream().skip(99).findFirst().get()[1]);
+		}
+	}
+
+	@Test
+	public void shouldStoreRowLargerThanChunk() throws Exception {
+		try (SQLResultBuffer buffer = SQLResultBuffer.create(1 << 20, 16)) {
+			buffer.append(row(new String(new char[100]).replace('\0', 'X')));
+			assertEquals(100, ((String) buffer.stream().findFirst().get()[0]).length());
+		}
+	}
+
+	@Test
+	public void shouldThrowExceptionWhenBufferIsClosed() throws Exception {
+		SQLResultBuffer buffer = SQLResultBuffer.create(1024);
+		buffer.close();
+		exception.expect(IllegalStateException.class);
+		buffer.stream();
+	}
+
+	@Test
+	public void shouldThrowExceptionWhenStreamIsReadAfterBufferIsClosed() throws Exception {
+		SQLResultBuffer buffer = SQLResultBuffer.create(0, 16);
+		buffer.append(row("A"));
+		Iterator<Object[]> iterator = buffer.stream().iterator();
+		buffer.close();
+		exception.expect(IllegalStateException.class);
+		iterator.next();
+	}
+
+	@Test
+	public void shouldBufferQueryResult() throws Exception {
+		Connection conn = mock(Connection.class);
+		PreparedStatement stmt = mock(PreparedStatement.class);
+		ResultSet rs = mock(ResultSet.class);
+		ResultSetMetaData meta = mock(ResultSetMetaData.class);
+		when(conn.prepareStatement("XXX")).thenReturn(stmt);
+		when(stmt.executeQuery()).thenReturn(rs);
+		when(rs.getMetaData()).thenReturn(meta);
+		when(meta.getColumnCount()).thenReturn(1);
+		when(rs.next()).thenReturn(true, true, false);
+		when(rs.getObject(1)).thenReturn("a", "b");
+		try (SQLResultBuffer buffer = SQLTemplate.builder().statement("XXX").query().build().buffer(conn, 1024).get()) {
+			assertEquals(2, buffer.rowCount());
+			assertEquals("b", buffer.stream().skip(1).findFirst().get()[0]);
+		}
+		verify(rs, times(1)).close();
+	}
+
+	private SQLRow row(Object... values) throws Exception {
+		SQLRow row = mock(SQLRow.class);
+		when(row.columnCount()).thenReturn(values.length);
+		for (int i = 0; i < values.length; i++) {
+			when(row.getObject(i + 1)).thenReturn(values[i]);
+		}
+		return row;
+	}
+}
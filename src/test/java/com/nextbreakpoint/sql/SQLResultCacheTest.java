@@ -0,0 +1,104 @@
+package com.nextbreakpoint.sql;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.ExpectedException;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.*;
+
+public class SQLResultCacheTest {
+	@Rule
+	public ExpectedException exception = ExpectedException.none();
+
+	@Test
+	public void shouldFindTablesOfQuery() {
+		assertArrayEquals(new String[] { "A", "B", "C" }, SQLResultCache.tables("SELECT * FROM a JOIN s.b ON a.id = b.id, \"c\" WHERE x IN (1, 2)"));
+	}
+
+	@Test
+	public void shouldFindTablesOfSubqueries() {
+		assertArrayEquals(new String[] { "B", "A" }, SQLResultCache.tables("SELECT * FROM (SELECT id FROM b) x, a WHERE name = 'FROM c'"));
+	}
+
+	@Test
+	public void shouldFindTablesOfUpdates() {
+		assertArrayEquals(new String[] { "A" }, SQLResultCache.tables("INSERT INTO a (id, name) VALUES (?, ?)"));
+		assertArrayEquals(new String[] { "A" }, SQLResultCache.tables("UPDATE a SET name = ?"));
+		assertArrayEquals(new String[] { "A" }, SQLResultCache.tables("DELETE FROM a"));
+		assertArrayEquals(new String[] { "A" }, SQLResultCache.tables("DELETE a"));
+		assertArrayEquals(new String[] { "A" }, SQLResultCache.tables("CREATE TABLE IF NOT EXISTS a (id INT)"));
+	}
+
+	@Test
+	public void shouldReturnCachedRows() {
+		SQLResultCache cache = SQLResultCache.create(10, 1, TimeUnit.HOURS);
+		cache.put("SELECT * FROM A WHERE ID = ?", new Object[] { 1 }, new String[] { "A" }, cache.stamp(), rows());
+		assertNull(cache.get("SELECT * FROM A WHERE ID = ?", new Object[] { 2 }));
+		List<Object[]> rows = cache.get("SELECT * FROM A WHERE ID = ?", new Object[] { 1 });
+		assertEquals("X", rows.get(0)[0]);
+		assertEquals(1, cache.hits());
+		assertEquals(1, cache.misses());
+	}
+
+	@Test
+	public void shouldReturnSameImmutableRowsOnEachHit() {
+		SQLResultCache cache = SQLResultCache.create(10, 1, TimeUnit.HOURS);
+		cache.put("SELECT * FROM A", null, new String[] { "A" }, cache.stamp(), rows());
+		List<Object[]> rows = cache.get("SELECT * FROM A", null);
+		assertSame(rows, cache.get("SELECT * FROM A", null));
+		exception.expect(UnsupportedOperationException.class);
+		rows.add(new Object[] { "Y" });
+	}
+
+	@Test
+	public void shouldInvalidateRowsOfTable() {
+		SQLResultCache cache = SQLResultCache.create(10, 1, TimeUnit.HOURS);
+		cache.put("SELECT * FROM A", null, new String[] { "A" }, cache.stamp(), rows());
+		cache.put("SELECT * FROM B", null, new String[] { "B" }, cache.stamp(), rows());
+		cache.invalidate("a");
+		assertNull(cache.get("SELECT * FROM A", null));
+		assertNotNull(cache.get("SELECT * FROM B", null));
+	}
+
+	@Test
+	public void shouldNotStoreRowsWhenTableHasBeenInvalidatedDuringQuery() {
+		SQLResultCache cache = SQLResultCache.create(10, 1, TimeUnit.HOURS);
+		long stamp = cache.stamp();
+		cache.invalidate("A");
+		cache.put("SELECT * FROM A", null, new String[] { "A" }, stamp, rows());
+		assertEquals(0, cache.size());
+	}
+
+	@Test
+	public void shouldEvictLeastRecentlyUsedRows() {
+		SQLResultCache cache = SQLResultCache.create(1, 1, TimeUnit.HOURS);
+		cache.put("SELECT * FROM A", null, new String[] { "A" }, cache.stamp(), rows());
+		cache.put("SELECT * FROM B", null, new String[] { "B" }, cache.stamp(), rows());
+		assertEquals(1, cache.size());
+		assertEquals(1, cache.evictions());
+		assertNull(cache.get("SELECT * FROM A", null));
+	}
+
+	@Test
+	public void shouldExpireRows() throws Exception {
+		SQLResultCache cache = SQLResultCache.create(10, 1, TimeUnit.MILLISECONDS);
+		cache.put("SELECT * FROM A", null, new String[] { "A" }, cache.stamp(), rows());
+		Thread.sleep(5);
+		assertNull(cache.get("SELECT * FROM A", null));
+	}
+
+	@Test
+	public void shouldThrowExceptionWhenMaxSizeIsInvalid() {
+		exception.expect(IllegalArgumentException.class);
+		SQLResultCache.create(0, 1, TimeUnit.HOURS);
+	}
+
+	private List<Object[]> rows() {
+		return Collections.singletonList(new Object[] { "X" });
+	}
+}
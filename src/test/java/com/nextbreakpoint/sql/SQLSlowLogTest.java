@@ -0,0 +1,123 @@
+package com.nextbreakpoint.sql;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.ExpectedException;
+
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.sql.Savepoint;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.*;
+import static org.mockito.Mockito.*;
+
+public class SQLSlowLogTest {
+	@Rule
+	public ExpectedException exception = ExpectedException.none();
+
+	@Test
+	public void shouldRecordOnlyOperationsAboveThreshold() {
+		SQLSlowLog slowLog = SQLSlowLog.builder().threshold(100, TimeUnit.NANOSECONDS).build();
+		SQLListener listener = slowLog.listener(mock(Connection.class), () -> null, null);
+		listener.onOperation(SQLListener.Phase.EXECUTE, "A", 99, 1, null);
+		listener.onOperation(SQLListener.Phase.EXECUTE, "B", 100, 1, null);
+		listener.onOperation(SQLListener.Phase.BIND, "C", 1000, 1, null);
+		List<SQLSlowLog.Entry> entries = slowLog.entries();
+		assertEquals(1, entries.size());
+		assertEquals("B", entries.get(0).getSql());
+		assertFalse(entries.get(0).isSampled());
+	}
+
+	@Test
+	public void shouldRecordSampledOperations() {
+		SQLSlowLog slowLog = SQLSlowLog.builder().threshold(1, TimeUnit.HOURS).sampleRate(1).build();
+		SQLListener listener = slowLog.listener(mock(Connection.class), () -> null, null);
+		listener.onOperation(SQLListener.Phase.FETCH, "A", 10, 5, null);
+		assertEquals(1, slowLog.entries().size());
+		assertTrue(slowLog.entries().get(0).isSampled());
+	}
+
+	@Test
+	public void shouldKeepMostRecentEntries() {
+		SQLSlowLog slowLog = SQLSlowLog.builder().threshold(0, TimeUnit.NANOSECONDS).capacity(2).build();
+		SQLListener listener = slowLog.listener(mock(Connection.class), () -> null, null);
+		listener.onOperation(SQLListener.Phase.EXECUTE, "A", 1, 1, null);
+		listener.onOperation(SQLListener.Phase.EXECUTE, "B", 1, 1, null);
+		listener.onOperation(SQLListener.Phase.EXECUTE, "C", 1, 1, null);
+		List<SQLSlowLog.Entry> entries = slowLog.entries();
+		assertEquals(2, entries.size());
+		assertEquals("B", entries.get(0).getSql());
+		assertEquals("C", entries.get(1).getSql());
+	}
+
+	@Test
+	public void shouldForwardOperationsToNextListener() {
+		SQLListener next = mock(SQLListener.class);
+		SQLSlowLog slowLog = SQLSlowLog.builder().build();
+		slowLog.listener(mock(Connection.class), () -> null, next).onOperation(SQLListener.Phase.PREPARE, "A", 1, -1, null);
+		verify(next).onOperation(SQLListener.Phase.PREPARE, "A", 1, -1, null);
+	}
+
+	@Test
+	public void shouldNotExplainStatementsOtherThanQueriesAndUpdates() throws Exception {
+		SQLSlowLog slowLog = SQLSlowLog.builder().threshold(0, TimeUnit.NANOSECONDS).explain().build();
+		Connection conn = mock(Connection.class);
+		slowLog.listener(conn, () -> null, null).onOperation(SQLListener.Phase.EXECUTE, "CREATE TABLE A (ID INT)", 1, 0, null);
+		verify(conn, never()).prepareStatement(anyString());
+		assertEquals(1, slowLog.entries().size());
+		assertNull(slowLog.entries().get(0).getPlan());
+	}
+
+	@Test
+	public void shouldExplainQueryWhenResultIsClosed() throws Exception {
+		SQLSlowLog slowLog = SQLSlowLog.builder().threshold(0, TimeUnit.NANOSECONDS).explain().build();
+		Connection conn = mock(Connection.class);
+		when(conn.getAutoCommit()).thenReturn(true);
+		when(conn.prepareStatement(anyString())).thenThrow(new SQLException("Unsupported"));
+		SQLListener listener = slowLog.listener(conn, () -> null, null);
+		listener.onOperation(SQLListener.Phase.EXECUTE, "SELECT 1", 1, -1, null);
+		verify(conn, never()).prepareStatement(anyString());
+		assertEquals(0, slowLog.entries().size());
+		listener.onOperation(SQLListener.Phase.FETCH, "SELECT 1", 1, 1, null);
+		verify(conn).prepareStatement("EXPLAIN SELECT 1");
+		List<SQLSlowLog.Entry> entries = slowLog.entries();
+		assertEquals(2, entries.size());
+		assertEquals(SQLListener.Phase.EXECUTE, entries.get(0).getPhase());
+		assertEquals(SQLListener.Phase.FETCH, entries.get(1).getPhase());
+	}
+
+	@Test
+	public void shouldNotExplainUpdatesWhenPrefixExecutesStatement() throws Exception {
+		SQLSlowLog slowLog = SQLSlowLog.builder().threshold(0, TimeUnit.NANOSECONDS).explain("EXPLAIN (ANALYZE, BUFFERS) ").build();
+		Connection conn = mock(Connection.class);
+		slowLog.listener(conn, () -> null, null).onOperation(SQLListener.Phase.EXECUTE, "UPDATE A SET ID = 1", 1, 1, null);
+		SQLListener listener = slowLog.listener(conn, () -> null, null);
+		listener.onOperation(SQLListener.Phase.EXECUTE, "WITH X AS (DELETE FROM A RETURNING ID) SELECT * FROM X", 1, -1, null);
+		listener.onOperation(SQLListener.Phase.FETCH, "WITH X AS (DELETE FROM A RETURNING ID) SELECT * FROM X", 1, 1, null);
+		verify(conn, never()).prepareStatement(anyString());
+		assertEquals(3, slowLog.entries().size());
+	}
+
+	@Test
+	public void shouldRollbackToSavepointWhenExplainFails() throws Exception {
+		SQLSlowLog slowLog = SQLSlowLog.builder().threshold(0, TimeUnit.NANOSECONDS).explain().build();
+		Connection conn = mock(Connection.class);
+		Savepoint savepoint = mock(Savepoint.class);
+		when(conn.getAutoCommit()).thenReturn(false);
+		when(conn.setSavepoint()).thenReturn(savepoint);
+		when(conn.prepareStatement(anyString())).thenThrow(new SQLException("Syntax error"));
+		slowLog.listener(conn, () -> null, null).onOperation(SQLListener.Phase.EXECUTE, "UPDATE A SET ID = 1", 1, 1, null);
+		verify(conn).rollback(savepoint);
+		verify(conn, never()).commit();
+		assertEquals(1, slowLog.entries().size());
+		assertNull(slowLog.entries().get(0).getPlan());
+	}
+
+	@Test
+	public void shouldThrowExceptionWhenSampleRateIsInvalid() {
+		exception.expect(IllegalArgumentException.class);
+		SQLSlowLog.builder().sampleRate(2);
+	}
+}
@@ -0,0 +1,113 @@
+package com.nextbreakpoint.sql;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.ExpectedException;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+
+import static org.junit.Assert.*;
+import static org.mockito.Mockito.*;
+
+public class SQLStatementCacheTest {
+	@Rule
+	public ExpectedException exception = ExpectedException.none();
+
+	@Test
+	public void shouldThrowExceptionWhenMaxSizeIsNotPositive() {
+		exception.expect(IllegalArgumentException.class);
+		SQLStatementCache.create(0);
+	}
+
+	@Test
+	public void shouldPrepareStatementOnlyOnce() throws SQLException {
+		Connection conn = mock(Connection.class);
+		PreparedStatement stmt = mock(PreparedStatement.class);
+		when(conn.prepareStatement("XXX")).thenReturn(stmt);
+		SQLStatementCache cache = SQLStatementCache.create(10);
+		assertSame(stmt, cache.prepareStatement(conn, "XXX"));
+		assertSame(stmt, cache.prepareStatement(conn, "XXX"));
+		verify(conn, times(1)).prepareStatement("XXX");
+		assertEquals(1, cache.hits());
+		assertEquals(1, cache.misses());
+	}
+
+	@Test
+	public void shouldCloseEvictedStatement() throws SQLException {
+		Connection conn = mock(Connection.class);
+		PreparedStatement stmt1 = mock(PreparedStatement.class);
+		PreparedStatement stmt2 = mock(PreparedStatement.class);
+		PreparedStatement stmt3 = mock(PreparedStatement.class);
+		when(conn.prepareStatement("XXX")).thenReturn(stmt1);
+		when(conn.prepareStatement("YYY")).thenReturn(stmt2);
+		when(conn.prepareStatement("ZZZ")).thenReturn(stmt3);
+		SQLStatementCache cache = SQLStatementCache.create(2);
+		cache.prepareStatement(conn, "XXX");
+		cache.prepareStatement(conn, "YYY");
+		cache.prepareStatement(conn, "XXX");
+		cache.prepareStatement(conn, "ZZZ");
+		verify(stmt2, times(1)).close();
+		verify(stmt1, never()).close();
+		assertEquals(2, cache.size(conn));
+		assertEquals(1, cache.evictions());
+	}
+
+	@Test
+	public void shouldCloseEvictedStatementWhenReleased() throws SQLException {
+		Connection conn = mock(Connection.class);
+		PreparedStatement stmt1 = mock(PreparedStatement.class);
+		PreparedStatement stmt2 = mock(PreparedStatement.class);
+		when(conn.prepareStatement("XXX")).thenReturn(stmt1);
+		when(conn.prepareStatement("YYY")).thenReturn(stmt2);
+		SQLStatementCache cache = SQLStatementCache.create(1);
+		PreparedStatement st = cache.acquire(conn, "XXX", SQLStatementOptions.defaults());
+		cache.prepareStatement(conn, "YYY");
+		verify(stmt1, never()).close();
+		cache.release(st);
+		verify(stmt1, times(1)).close();
+		assertEquals(1, cache.size(conn));
+	}
+
+	@Test
+	public void shouldNotShareStatementsBetweenConnections() throws SQLException {
+		Connection conn1 = mock(Connection.class);
+		Connection conn2 = mock(Connection.class);
+		PreparedStatement stmt1 = mock(PreparedStatement.class);
+		PreparedStatement stmt2 = mock(PreparedStatement.class);
+		when(conn1.prepareStatement("XXX")).thenReturn(stmt1);
+		when(conn2.prepareStatement("XXX")).thenReturn(stmt2);
+		SQLStatementCache cache = SQLStatementCache.create(10);
+		assertSame(stmt1, cache.prepareStatement(conn1, "XXX"));
+		assertSame(stmt2, cache.prepareStatement(conn2, "XXX"));
+		assertEquals(2, cache.misses());
+	}
+
+	@Test
+	public void shouldCloseStatementsOfConnection() throws SQLException {
+		Connection conn = mock(Connection.class);
+		PreparedStatement stmt = mock(PreparedStatement.class);
+		when(conn.prepareStatement("XXX")).thenReturn(stmt);
+		SQLStatementCache cache = SQLStatementCache.create(10);
+		cache.prepareStatement(conn, "XXX");
+		cache.close(conn);
+		verify(stmt, times(1)).close();
+		assertEquals(0, cache.size(conn));
+	}
+
+	@Test
+	public void shouldDiscardStatementsOfClosedConnection() throws SQLException {
+		Connection conn1 = mock(Connection.class);
+		Connection conn2 = mock(Connection.class);
+		PreparedStatement stmt = mock(PreparedStatement.class);
+		when(conn1.prepareStatement("XXX")).thenReturn(stmt);
+		when(conn2.prepareStatement("XXX")).thenReturn(mock(PreparedStatement.class));
+		SQLStatementCache cache = SQLStatementCache.create(10);
+		cache.prepareStatement(conn1, "XXX");
+		when(conn1.isClosed()).thenReturn(true);
+		cache.prepareStatement(conn2, "XXX");
+		verify(stmt, times(1)).close();
+		assertEquals(0, cache.size(conn1));
+	}
+}
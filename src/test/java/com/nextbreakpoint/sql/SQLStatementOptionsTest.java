@@ -0,0 +1,75 @@
+package com.nextbreakpoint.sql;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.ExpectedException;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+
+import static org.junit.Assert.*;
+import static org.mockito.Matchers.anyInt;
+import static org.mockito.Mockito.*;
+
+public class SQLStatementOptionsTest {
+	@Rule
+	public ExpectedException exception = ExpectedException.none();
+
+	@Test
+	public void shouldThrowExceptionWhenFetchSizeIsNegative() {
+		exception.expect(IllegalArgumentException.class);
+		SQLStatementOptions.builder().fetchSize(-1);
+	}
+
+	@Test
+	public void shouldUseDefaultsWhenOptionsAreNotDefined() throws SQLException {
+		Connection conn = mock(Connection.class);
+		PreparedStatement stmt = mock(PreparedStatement.class);
+		when(conn.prepareStatement("XXX")).thenReturn(stmt);
+		assertSame(stmt, SQLStatementOptions.defaults().prepareStatement(conn, "XXX"));
+		verify(stmt, never()).setFetchSize(anyInt());
+		verify(stmt, never()).setMaxRows(anyInt());
+	}
+
+	@Test
+	public void shouldApplyOptions() throws SQLException {
+		Connection conn = mock(Connection.class);
+		PreparedStatement stmt = mock(PreparedStatement.class);
+		when(conn.prepareStatement("XXX", ResultSet.TYPE_FORWARD_ONLY, ResultSet.CONCUR_READ_ONLY, ResultSet.CLOSE_CURSORS_AT_COMMIT)).thenReturn(stmt);
+		SQLStatementOptions options = SQLStatementOptions.builder().fetchSize(100).maxRows(1000).queryTimeout(5).forwardOnly().readOnly().closeCursorsAtCommit().build();
+		assertSame(stmt, options.prepareStatement(conn, "XXX"));
+		verify(stmt, times(1)).setFetchSize(100);
+		verify(stmt, times(1)).setMaxRows(1000);
+		verify(stmt, times(1)).setQueryTimeout(5);
+	}
+
+	@Test
+	public void shouldUseResultSetTypeAndConcurrency() throws SQLException {
+		Connection conn = mock(Connection.class);
+		PreparedStatement stmt = mock(PreparedStatement.class);
+		when(conn.prepareStatement("XXX", ResultSet.TYPE_SCROLL_INSENSITIVE, ResultSet.CONCUR_READ_ONLY)).thenReturn(stmt);
+		assertSame(stmt, SQLStatementOptions.builder().scrollInsensitive().build().prepareStatement(conn, "XXX"));
+	}
+
+	@Test
+	public void shouldCloseStatementWhenOptionCantBeApplied() throws SQLException {
+		Connection conn = mock(Connection.class);
+		PreparedStatement stmt = mock(PreparedStatement.class);
+		when(conn.prepareStatement("XXX")).thenReturn(stmt);
+		doThrow(SQLException.class).when(stmt).setFetchSize(10);
+		try {
+			SQLStatementOptions.builder().fetchSize(10).build().prepareStatement(conn, "XXX");
+			fail();
+		} catch (SQLException e) {
+			verify(stmt, times(1)).close();
+		}
+	}
+
+	@Test
+	public void shouldBeEqualWhenOptionsAreEqual() {
+		assertEquals(SQLStatementOptions.builder().fetchSize(10).build(), SQLStatementOptions.builder().fetchSize(10).build());
+		assertNotEquals(SQLStatementOptions.builder().fetchSize(10).build(), SQLStatementOptions.defaults());
+	}
+}
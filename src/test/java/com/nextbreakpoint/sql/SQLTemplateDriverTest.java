@@ -1,5 +1,6 @@
 package com.nextbreakpoint.sql;
 
+import com.nextbreakpoint.Try;
 import org.junit.Rule;
 import org.junit.Test;
 import org.junit.rules.ExpectedException;
@@ -7,8 +8,14 @@ import org.junit.rules.ExpectedException;
 import java.sql.Connection;
 import java.sql.PreparedStatement;
 import java.sql.ResultSet;
+import java.sql.ResultSetMetaData;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicBoolean;
 
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertTrue;
 import static org.mockito.Mockito.*;
 
 public class SQLTemplateDriverTest {
@@ -80,7 +87,7 @@ public class SQLTemplateDriverTest {
 		String stmtSql = "delete from test";
 		when(conn.prepareStatement(stmtSql)).thenReturn(stmt);
 		SQLTemplateDriver.create(conn).prepareStatement(stmtSql).get().executeUpdate(new Object[] { 1L }).get();
-		verify(stmt, times(1)).setObject(1, 1L);
+		verify(stmt, times(1)).setLong(1, 1L);
 		verify(stmt, times(1)).executeUpdate();
 	}
 
@@ -93,7 +100,7 @@ public class SQLTemplateDriverTest {
 		when(conn.prepareStatement(stmtSql)).thenReturn(stmt);
 		when(stmt.executeQuery()).thenReturn(rs);
 		SQLTemplateDriver.create(conn).prepareStatement(stmtSql).get().executeQuery(new Object[] { 1L }).get();
-		verify(stmt, times(1)).setObject(1, 1L);
+		verify(stmt, times(1)).setLong(1, 1L);
 		verify(stmt, times(1)).executeQuery();
 	}
 
@@ -118,4 +125,116 @@ public class SQLTemplateDriverTest {
 		SQLTemplateDriver.create(conn).prepareStatement(stmtSql).get().executeUpdate().get().rollback().get();
 		verify(conn, times(1)).rollback();
 	}
+
+	@Test
+	public void shouldCloseResultSetWhenFetch() throws Exception {
+		Connection conn = mock(Connection.class);
+		PreparedStatement stmt = mock(PreparedStatement.class);
+		ResultSet rs = mock(ResultSet.class);
+		String stmtSql = "select * from test";
+		when(conn.prepareStatement(stmtSql)).thenReturn(stmt);
+		when(stmt.executeQuery()).thenReturn(rs);
+		SQLTemplateDriver.create(conn).prepareStatement(stmtSql).get().executeQuery().get().fetch().get();
+		verify(rs, times(1)).close();
+		verify(stmt, never()).close();
+	}
+
+	@Test
+	public void shouldCloseLeakedStatementWhenLeakDetectionIsEnabled() throws Exception {
+		Connection conn = mock(Connection.class);
+		PreparedStatement stmt = mock(PreparedStatement.class);
+		String stmtSql = "select * from test";
+		when(conn.prepareStatement(stmtSql)).thenReturn(stmt);
+		AtomicBoolean closed = new AtomicBoolean();
+		doAnswer(invocation -> { closed.set(true); return null; }).when(stmt).close();
+		SQLTemplateDriver.setLeakDetection(true);
+		try {
+			SQLTemplateDriver.create(conn).prepareStatement(stmtSql).get();
+			for (int i = 0; i < 50 && !closed.get(); i++) {
+				System.gc();
+				Thread.sleep(10);
+				SQLTemplateDriver.create(conn).close();
+			}
+			verify(stmt, times(1)).close();
+		} finally {
+			SQLTemplateDriver.setLeakDetection(false);
+		}
+	}
+
+	@Test
+	public void shouldCloseLeakedStatementOfPagedResultWhenLeakDetectionIsEnabled() throws Exception {
+		Connection conn = mock(Connection.class);
+		PreparedStatement stmt = mock(PreparedStatement.class);
+		ResultSet rs = mock(ResultSet.class);
+		String stmtSql = "select * from test where id > ?";
+		when(conn.prepareStatement(stmtSql)).thenReturn(stmt);
+		when(stmt.executeQuery()).thenReturn(rs);
+		AtomicBoolean closed = new AtomicBoolean();
+		doAnswer(invocation -> { closed.set(true); return null; }).when(stmt).close();
+		SQLTemplateDriver.setLeakDetection(true);
+		try {
+			SQLTemplateDriver.create(conn).prepareStatement(stmtSql).get().applyQueryPages(null, SQLKeyset.builder().start(0).build());
+			for (int i = 0; i < 50 && !closed.get(); i++) {
+				System.gc();
+				Thread.sleep(10);
+				SQLTemplateDriver.create(conn).close();
+			}
+			verify(stmt, times(1)).close();
+		} finally {
+			SQLTemplateDriver.setLeakDetection(false);
+		}
+	}
+
+	@Test
+	public void shouldMapRows() throws Exception {
+		Connection conn = mock(Connection.class);
+		PreparedStatement stmt = mock(PreparedStatement.class);
+		ResultSet rs = mock(ResultSet.class);
+		String stmtSql = "select * from test";
+		when(conn.prepareStatement(stmtSql)).thenReturn(stmt);
+		when(stmt.executeQuery()).thenReturn(rs);
+		when(rs.next()).thenReturn(true, false);
+		when(rs.getDouble(1)).thenReturn(1.5);
+		List<Double> values = SQLTemplateDriver.create(conn).prepareStatement(stmtSql).get().executeQuery().get().map(row -> row.getDouble(1)).get();
+		assertEquals(1, values.size());
+		assertEquals(1.5, values.get(0), 0.0);
+	}
+
+	@Test
+	public void shouldConvertFetchedValuesLikeResultSet() throws Exception {
+		Connection conn = mock(Connection.class);
+		PreparedStatement stmt = mock(PreparedStatement.class);
+		ResultSet rs = mock(ResultSet.class);
+		ResultSetMetaData metadata = mock(ResultSetMetaData.class);
+		String stmtSql = "select * from test";
+		when(conn.prepareStatement(stmtSql)).thenReturn(stmt);
+		when(stmt.executeQuery()).thenReturn(rs);
+		when(rs.getMetaData()).thenReturn(metadata);
+		when(metadata.getColumnCount()).thenReturn(3);
+		when(rs.next()).thenReturn(true, false);
+		when(rs.getObject(1)).thenReturn(" 5 ");
+		when(rs.getObject(2)).thenReturn(Boolean.TRUE);
+		when(rs.getObject(3)).thenReturn("1.5");
+		List<Object[]> values = SQLTemplateDriver.create(conn).prepareStatement(stmtSql).get().executeQuery().get().fetch().get()
+			.map(row -> new Object[] { row.getInt(1), row.getLong(2), row.getDouble(3) }).get();
+		assertArrayEquals(new Object[] { 5, 1L, 1.5 }, values.get(0));
+	}
+
+	@Test
+	public void shouldThrowExceptionWhenFetchedValueIsNotNumber() throws Exception {
+		Connection conn = mock(Connection.class);
+		PreparedStatement stmt = mock(PreparedStatement.class);
+		ResultSet rs = mock(ResultSet.class);
+		ResultSetMetaData metadata = mock(ResultSetMetaData.class);
+		String stmtSql = "select * from test";
+		when(conn.prepareStatement(stmtSql)).thenReturn(stmt);
+		when(stmt.executeQuery()).thenReturn(rs);
+		when(rs.getMetaData()).thenReturn(metadata);
+		when(metadata.getColumnCount()).thenReturn(1);
+		when(rs.next()).thenReturn(true, false);
+		when(rs.getObject(1)).thenReturn("A");
+		Try<List<Integer>, SQLTemplateException> result = SQLTemplateDriver.create(conn).prepareStatement(stmtSql).get().executeQuery().get().fetch().get()
+			.map(row -> row.getInt(1));
+		assertTrue(result.isFailure());
+	}
 }
@@ -4,10 +4,20 @@ import com.nextbreakpoint.Try;
 import org.junit.*;
 import org.junit.rules.ExpectedException;
 
+import java.io.ByteArrayInputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
 import java.sql.Connection;
 import java.sql.DriverManager;
 import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Iterator;
 import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
 
 import static org.junit.Assert.*;
 
@@ -76,6 +86,400 @@ public class SQLTemplateIT {
 		assertTrue(result.isFailure());
 	}
 
+	@Test
+	public void shouldStreamTwoRows() throws Exception {
+		SQLTemplate template = templateWithValidStatement();
+		Try<Stream<Object[]>, SQLTemplateException> result = template.stream(conn);
+		try (Stream<Object[]> stream = result.get()) {
+			assertEquals(2, stream.count());
+		}
+	}
+
+	@Test
+	public void shouldPublishTwoRows() throws Exception {
+		SQLTemplate template = templateWithValidStatement();
+		List<Object[]> rows = new ArrayList<>();
+		boolean[] completed = new boolean[1];
+		template.publisher(conn).get().subscribe(new SQLPublisher.Subscriber<Object[]>() {
+			@Override
+			public void onSubscribe(SQLPublisher.Subscription subscription) {
+				subscription.request(Long.MAX_VALUE);
+			}
+
+			@Override
+			public void onNext(Object[] item) {
+				rows.add(item);
+			}
+
+			@Override
+			public void onError(Throwable throwable) {
+			}
+
+			@Override
+			public void onComplete() {
+				completed[0] = true;
+			}
+		});
+		assertEquals(2, rows.size());
+		assertTrue(completed[0]);
+	}
+
+	@Test
+	public void shouldInsertRowsInBatches() throws Exception {
+		SQLTemplate template = SQLTemplate.builder()
+			.noAutoCommit()
+			.statement("CREATE TABLE IF NOT EXISTS TEST(ID INT PRIMARY KEY, NAME VARCHAR(255) DEFAULT '')")
+			.update()
+			.statement("DELETE TEST")
+			.update()
+			.statement("INSERT INTO TEST (ID, NAME) VALUES (?, ?)")
+			.batch(Arrays.asList(new Object[] { 1, "A" }, new Object[] { 2, "B" }, new Object[] { 3, "C" }), 2)
+			.commit()
+			.build();
+		Try<List<Object[]>, SQLTemplateException> result = template.apply(conn);
+		assertEquals(3, result.get().size());
+		assertEquals(3, templateWithSelectStatement().apply(conn).get().size());
+	}
+
+	@Test
+	public void shouldMapRowsToObjects() throws Exception {
+		templateWithValidStatement().apply(conn);
+		Try<List<String>, SQLTemplateException> result = templateWithSelectStatement().apply(conn, row -> row.getInt(1) + row.getString(2));
+		assertEquals(Arrays.asList("1A", "2B"), result.get());
+	}
+
+	@Test
+	public void shouldReturnRowsOfAllPartitionsInOrder() throws Exception {
+		templateWithValidStatement().apply(conn);
+		SQLTemplate template = SQLTemplate.builder()
+			.statement("SELECT NAME FROM TEST WHERE ID >= ? AND ID < ? ORDER BY ID")
+			.queryPartition()
+			.build();
+		Try<Stream<Object[]>, SQLTemplateException> result = template.applyParallel(this::newConnection, SQLPartitioner.ranges(0, 4, 4));
+		assertEquals(Arrays.asList("A", "B"), result.get().map(columns -> columns[0]).collect(Collectors.toList()));
+	}
+
+	@Test
+	public void shouldApplySameTemplateWithDifferentArguments() throws Exception {
+		templateWithValidStatement().apply(conn);
+		SQLTemplate template = SQLTemplate.builder()
+			.statement("SELECT NAME FROM TEST WHERE ID = ?")
+			.query(SQLParam.of(0))
+			.build();
+		assertEquals("A", template.apply(conn, 1).get().get(0)[0]);
+		assertEquals("B", template.apply(conn, 2).get().get(0)[0]);
+	}
+
+	@Test
+	public void shouldRecordMetricsOfStatements() throws Exception {
+		templateWithValidStatement().apply(conn);
+		SQLMetrics metrics = SQLMetrics.create();
+		SQLTemplate template = SQLTemplate.builder()
+			.listener(metrics)
+			.noAutoCommit()
+			.statement("UPDATE TEST SET NAME = ? WHERE ID = ?")
+			.update("X", 1)
+			.commit()
+			.statement("SELECT * FROM TEST")
+			.query()
+			.build();
+		assertEquals(2, template.apply(conn).get().size());
+		assertEquals(1, metrics.histogram("UPDATE TEST SET NAME = ? WHERE ID = ?", SQLListener.Phase.EXECUTE).rows());
+		assertEquals(1, metrics.histogram("COMMIT", SQLListener.Phase.COMMIT).count());
+		assertEquals(1, metrics.histogram("SELECT * FROM TEST", SQLListener.Phase.EXECUTE).count());
+		assertEquals(2, metrics.histogram("SELECT * FROM TEST", SQLListener.Phase.FETCH).rows());
+	}
+
+	@Test
+	public void shouldRecordSlowStatementsWithPlan() throws Exception {
+		templateWithValidStatement().apply(conn);
+		SQLSlowLog slowLog = SQLSlowLog.builder().threshold(0, TimeUnit.NANOSECONDS).explain().build();
+		SQLTemplate template = SQLTemplate.builder()
+			.slowLog(slowLog)
+			.statement("SELECT NAME FROM TEST WHERE NAME = ?")
+			.query("A")
+			.build();
+		assertEquals(1, template.apply(conn).get().size());
+		List<SQLSlowLog.Entry> entries = slowLog.entries();
+		assertEquals(2, entries.size());
+		assertEquals(SQLListener.Phase.EXECUTE, entries.get(0).getPhase());
+		assertEquals(SQLListener.Phase.FETCH, entries.get(1).getPhase());
+		assertEquals(1, entries.get(1).getRows());
+		assertArrayEquals(new String[] { "String" }, entries.get(0).getParameterTypes());
+		assertArrayEquals(new int[] { 1 }, entries.get(0).getParameterSizes());
+		assertNotNull(entries.get(0).getPlan());
+	}
+
+	@Test
+	public void shouldReadCachedRowsUntilTableIsUpdated() throws Exception {
+		templateWithValidStatement().apply(conn);
+		SQLResultCache cache = SQLResultCache.create(10, 1, TimeUnit.HOURS);
+		SQLTemplate query = SQLTemplate.builder()
+			.resultCache(cache)
+			.statement("SELECT NAME FROM TEST WHERE ID = ?")
+			.query(SQLParam.of(0))
+			.build();
+		SQLTemplate update = SQLTemplate.builder()
+			.resultCache(cache)
+			.statement("UPDATE TEST SET NAME = ? WHERE ID = ?")
+			.update("C", 1)
+			.build();
+		assertEquals("A", query.apply(conn, 1).get().get(0)[0]);
+		assertEquals("A", query.apply(conn, 1).get().get(0)[0]);
+		assertEquals(1, cache.hits());
+		update.apply(conn);
+		assertEquals("C", query.apply(conn, 1).get().get(0)[0]);
+		assertEquals(2, cache.misses());
+	}
+
+	@Test
+	public void shouldConvertCachedValuesLikeResultSet() throws Exception {
+		templateWithValidStatement().apply(conn);
+		SQLResultCache cache = SQLResultCache.create(10, 1, TimeUnit.HOURS);
+		SQLTemplate query = SQLTemplate.builder()
+			.resultCache(cache)
+			.statement("SELECT ID, '5' FROM TEST WHERE ID = 1")
+			.query()
+			.build();
+		assertEquals(Arrays.asList(5), query.apply(conn, row -> row.getInt(2)).get());
+		assertEquals(Arrays.asList(5), query.apply(conn, row -> row.getInt(2)).get());
+		assertEquals(1, cache.hits());
+	}
+
+	@Test
+	public void shouldInvalidateTablesWrittenByOpenTransactionWhenDriverIsClosed() throws Exception {
+		templateWithValidStatement().apply(conn);
+		SQLResultCache cache = SQLResultCache.create(10, 1, TimeUnit.HOURS);
+		SQLTemplate query = SQLTemplate.builder()
+			.resultCache(cache)
+			.statement("SELECT NAME FROM TEST WHERE ID = ?")
+			.query(SQLParam.of(0))
+			.build();
+		try (Connection other = newConnection()) {
+			SQLTemplateDriver driver = SQLTemplateDriver.create(conn).noAutoCommit().get().resultCache(cache).get();
+			driver.prepareStatement("UPDATE TEST SET NAME = ? WHERE ID = ?").get().executeUpdate(new Object[] { "C", 1 }).get();
+			assertEquals("A", query.apply(other, 1).get().get(0)[0]);
+			driver.close();
+			conn.commit();
+			assertEquals("C", query.apply(other, 1).get().get(0)[0]);
+		}
+	}
+
+	@Test
+	public void shouldNotShareCachedRowsWithCallers() throws Exception {
+		templateWithValidStatement().apply(conn);
+		SQLResultCache cache = SQLResultCache.create(10, 1, TimeUnit.HOURS);
+		SQLTemplate query = SQLTemplate.builder()
+			.resultCache(cache)
+			.statement("SELECT NAME FROM TEST WHERE ID = ?")
+			.query(SQLParam.of(0))
+			.build();
+		query.apply(conn, 1).get().get(0)[0] = "X";
+		query.apply(conn, 1).get().get(0)[0] = "Y";
+		assertEquals("A", query.apply(conn, 1).get().get(0)[0]);
+		assertEquals(2, cache.hits());
+	}
+
+	@Test
+	public void shouldNotCacheRowsWrittenByRolledBackTransaction() throws Exception {
+		templateWithValidStatement().apply(conn);
+		SQLResultCache cache = SQLResultCache.create(10, 1, TimeUnit.HOURS);
+		SQLTemplate query = SQLTemplate.builder()
+			.resultCache(cache)
+			.statement("SELECT NAME FROM TEST WHERE ID = ?")
+			.query(SQLParam.of(0))
+			.build();
+		SQLTemplate updateAndRollback = SQLTemplate.builder()
+			.resultCache(cache)
+			.noAutoCommit()
+			.statement("UPDATE TEST SET NAME = ? WHERE ID = ?")
+			.update("C", 1)
+			.statement("SELECT NAME FROM TEST WHERE ID = ?")
+			.query(1)
+			.rollback()
+			.autoCommit()
+			.build();
+		try (Connection other = newConnection()) {
+			assertEquals("A", query.apply(other, 1).get().get(0)[0]);
+			updateAndRollback.apply(conn);
+			assertEquals("A", query.apply(other, 1).get().get(0)[0]);
+			assertEquals("A", query.apply(conn, 1).get().get(0)[0]);
+			assertEquals(2, cache.misses());
+			assertEquals(1, cache.hits());
+		}
+	}
+
+	@Test
+	public void shouldInsertRowsWithRewrittenStatements() throws Exception {
+		SQLMetrics metrics = SQLMetrics.create();
+		SQLTemplate template = SQLTemplate.builder()
+			.noAutoCommit()
+			.statement("CREATE TABLE IF NOT EXISTS TEST(ID INT PRIMARY KEY, NAME VARCHAR(255) DEFAULT '')")
+			.update()
+			.statement("DELETE TEST")
+			.update()
+			.listener(metrics)
+			.rewriteInserts(2)
+			.statement("INSERT INTO TEST (ID, NAME) VALUES (?, ?)")
+			.batch(Arrays.asList(new Object[] { 1, "A" }, new Object[] { 2, "B" }, new Object[] { 3, "C" }))
+			.commit()
+			.build();
+		Try<List<Object[]>, SQLTemplateException> result = template.apply(conn);
+		assertEquals(Arrays.asList(1, 1, 1), result.get().stream().map(columns -> ((Number) columns[0]).intValue()).collect(Collectors.toList()));
+		assertEquals(3, templateWithSelectStatement().apply(conn).get().size());
+		assertEquals(1, metrics.histogram("INSERT INTO TEST (ID, NAME) VALUES (?, ?), (?, ?)", SQLListener.Phase.EXECUTE).count());
+		assertEquals(1, metrics.histogram("INSERT INTO TEST (ID, NAME) VALUES (?, ?)", SQLListener.Phase.EXECUTE).count());
+	}
+
+	@Test
+	public void shouldLoadRowsFromStream() throws Exception {
+		SQLBulkLoader loader = SQLBulkLoader.builder()
+			.skipHeader()
+			.batchSize(2)
+			.commitInterval(2)
+			.build();
+		SQLTemplate template = SQLTemplate.builder()
+			.noAutoCommit()
+			.statement("CREATE TABLE IF NOT EXISTS TEST(ID INT PRIMARY KEY, NAME VARCHAR(255) DEFAULT '')")
+			.update()
+			.statement("DELETE TEST")
+			.update()
+			.statement("INSERT INTO TEST (ID, NAME) VALUES (?, ?)")
+			.load(loader, SQLBulkLoader.stream(new ByteArrayInputStream("ID,NAME\n1,A\n2,B\n3,C\n".getBytes(StandardCharsets.UTF_8))))
+			.commit()
+			.build();
+		Try<List<Object[]>, SQLTemplateException> result = template.apply(conn);
+		assertEquals(3L, result.get().get(0)[0]);
+		assertEquals(Arrays.asList("A", "B", "C"), templateWithSelectStatement().apply(conn).get().stream().map(columns -> columns[1]).collect(Collectors.toList()));
+	}
+
+	@Test
+	public void shouldExportRowsToFile() throws Exception {
+		templateWithValidStatement().apply(conn);
+		Path file = Files.createTempFile("export", ".csv");
+		try {
+			SQLTemplate template = SQLTemplate.builder()
+				.statement("SELECT ID, NAME FROM TEST ORDER BY ID")
+				.query()
+				.build();
+			Try<Long, SQLTemplateException> result = template.export(conn, SQLExporter.builder().header("ID", "NAME").build(), file);
+			assertEquals(Long.valueOf(2), result.get());
+			assertEquals(Arrays.asList("ID,NAME", "1,A", "2,B"), Files.readAllLines(file));
+		} finally {
+			Files.delete(file);
+		}
+	}
+
+	@Test
+	public void shouldReadRowsByPages() throws Exception {
+		templateWithValidStatement().apply(conn);
+		SQLTemplate template = SQLTemplate.builder()
+			.statement("SELECT ID, NAME FROM TEST WHERE ID > ? ORDER BY ID")
+			.queryPages(SQLKeyset.builder().pageSize(1).start(0).build())
+			.build();
+		try (Stream<Object[]> stream = template.stream(conn).get()) {
+			assertEquals(Arrays.asList("A", "B"), stream.map(columns -> columns[1]).collect(Collectors.toList()));
+		}
+	}
+
+	@Test
+	public void shouldThrowExceptionFromStreamWhenRowCantBeRead() throws Exception {
+		SQLTemplate template = SQLTemplate.builder()
+			.statement("SELECT X FROM SYSTEM_RANGE(1, 10)")
+			.query()
+			.build();
+		try (Stream<Object[]> stream = template.stream(conn).get()) {
+			Iterator<Object[]> iterator = stream.iterator();
+			assertEquals(1L, ((Number) iterator.next()[0]).longValue());
+			conn.close();
+			exception.expect(SQLTemplateUncheckedException.class);
+			while (iterator.hasNext()) {
+				iterator.next();
+			}
+		}
+	}
+
+	@Test
+	public void shouldThrowExceptionFromStreamWhenPageCantBeRead() throws Exception {
+		templateWithValidStatement().apply(conn);
+		SQLTemplate template = SQLTemplate.builder()
+			.statement("SELECT ID, CASE WHEN ID > 1 THEN CAST(NAME AS INT) ELSE 0 END FROM TEST WHERE ID > ? ORDER BY ID")
+			.queryPages(SQLKeyset.builder().pageSize(1).start(0).build())
+			.build();
+		try (Stream<Object[]> stream = template.stream(conn).get()) {
+			exception.expect(SQLTemplateUncheckedException.class);
+			stream.forEach(columns -> assertEquals(1, columns[0]));
+		}
+	}
+
+	@Test
+	public void shouldReadRowsByPagesWithPrefetch() throws Exception {
+		templateWithValidStatement().apply(conn);
+		SQLTemplate template = SQLTemplate.builder()
+			.statement("SELECT ID, NAME FROM TEST WHERE NAME <> ? AND ID > ? ORDER BY ID")
+			.queryPages(SQLKeyset.builder().pageSize(1).start(0).prefetch().build(), SQLParam.of(0))
+			.build();
+		Try<List<Object[]>, SQLTemplateException> result = template.apply(conn, "C");
+		assertEquals(Arrays.asList("A", "B"), result.get().stream().map(columns -> columns[1]).collect(Collectors.toList()));
+	}
+
+	@Test
+	public void shouldCommitEveryNumberOfUpdates() throws Exception {
+		templateWithValidStatement().apply(conn);
+		SQLTemplate template = SQLTemplate.builder()
+			.commitPolicy(SQLCommitPolicy.builder().everyUpdates(2).build())
+			.statement("INSERT INTO TEST (ID, NAME) VALUES (?, ?)")
+			.batch(Arrays.asList(new Object[] { 3, "C" }, new Object[] { 4, "D" }, new Object[] { 5, "E" }), 1)
+			.rollback()
+			.build();
+		assertFalse(template.apply(conn).isFailure());
+		assertEquals(Arrays.asList("A", "B", "C", "D"), templateWithSelectStatement().apply(conn).get().stream().map(columns -> columns[1]).collect(Collectors.toList()));
+	}
+
+	@Test
+	public void shouldRollbackToSavepointWhenUpdateFails() throws Exception {
+		templateWithValidStatement().apply(conn);
+		SQLTemplate template = SQLTemplate.builder()
+			.commitPolicy(SQLCommitPolicy.builder().everyUpdates(10).savepoints(1).build())
+			.statement("INSERT INTO TEST (ID, NAME) VALUES (?, ?)")
+			.update(3, "C")
+			.update(1, "X")
+			.build();
+		assertTrue(template.apply(conn).isFailure());
+		assertEquals(Arrays.asList("A", "B", "C"), templateWithSelectStatement().apply(conn).get().stream().map(columns -> columns[1]).collect(Collectors.toList()));
+		conn.rollback();
+		assertEquals(Arrays.asList("A", "B"), templateWithSelectStatement().apply(conn).get().stream().map(columns -> columns[1]).collect(Collectors.toList()));
+	}
+
+	@Test
+	public void shouldCommitRowsBeforeSavepointWhenUpdateFails() throws Exception {
+		templateWithValidStatement().apply(conn);
+		SQLTemplate template = SQLTemplate.builder()
+			.commitPolicy(SQLCommitPolicy.builder().everyUpdates(10).savepoints(1).commitOnFailure().build())
+			.statement("INSERT INTO TEST (ID, NAME) VALUES (?, ?)")
+			.update(3, "C")
+			.update(1, "X")
+			.build();
+		assertTrue(template.apply(conn).isFailure());
+		conn.rollback();
+		assertEquals(Arrays.asList("A", "B", "C"), templateWithSelectStatement().apply(conn).get().stream().map(columns -> columns[1]).collect(Collectors.toList()));
+	}
+
+	private Connection newConnection() {
+		try {
+			return DriverManager.getConnection("jdbc:h2:~/test", "sa", "");
+		} catch (SQLException e) {
+			throw new IllegalStateException(e);
+		}
+	}
+
+	private SQLTemplate templateWithSelectStatement() {
+		return SQLTemplate.builder()
+			.statement("SELECT * FROM TEST")
+			.query()
+			.build();
+	}
+
 	private SQLTemplate templateWithValidStatement() {
 		return SQLTemplate.builder()
 			.noAutoCommit() 
@@ -6,10 +6,24 @@ import org.junit.Test;
 import org.junit.rules.ExpectedException;
 
 import java.sql.*;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Iterator;
 import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
 
 import static org.junit.Assert.*;
 import static org.mockito.Matchers.any;
+import static org.mockito.Matchers.anyInt;
+import static org.mockito.Matchers.anyString;
 import static org.mockito.Mockito.*;
 
 public class SQLTemplateTest {
@@ -87,8 +101,8 @@ public class SQLTemplateTest {
 		when(conn.prepareStatement("XXX")).thenReturn(stmt);
 		when(stmt.executeUpdate()).thenReturn(1);
 		SQLTemplate.builder().statement("XXX").update(new String[] {"X", "Y"}).build().apply(conn);
-		verify(stmt, times(1)).setObject(1, "X");
-		verify(stmt, times(1)).setObject(2, "Y");
+		verify(stmt, times(1)).setString(1, "X");
+		verify(stmt, times(1)).setString(2, "Y");
 		verify(stmt, times(1)).executeUpdate();
 	}
 
@@ -100,8 +114,8 @@ public class SQLTemplateTest {
 		when(conn.prepareStatement("XXX")).thenReturn(stmt);
 		when(stmt.executeQuery()).thenReturn(rs);
 		SQLTemplate.builder().statement("XXX").query(new String[] {"X", "Y"}).build().apply(conn);
-		verify(stmt, times(1)).setObject(1, "X");
-		verify(stmt, times(1)).setObject(2, "Y");
+		verify(stmt, times(1)).setString(1, "X");
+		verify(stmt, times(1)).setString(2, "Y");
 		verify(stmt, times(1)).executeQuery();
 	}
 
@@ -200,10 +214,630 @@ public class SQLTemplateTest {
 	public void shouldReturnFailureWhenPrepareStatementThrowsException() throws Exception {
 		Connection conn = mock(Connection.class);
 		PreparedStatement stmt = mock(PreparedStatement.class);
-		doThrow(SQLException.class).when(stmt).setObject(any(Integer.class), any(Object.class));
+		doThrow(SQLException.class).when(stmt).setString(anyInt(), anyString());
 		String stmtSql = "select * from test where id=?";
 		when(conn.prepareStatement(stmtSql)).thenReturn(stmt);
 		Try<List<Object[]>, SQLTemplateException> template = SQLTemplate.builder().statement(stmtSql).query(new String[] { "X" }).build().apply(conn);
 		assertTrue(template.isFailure());
 	}
+
+	@Test
+	public void shouldReturnRowsWhenStreamQuery() throws Exception {
+		Connection conn = mock(Connection.class);
+		PreparedStatement stmt = mock(PreparedStatement.class);
+		ResultSet rs = mock(ResultSet.class);
+		ResultSetMetaData meta = mock(ResultSetMetaData.class);
+		String stmtSql = "select * from test";
+		when(conn.prepareStatement(stmtSql)).thenReturn(stmt);
+		when(stmt.executeQuery()).thenReturn(rs);
+		when(rs.next()).thenReturn(true, true, false);
+		when(meta.getColumnCount()).thenReturn(1);
+		when(rs.getMetaData()).thenReturn(meta);
+		when(rs.getObject(1)).thenReturn("a", "b");
+		Try<Stream<Object[]>, SQLTemplateException> result = SQLTemplate.builder().statement(stmtSql).query().build().stream(conn);
+		assertFalse(result.isFailure());
+		try (Stream<Object[]> stream = result.get()) {
+			List<Object> values = stream.map(columns -> columns[0]).collect(Collectors.toList());
+			assertEquals(2, values.size());
+			assertEquals("a", values.get(0));
+			assertEquals("b", values.get(1));
+		}
+	}
+
+	@Test
+	public void shouldNotReadRowsBeforeStreamIsConsumed() throws Exception {
+		Connection conn = mock(Connection.class);
+		PreparedStatement stmt = mock(PreparedStatement.class);
+		ResultSet rs = mock(ResultSet.class);
+		String stmtSql = "select * from test";
+		when(conn.prepareStatement(stmtSql)).thenReturn(stmt);
+		when(stmt.executeQuery()).thenReturn(rs);
+		SQLTemplate.builder().statement(stmtSql).query().build().stream(conn).get();
+		verify(rs, never()).next();
+	}
+
+	@Test
+	public void shouldCloseResultSetAndStatementWhenStreamIsClosed() throws Exception {
+		Connection conn = mock(Connection.class);
+		PreparedStatement stmt = mock(PreparedStatement.class);
+		ResultSet rs = mock(ResultSet.class);
+		String stmtSql = "select * from test";
+		when(conn.prepareStatement(stmtSql)).thenReturn(stmt);
+		when(stmt.executeQuery()).thenReturn(rs);
+		SQLTemplate.builder().statement(stmtSql).query().build().stream(conn).get().close();
+		verify(rs, times(1)).close();
+		verify(stmt, times(1)).close();
+	}
+
+	@Test
+	public void shouldCallExecuteBatchEveryBatchSizeRows() throws SQLException {
+		Connection conn = mock(Connection.class);
+		PreparedStatement stmt = mock(PreparedStatement.class);
+		when(conn.prepareStatement("XXX")).thenReturn(stmt);
+		when(stmt.executeBatch()).thenReturn(new int[] { 1, 1 }, new int[] { 1 });
+		List<Object[]> rows = Arrays.asList(new Object[] { "X" }, new Object[] { "Y" }, new Object[] { "Z" });
+		Try<List<Object[]>, SQLTemplateException> result = SQLTemplate.builder().statement("XXX").batch(rows, 2).build().apply(conn);
+		verify(stmt, times(3)).addBatch();
+		verify(stmt, times(2)).executeBatch();
+		verify(stmt, never()).executeUpdate();
+		assertEquals(3, result.get().size());
+		assertEquals(1L, result.get().get(2)[0]);
+	}
+
+	@Test
+	public void shouldThrowExceptionWhenBatchSizeIsNotPositive() {
+		exception.expect(IllegalArgumentException.class);
+		SQLTemplate.builder().statement("XXX").batch(Arrays.<Object[]>asList(), 0);
+	}
+
+	@Test
+	public void shouldReuseCachedStatement() throws SQLException {
+		Connection conn = mock(Connection.class);
+		PreparedStatement stmt = mock(PreparedStatement.class);
+		when(conn.prepareStatement("XXX")).thenReturn(stmt);
+		SQLStatementCache cache = SQLStatementCache.create(10);
+		SQLTemplate template = SQLTemplate.builder().statementCache(cache).statement("XXX").update().statement("XXX").update().build();
+		template.apply(conn);
+		template.apply(conn);
+		verify(conn, times(1)).prepareStatement("XXX");
+		verify(stmt, times(4)).executeUpdate();
+		verify(stmt, never()).close();
+		assertEquals(3, cache.hits());
+	}
+
+	@Test
+	public void shouldCloseResultSetAndStatementWhenApplyCompletes() throws Exception {
+		Connection conn = mock(Connection.class);
+		PreparedStatement stmt = mock(PreparedStatement.class);
+		ResultSet rs = mock(ResultSet.class);
+		when(conn.prepareStatement("XXX")).thenReturn(stmt);
+		when(stmt.executeQuery()).thenReturn(rs);
+		SQLTemplate.builder().statement("XXX").query().build().apply(conn);
+		verify(rs, times(1)).close();
+		verify(stmt, times(1)).close();
+	}
+
+	@Test
+	public void shouldClosePreviousStatementWhenNextStatementIsPrepared() throws Exception {
+		Connection conn = mock(Connection.class);
+		PreparedStatement stmt1 = mock(PreparedStatement.class);
+		PreparedStatement stmt2 = mock(PreparedStatement.class);
+		when(conn.prepareStatement("XXX")).thenReturn(stmt1);
+		when(conn.prepareStatement("YYY")).thenReturn(stmt2);
+		SQLTemplateDriver driver = SQLTemplateDriver.create(conn);
+		driver.prepareStatement("XXX").get().executeUpdate().get().prepareStatement("YYY").get();
+		verify(stmt1, times(1)).close();
+		verify(stmt2, never()).close();
+		driver.close();
+		verify(stmt2, times(1)).close();
+	}
+
+	@Test
+	public void shouldCloseStatementWhenApplyFails() throws Exception {
+		Connection conn = mock(Connection.class);
+		PreparedStatement stmt = mock(PreparedStatement.class);
+		when(conn.prepareStatement("XXX")).thenReturn(stmt);
+		when(stmt.executeUpdate()).thenThrow(SQLException.class);
+		Try<List<Object[]>, SQLTemplateException> result = SQLTemplate.builder().statement("XXX").update().build().apply(conn);
+		assertTrue(result.isFailure());
+		verify(stmt, times(1)).close();
+	}
+
+	@Test
+	public void shouldReadMetadataOnlyOnceWhenExecuteQuery() throws Exception {
+		Connection conn = mock(Connection.class);
+		PreparedStatement stmt = mock(PreparedStatement.class);
+		ResultSet rs = mock(ResultSet.class);
+		ResultSetMetaData meta = mock(ResultSetMetaData.class);
+		when(conn.prepareStatement("XXX")).thenReturn(stmt);
+		when(stmt.executeQuery()).thenReturn(rs);
+		when(rs.next()).thenReturn(true, true, true, false);
+		when(meta.getColumnCount()).thenReturn(2);
+		when(rs.getMetaData()).thenReturn(meta);
+		Try<List<Object[]>, SQLTemplateException> result = SQLTemplate.builder().statement("XXX").query().build().apply(conn);
+		assertEquals(3, result.get().size());
+		verify(rs, times(1)).getMetaData();
+	}
+
+	@Test
+	public void shouldPassRowsToCallback() throws Exception {
+		Connection conn = mock(Connection.class);
+		PreparedStatement stmt = mock(PreparedStatement.class);
+		ResultSet rs = mock(ResultSet.class);
+		when(conn.prepareStatement("XXX")).thenReturn(stmt);
+		when(stmt.executeQuery()).thenReturn(rs);
+		when(rs.next()).thenReturn(true, true, false);
+		when(rs.getLong(1)).thenReturn(1L, 2L);
+		long[] sum = new long[1];
+		Try<Long, SQLTemplateException> result = SQLTemplate.builder().statement("XXX").query().build().forEachRow(conn, row -> sum[0] += row.getLong(1));
+		assertEquals(Long.valueOf(2), result.get());
+		assertEquals(3L, sum[0]);
+		verify(rs, never()).getObject(1);
+		verify(rs, times(1)).close();
+	}
+
+	@Test
+	public void shouldReturnFailureWhenCallbackThrowsException() throws Exception {
+		Connection conn = mock(Connection.class);
+		PreparedStatement stmt = mock(PreparedStatement.class);
+		ResultSet rs = mock(ResultSet.class);
+		when(conn.prepareStatement("XXX")).thenReturn(stmt);
+		when(stmt.executeQuery()).thenReturn(rs);
+		when(rs.next()).thenReturn(true, false);
+		Try<Long, SQLTemplateException> result = SQLTemplate.builder().statement("XXX").query().build().forEachRow(conn, row -> { throw new Exception(); });
+		assertTrue(result.isFailure());
+	}
+
+	@Test
+	public void shouldPassUpdateCountToCallback() throws Exception {
+		Connection conn = mock(Connection.class);
+		PreparedStatement stmt = mock(PreparedStatement.class);
+		when(conn.prepareStatement("XXX")).thenReturn(stmt);
+		when(stmt.executeUpdate()).thenReturn(5);
+		long[] count = new long[1];
+		SQLTemplate.builder().statement("XXX").update().build().forEachRow(conn, row -> count[0] = row.getLong(1)).get();
+		assertEquals(5L, count[0]);
+	}
+
+	@Test
+	public void shouldMapRowsUsingTypedGetters() throws Exception {
+		Connection conn = mock(Connection.class);
+		PreparedStatement stmt = mock(PreparedStatement.class);
+		ResultSet rs = mock(ResultSet.class);
+		when(conn.prepareStatement("XXX")).thenReturn(stmt);
+		when(stmt.executeQuery()).thenReturn(rs);
+		when(rs.next()).thenReturn(true, true, false);
+		when(rs.getInt(1)).thenReturn(1, 2);
+		when(rs.getString(2)).thenReturn("a", "b");
+		Try<List<String>, SQLTemplateException> result = SQLTemplate.builder().statement("XXX").query().build().apply(conn, row -> row.getInt(1) + row.getString(2));
+		assertEquals(Arrays.asList("1a", "2b"), result.get());
+		verify(rs, never()).getObject(any(Integer.class));
+		verify(rs, times(1)).close();
+	}
+
+	@Test
+	public void shouldPrepareStatementWithOptions() throws Exception {
+		Connection conn = mock(Connection.class);
+		PreparedStatement stmt = mock(PreparedStatement.class);
+		when(conn.prepareStatement("XXX")).thenReturn(stmt);
+		SQLTemplate.builder().statement("XXX", SQLStatementOptions.builder().fetchSize(500).build()).update().build().apply(conn);
+		verify(stmt, times(1)).setFetchSize(500);
+		verify(stmt, times(1)).executeUpdate();
+	}
+
+	@Test
+	public void shouldNotShareCachedStatementsWithDifferentOptions() throws Exception {
+		Connection conn = mock(Connection.class);
+		when(conn.prepareStatement("XXX")).thenReturn(mock(PreparedStatement.class), mock(PreparedStatement.class));
+		SQLStatementCache cache = SQLStatementCache.create(10);
+		SQLTemplate.builder().statementCache(cache).statement("XXX").update()
+			.statement("XXX", SQLStatementOptions.builder().maxRows(10).build()).update().build().apply(conn);
+		verify(conn, times(2)).prepareStatement("XXX");
+		assertEquals(2, cache.misses());
+	}
+
+	@Test
+	public void shouldExecuteQueryForEachPartition() throws Exception {
+		Connection conn1 = mock(Connection.class);
+		Connection conn2 = mock(Connection.class);
+		PreparedStatement stmt1 = mock(PreparedStatement.class);
+		PreparedStatement stmt2 = mock(PreparedStatement.class);
+		when(conn1.prepareStatement("XXX")).thenReturn(stmt1);
+		when(conn2.prepareStatement("XXX")).thenReturn(stmt2);
+		when(stmt1.executeQuery()).thenReturn(mock(ResultSet.class));
+		when(stmt2.executeQuery()).thenReturn(mock(ResultSet.class));
+		Iterator<Connection> connections = Arrays.asList(conn1, conn2).iterator();
+		Try<Stream<Object[]>, SQLTemplateException> result = SQLTemplate.builder().statement("XXX").queryPartition().build()
+			.applyParallel(() -> { synchronized (connections) { return connections.next(); } }, SQLPartitioner.ranges(0, 10, 2));
+		assertFalse(result.isFailure());
+		assertEquals(0, result.get().count());
+		verify(conn1, times(1)).close();
+		verify(conn2, times(1)).close();
+		verify(stmt1, times(1)).executeQuery();
+		verify(stmt2, times(1)).executeQuery();
+	}
+
+	@Test
+	public void shouldThrowExceptionFromStreamWhenPartitionFails() throws Exception {
+		Connection conn = mock(Connection.class);
+		when(conn.prepareStatement("XXX")).thenThrow(SQLException.class);
+		Try<Stream<Object[]>, SQLTemplateException> result = SQLTemplate.builder().statement("XXX").queryPartition().build()
+			.applyParallel(() -> conn, SQLPartitioner.ranges(0, 10, 2));
+		assertFalse(result.isFailure());
+		exception.expect(SQLTemplateUncheckedException.class);
+		result.get().count();
+	}
+
+	@Test
+	public void shouldExecutePartitionsInDedicatedExecutor() throws Exception {
+		Connection conn = mock(Connection.class);
+		List<String> threads = Collections.synchronizedList(new ArrayList<>());
+		when(conn.prepareStatement("XXX")).thenAnswer(invocation -> {
+			threads.add(Thread.currentThread().getName());
+			throw new SQLException();
+		});
+		Try<Stream<Object[]>, SQLTemplateException> result = SQLTemplate.builder().statement("XXX").queryPartition().build()
+			.applyParallel(() -> conn, SQLPartitioner.ranges(0, 10, 2));
+		assertFalse(result.isFailure());
+		try {
+			result.get().count();
+		} catch (SQLTemplateUncheckedException e) {
+		}
+		assertFalse(threads.isEmpty());
+		assertTrue(threads.stream().allMatch(name -> name.startsWith("sqltemplate-partition-")));
+	}
+
+	@Test
+	public void shouldSplitRangeIntoPartitions() {
+		List<Object[]> partitions = SQLPartitioner.ranges(0, 10, 3).partitions();
+		assertEquals(3, partitions.size());
+		assertArrayEquals(new Object[] { 0L, 3L }, partitions.get(0));
+		assertArrayEquals(new Object[] { 3L, 6L }, partitions.get(1));
+		assertArrayEquals(new Object[] { 6L, 10L }, partitions.get(2));
+	}
+
+	@Test
+	public void shouldSplitWidestRangeWithoutOverflow() {
+		List<Object[]> partitions = SQLPartitioner.ranges(Long.MIN_VALUE, Long.MAX_VALUE, 2).partitions();
+		assertEquals(2, partitions.size());
+		assertArrayEquals(new Object[] { Long.MIN_VALUE, -1L }, partitions.get(0));
+		assertArrayEquals(new Object[] { -1L, Long.MAX_VALUE }, partitions.get(1));
+	}
+
+	@Test
+	public void shouldCompleteFutureWithResult() throws Exception {
+		Connection conn = mock(Connection.class);
+		PreparedStatement stmt = mock(PreparedStatement.class);
+		when(conn.prepareStatement("XXX")).thenReturn(stmt);
+		when(stmt.executeUpdate()).thenReturn(3);
+		List<Object[]> result = SQLTemplate.builder().statement("XXX").update().build().applyAsync(conn).get(10, TimeUnit.SECONDS);
+		assertEquals(3L, result.get(0)[0]);
+	}
+
+	@Test
+	public void shouldCompleteFutureExceptionallyWhenTemplateFails() throws Exception {
+		Connection conn = mock(Connection.class);
+		when(conn.prepareStatement("XXX")).thenThrow(SQLException.class);
+		CompletableFuture<List<Object[]>> future = SQLTemplate.builder().statement("XXX").update().build().applyAsync(conn, Runnable::run);
+		assertTrue(future.isCompletedExceptionally());
+		exception.expectCause(org.hamcrest.CoreMatchers.instanceOf(SQLTemplateException.class));
+		future.get();
+	}
+
+	@Test
+	public void shouldCompleteFutureExceptionallyWhenExecutorRejectsTemplate() throws Exception {
+		Connection conn = mock(Connection.class);
+		CompletableFuture<List<Object[]>> future = SQLTemplate.builder().build().applyAsync(conn, runnable -> { throw new RejectedExecutionException(); });
+		assertTrue(future.isCompletedExceptionally());
+		verifyZeroInteractions(conn);
+	}
+
+	@Test
+	public void shouldPublishOnlyRequestedRowsAndSetFetchSizeToDemand() throws Exception {
+		Connection conn = mock(Connection.class);
+		PreparedStatement stmt = mock(PreparedStatement.class);
+		ResultSet rs = mock(ResultSet.class);
+		ResultSetMetaData meta = mock(ResultSetMetaData.class);
+		when(conn.prepareStatement("XXX")).thenReturn(stmt);
+		when(stmt.executeQuery()).thenReturn(rs);
+		when(rs.next()).thenReturn(true, true, true, false);
+		when(rs.getMetaData()).thenReturn(meta);
+		when(meta.getColumnCount()).thenReturn(1);
+		when(rs.getObject(1)).thenReturn("a", "b", "c");
+		RecordingSubscriber subscriber = new RecordingSubscriber();
+		SQLTemplate.builder().statement("XXX").query().build().publisher(conn).get().subscribe(subscriber);
+		subscriber.subscription.request(2);
+		assertEquals(2, subscriber.items.size());
+		assertFalse(subscriber.completed);
+		verify(rs, times(1)).setFetchSize(2);
+		verify(rs, times(2)).next();
+		subscriber.subscription.request(5);
+		assertEquals(3, subscriber.items.size());
+		assertTrue(subscriber.completed);
+		verify(rs, times(1)).setFetchSize(5);
+		verify(rs, times(1)).close();
+		verify(stmt, times(1)).close();
+	}
+
+	@Test
+	public void shouldCloseResultSetAndStatementWhenSubscriptionIsCancelled() throws Exception {
+		Connection conn = mock(Connection.class);
+		PreparedStatement stmt = mock(PreparedStatement.class);
+		ResultSet rs = mock(ResultSet.class);
+		when(conn.prepareStatement("XXX")).thenReturn(stmt);
+		when(stmt.executeQuery()).thenReturn(rs);
+		RecordingSubscriber subscriber = new RecordingSubscriber();
+		SQLTemplate.builder().statement("XXX").query().build().publisher(conn).get().subscribe(subscriber);
+		subscriber.subscription.cancel();
+		verify(rs, never()).next();
+		verify(rs, times(1)).close();
+		verify(stmt, times(1)).close();
+		assertNull(subscriber.error);
+	}
+
+	@Test
+	public void shouldPublishErrorWhenResultSetFails() throws Exception {
+		Connection conn = mock(Connection.class);
+		PreparedStatement stmt = mock(PreparedStatement.class);
+		ResultSet rs = mock(ResultSet.class);
+		when(conn.prepareStatement("XXX")).thenReturn(stmt);
+		when(stmt.executeQuery()).thenReturn(rs);
+		when(rs.next()).thenThrow(SQLException.class);
+		RecordingSubscriber subscriber = new RecordingSubscriber();
+		SQLTemplate.builder().statement("XXX").query().build().publisher(conn).get().subscribe(subscriber);
+		subscriber.subscription.request(1);
+		assertTrue(subscriber.error instanceof SQLException);
+		verify(rs, times(1)).close();
+	}
+
+	@Test
+	public void shouldPublishErrorWhenPublisherIsSubscribedTwice() throws Exception {
+		Connection conn = mock(Connection.class);
+		PreparedStatement stmt = mock(PreparedStatement.class);
+		when(conn.prepareStatement("XXX")).thenReturn(stmt);
+		when(stmt.executeQuery()).thenReturn(mock(ResultSet.class));
+		SQLPublisher publisher = SQLTemplate.builder().statement("XXX").query().build().publisher(conn).get();
+		publisher.subscribe(new RecordingSubscriber());
+		RecordingSubscriber subscriber = new RecordingSubscriber();
+		publisher.subscribe(subscriber);
+		assertTrue(subscriber.error instanceof IllegalStateException);
+	}
+
+	private static class RecordingSubscriber implements SQLPublisher.Subscriber<Object[]> {
+		private final List<Object[]> items = new ArrayList<>();
+		private SQLPublisher.Subscription subscription;
+		private Throwable error;
+		private boolean completed;
+
+		@Override
+		public void onSubscribe(SQLPublisher.Subscription subscription) {
+			this.subscription = subscription;
+		}
+
+		@Override
+		public void onNext(Object[] item) {
+			items.add(item);
+		}
+
+		@Override
+		public void onError(Throwable throwable) {
+			error = throwable;
+		}
+
+		@Override
+		public void onComplete() {
+			completed = true;
+		}
+	}
+
+	@Test
+	public void shouldApplyTemplateWithManyOperationsInConstantStack() throws Exception {
+		Connection conn = mock(Connection.class);
+		SQLTemplate.SQLTemplateBuilder builder = SQLTemplate.builder();
+		for (int i = 0; i < 100000; i++) {
+			builder = builder.commit();
+		}
+		assertFalse(builder.build().apply(conn).isFailure());
+		verify(conn, times(100000)).commit();
+	}
+
+	@Test
+	public void shouldStopAtFirstFailedOperation() throws Exception {
+		Connection conn = mock(Connection.class);
+		doThrow(SQLException.class).when(conn).commit();
+		Try<List<Object[]>, SQLTemplateException> result = SQLTemplate.builder().commit().rollback().build().apply(conn);
+		assertTrue(result.isFailure());
+		verify(conn, never()).rollback();
+	}
+
+	@Test
+	public void shouldReuseBuilderPrefixInDifferentTemplates() throws Exception {
+		Connection conn = mock(Connection.class);
+		SQLTemplate.SQLTemplateBuilder builder = SQLTemplate.builder().noAutoCommit();
+		builder.commit().build().apply(conn);
+		builder.rollback().build().apply(conn);
+		verify(conn, times(2)).setAutoCommit(false);
+		verify(conn, times(1)).commit();
+		verify(conn, times(1)).rollback();
+	}
+
+	@Test
+	public void shouldLimitParametersOfRewrittenInserts() throws Exception {
+		Connection conn = mock(Connection.class);
+		PreparedStatement stmt = mock(PreparedStatement.class);
+		PreparedStatement chunk = mock(PreparedStatement.class);
+		when(conn.prepareStatement("INSERT INTO T VALUES (?, ?)")).thenReturn(stmt);
+		when(conn.prepareStatement("INSERT INTO T VALUES (?, ?), (?, ?)")).thenReturn(chunk);
+		when(conn.prepareStatement("INSERT INTO T VALUES (?, ?), (?, ?), (?, ?)")).thenThrow(SQLException.class);
+		when(chunk.executeUpdate()).thenReturn(2);
+		List<Object[]> rows = Arrays.asList(new Object[] { 1, "A" }, new Object[] { 2, "B" }, new Object[] { 3, "C" }, new Object[] { 4, "D" });
+		SQLTemplate template = SQLTemplate.builder().rewriteInserts(10, 5).statement("INSERT INTO T VALUES (?, ?)").batch(rows).build();
+		assertFalse(template.apply(conn).isFailure());
+		verify(chunk, times(2)).executeUpdate();
+	}
+
+	@Test
+	public void shouldBindArgumentsToPlaceholders() throws Exception {
+		Connection conn = mock(Connection.class);
+		PreparedStatement stmt = mock(PreparedStatement.class);
+		when(conn.prepareStatement("XXX")).thenReturn(stmt);
+		SQLTemplate template = SQLTemplate.builder().statement("XXX").update(SQLParam.of(1), "A", SQLParam.of(0)).build();
+		assertFalse(template.apply(conn, 10, 20).isFailure());
+		assertFalse(template.apply(conn, 30, 40).isFailure());
+		verify(stmt, times(1)).setInt(1, 20);
+		verify(stmt, times(2)).setString(2, "A");
+		verify(stmt, times(1)).setInt(3, 10);
+		verify(stmt, times(1)).setInt(1, 40);
+		verify(stmt, times(1)).setInt(3, 30);
+	}
+
+	@Test
+	public void shouldBindArgumentsWhenTemplateIsStreamedOrVisited() throws Exception {
+		Connection conn = mock(Connection.class);
+		PreparedStatement stmt = mock(PreparedStatement.class);
+		when(conn.prepareStatement("XXX")).thenReturn(stmt);
+		when(stmt.executeQuery()).thenReturn(mock(ResultSet.class));
+		SQLTemplate template = SQLTemplate.builder().statement("XXX").query(SQLParam.of(0)).build();
+		try (Stream<Object[]> stream = template.bind(10).stream(conn).get()) {
+			assertEquals(0, stream.count());
+		}
+		assertEquals(Long.valueOf(0), template.bind(20).forEachRow(conn, row -> {}).get());
+		assertFalse(template.bind(SQLBindings.of(30)).apply(conn).isFailure());
+		assertTrue(template.forEachRow(conn, row -> {}).isFailure());
+		verify(stmt, times(1)).setInt(1, 10);
+		verify(stmt, times(1)).setInt(1, 20);
+		verify(stmt, times(1)).setInt(1, 30);
+	}
+
+	@Test
+	public void shouldReturnFailureWhenArgumentIsMissing() throws Exception {
+		Connection conn = mock(Connection.class);
+		PreparedStatement stmt = mock(PreparedStatement.class);
+		when(conn.prepareStatement("XXX")).thenReturn(stmt);
+		Try<List<Object[]>, SQLTemplateException> result = SQLTemplate.builder().statement("XXX").query(SQLParam.of(1)).build().apply(conn, 10);
+		assertTrue(result.isFailure());
+		verify(stmt, never()).executeQuery();
+		verify(stmt, times(1)).close();
+	}
+
+	@Test
+	public void shouldThrowIllegalArgumentExceptionWhenParamIndexIsNegative() {
+		exception.expect(IllegalArgumentException.class);
+		SQLParam.of(-1);
+	}
+
+	@Test
+	public void shouldBindNamedArgumentsFromMap() throws Exception {
+		Connection conn = mock(Connection.class);
+		PreparedStatement stmt = mock(PreparedStatement.class);
+		when(conn.prepareStatement("UPDATE TEST SET NAME = ? WHERE ID = ?")).thenReturn(stmt);
+		SQLTemplate template = SQLTemplate.builder().namedStatement("UPDATE TEST SET NAME = :name WHERE ID = :id").update().build();
+		Map<String, Object> values = new HashMap<>();
+		values.put("id", 1);
+		values.put("name", "A");
+		assertFalse(template.apply(conn, SQLBindings.of(values)).isFailure());
+		verify(stmt, times(1)).setString(1, "A");
+		verify(stmt, times(1)).setInt(2, 1);
+	}
+
+	@Test
+	public void shouldPrepareStatementWithoutRewritingColons() throws Exception {
+		Connection conn = mock(Connection.class);
+		PreparedStatement stmt = mock(PreparedStatement.class);
+		String sql = "CREATE TRIGGER T BEFORE UPDATE ON TEST FOR EACH ROW BEGIN :new.NAME := :old.NAME || ?; END";
+		when(conn.prepareStatement(sql)).thenReturn(stmt);
+		SQLTemplate template = SQLTemplate.builder().statement(sql).update("A").build();
+		assertFalse(template.apply(conn).isFailure());
+		verify(conn, times(1)).prepareStatement(sql);
+	}
+
+	@Test
+	public void shouldBindNamedArgumentsFromBean() throws Exception {
+		Connection conn = mock(Connection.class);
+		PreparedStatement stmt = mock(PreparedStatement.class);
+		when(conn.prepareStatement("UPDATE TEST SET NAME = ? WHERE ID = ?")).thenReturn(stmt);
+		SQLTemplate template = SQLTemplate.builder().namedStatement("UPDATE TEST SET NAME = :name WHERE ID = :id").update().build();
+		assertFalse(template.apply(conn, SQLBindings.ofBean(new TestBean(1, "A"))).isFailure());
+		verify(stmt, times(1)).setString(1, "A");
+		verify(stmt, times(1)).setInt(2, 1);
+	}
+
+	@Test
+	public void shouldReturnFailureWhenNamedArgumentIsMissing() throws Exception {
+		Connection conn = mock(Connection.class);
+		PreparedStatement stmt = mock(PreparedStatement.class);
+		when(conn.prepareStatement("SELECT * FROM TEST WHERE ID = ?")).thenReturn(stmt);
+		SQLTemplate template = SQLTemplate.builder().namedStatement("SELECT * FROM TEST WHERE ID = :id").query().build();
+		assertTrue(template.apply(conn, SQLBindings.of(new HashMap<>())).isFailure());
+		verify(stmt, never()).executeQuery();
+	}
+
+	public static class TestBean {
+		private final int id;
+		private final String name;
+
+		public TestBean(int id, String name) {
+			this.id = id;
+			this.name = name;
+		}
+
+		public int getId() {
+			return id;
+		}
+
+		public String getName() {
+			return name;
+		}
+	}
+
+	@Test
+	public void shouldBindNullWithTypeOfPreviousValue() throws Exception {
+		Connection conn = mock(Connection.class);
+		PreparedStatement stmt = mock(PreparedStatement.class);
+		when(conn.prepareStatement("XXX")).thenReturn(stmt);
+		SQLTemplate.builder().statement("XXX").batch(Arrays.asList(new Object[] { 1L, null }, new Object[] { null, "A" })).build().apply(conn);
+		verify(stmt, times(1)).setLong(1, 1L);
+		verify(stmt, times(1)).setObject(2, null);
+		verify(stmt, times(1)).setNull(1, Types.BIGINT);
+		verify(stmt, times(1)).setString(2, "A");
+	}
+
+	@Test
+	public void shouldBindNullAsObjectWhenPreviousValueHasUnknownType() throws Exception {
+		Connection conn = mock(Connection.class);
+		PreparedStatement stmt = mock(PreparedStatement.class);
+		when(conn.prepareStatement("XXX")).thenReturn(stmt);
+		UUID uuid = UUID.randomUUID();
+		SQLTemplate.builder().statement("XXX").batch(Arrays.asList(new Object[] { uuid }, new Object[] { null })).build().apply(conn);
+		verify(stmt, times(1)).setObject(1, uuid);
+		verify(stmt, times(1)).setObject(1, null);
+		verify(stmt, never()).setNull(anyInt(), anyInt());
+	}
+
+	@Test
+	public void shouldBindObjectsOfUnknownTypeAsObject() throws Exception {
+		Connection conn = mock(Connection.class);
+		PreparedStatement stmt = mock(PreparedStatement.class);
+		when(conn.prepareStatement("XXX")).thenReturn(stmt);
+		Object value = Arrays.asList(1, 2);
+		SQLTemplate.builder().statement("XXX").update(value).build().apply(conn);
+		verify(stmt, times(1)).setObject(1, value);
+	}
+
+	@Test
+	public void shouldBindObjectsWithParameterBinder() throws Exception {
+		Connection conn = mock(Connection.class);
+		PreparedStatement stmt = mock(PreparedStatement.class);
+		when(conn.prepareStatement("XXX")).thenReturn(stmt);
+		when(stmt.executeBatch()).thenReturn(new int[] { 1, 1 });
+		List<TestBean> beans = Arrays.asList(new TestBean(1, "A"), new TestBean(2, "B"));
+		Try<List<Object[]>, SQLTemplateException> result = SQLTemplate.builder().statement("XXX")
+			.batch(beans, (bean, params) -> { params.setInt(1, bean.getId()); params.setString(2, bean.getName()); }, 10)
+			.build().apply(conn);
+		assertEquals(2, result.get().size());
+		verify(stmt, times(1)).setInt(1, 1);
+		verify(stmt, times(1)).setString(2, "B");
+		verify(stmt, times(2)).addBatch();
+		verify(stmt, times(1)).executeBatch();
+	}
 }